@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import codice.Agenda;
+import codice.Appuntamento;
+import codice.ArchivioAgende;
+import codice.ContenitoreAgende;
+
+/**
+ * Semplice programma di misura (non un test) del salvataggio e del caricamento di un {@link ContenitoreAgende} con molte agende
+ * in un unico archivio (vedi {@link ArchivioAgende}), confrontati con quelli di un file di testo per ogni agenda.
+ * <p>Crea il numero di agende passato come primo argomento (di default {@code 5000}), ognuna con il numero di appuntamenti passato
+ * come secondo argomento (di default {@code 20}), in due contenitori distinti. Salva poi più volte il primo contenitore su files
+ * con {@link ContenitoreAgende#salvaContenitoreSuFile} e il secondo nell'archivio con {@link ContenitoreAgende#salvaContenitoreInArchivio},
+ * modificando prima di ogni salvataggio l'1% delle agende, e infine ricarica entrambi, stampando per ogni ripetizione il tempo impiegato.
+ * <p>Le prime ripetizioni servono a scaldare la JVM, per cui è consigliabile considerare solo le ultime.
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class BenchmarkArchivio {
+
+	private static final int RIPETIZIONI = 5;
+	private static final String ARCHIVIO = "Agende" + ArchivioAgende.ESTENSIONE;
+
+	private static ContenitoreAgende crea(int numero, ArrayList<Appuntamento> appuntamenti) {
+		ContenitoreAgende contenitore = new ContenitoreAgende();
+		for(int i = 0; i < numero; i++) contenitore.aggiungiAgenda(new Agenda("Agenda " + i, appuntamenti));
+		return contenitore;
+	}
+
+	private static void modifica(ContenitoreAgende contenitore, int ripetizione) {
+		int numero = contenitore.getDimensione();
+		for(int i = ripetizione; i < numero; i += 100) {
+			Agenda agenda = contenitore.selezionaAgenda("Agenda " + i);
+			agenda.aggiungiAppuntamento(String.format("%02d-01-0001", ripetizione), "00-00", "1", "Benchmark", "Benchmark");
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int numero = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int appuntamentiPerAgenda = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		ArrayList<Appuntamento> appuntamenti = new Agenda(BenchmarkCaricamento.scriviFile(BenchmarkCaricamento.generaRighe(appuntamentiPerAgenda))).getAppuntamenti();
+		File cartella = Files.createTempDirectory("benchmark").toFile();
+		String vecchioPath = Agenda.changePathToAgende(cartella.getPath());
+		Agenda.Durabilita vecchiaDurabilita = Agenda.setDurabilita(Agenda.Durabilita.NESSUNA);
+		try {
+			ContenitoreAgende files = crea(numero, appuntamenti);
+			ContenitoreAgende archiviato = crea(numero, appuntamenti);
+			for(int r = 1; r <= RIPETIZIONI; r++) {
+				long inizio = System.nanoTime();
+				files.salvaContenitoreSuFile();
+				BenchmarkCaricamento.stampa("salva files", r, System.nanoTime() - inizio, numero, "agende");
+				inizio = System.nanoTime();
+				archiviato.salvaContenitoreInArchivio(ARCHIVIO);
+				BenchmarkCaricamento.stampa("salva archivio", r, System.nanoTime() - inizio, numero, "agende");
+				modifica(files, r);
+				modifica(archiviato, r);
+			}
+			for(int r = 1; r <= RIPETIZIONI; r++) {
+				long inizio = System.nanoTime();
+				new ContenitoreAgende().caricaMultiAgendeDaFiles();
+				BenchmarkCaricamento.stampa("carica files", r, System.nanoTime() - inizio, numero, "agende");
+				inizio = System.nanoTime();
+				new ContenitoreAgende().caricaAgendeDaArchivio(ARCHIVIO);
+				BenchmarkCaricamento.stampa("carica archivio", r, System.nanoTime() - inizio, numero, "agende");
+			}
+		} finally {
+			Agenda.setDurabilita(vecchiaDurabilita);
+			Agenda.changePathToAgende(vecchioPath);
+			File[] listaFile = cartella.listFiles();
+			if(listaFile != null) for(File file: listaFile) file.delete();
+			cartella.delete();
+		}
+	}
+}
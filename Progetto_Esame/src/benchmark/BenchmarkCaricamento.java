@@ -0,0 +1,76 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import codice.Agenda;
+import codice.Appuntamento;
+import codice.AppuntamentoException;
+import jbook.util.DataOrario;
+
+/**
+ * Semplice programma di misura (non un test) del tempo di caricamento di un'{@link Agenda} da file di testo.
+ * <p>Genera un file temporaneo con il numero di appuntamenti passato come primo argomento (di default {@code 1000000}),
+ * lo carica più volte tramite {@link Agenda#Agenda(File)} e stampa, per ogni ripetizione, il tempo impiegato e il numero
+ * di righe lette al secondo. Misura inoltre la sola creazione degli oggetti {@link Appuntamento} a partire dalle stringhe,
+ * che comprende la validazione dei parametri.
+ * <p>Le prime ripetizioni servono a scaldare la JVM, per cui è consigliabile considerare solo le ultime.
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class BenchmarkCaricamento {
+
+	private static final String[] LUOGHI = { "Ufficio", "Casa Mia", "Sala Conferenze", "Viale Roma 22", "Ristorante", "Palestra" };
+	private static final String[] PERSONE = { "Luca", "Giacomo", "Mario Rossi", "Giovanna Pascoli", "Paolo", "Capo", "Marta" };
+	private static final int RIPETIZIONI = 5;
+
+	static String[][] generaRighe(int numero) {
+		String[][] righe = new String[numero][];
+		DataOrario inizio = new DataOrario("01-01-2000", "08-00");
+		for(int i = 0; i < numero; i++) {
+			DataOrario dataOrario = inizio.plusMinuti(90L * i);
+			righe[i] = new String[] { dataOrario.getDataToString(), dataOrario.getOrarioToString(),
+					Integer.toString(30 + i % 60), LUOGHI[i % LUOGHI.length], PERSONE[i % PERSONE.length] };
+		}
+		return righe;
+	}
+
+	static File scriviFile(String[][] righe) throws IOException {
+		File file = File.createTempFile("benchmark", ".txt");
+		file.deleteOnExit();
+		try(BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+			for(String[] riga: righe) writer.write(riga[0] + "|" + riga[1] + "|" + riga[2] + "min|" + riga[3] + "|" + riga[4] + "\n");
+		}
+		return file;
+	}
+
+	static void stampa(String descrizione, int ripetizione, long nanosecondi, int numero) {
+		stampa(descrizione, ripetizione, nanosecondi, numero, "righe");
+	}
+
+	static void stampa(String descrizione, int ripetizione, long nanosecondi, int numero, String unita) {
+		System.out.printf("%-24s #%d %8.1f ms  %12.0f %s/s%n", descrizione, ripetizione, nanosecondi / 1e6, numero / (nanosecondi / 1e9), unita);
+	}
+
+	public static void main(String[] args) throws IOException, AppuntamentoException {
+		int numero = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		String[][] righe = generaRighe(numero);
+		File file = scriviFile(righe);
+
+		for(int r = 1; r <= RIPETIZIONI; r++) {
+			long inizio = System.nanoTime();
+			int creati = 0;
+			for(String[] riga: righe) creati += new Appuntamento(riga).getDurata().length() > 0 ? 1 : 0;
+			stampa("new Appuntamento", r, System.nanoTime() - inizio, creati);
+		}
+
+		for(int r = 1; r <= RIPETIZIONI; r++) {
+			long inizio = System.nanoTime();
+			Agenda agenda = new Agenda(file);
+			stampa("new Agenda(File)", r, System.nanoTime() - inizio, agenda.getDimensioneAgenda());
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import codice.Agenda;
+
+/**
+ * Semplice programma di misura (non un test) del salvataggio e del caricamento di un'{@link Agenda} in un file di testo compresso
+ * (vedi {@link Agenda#setLivelloCompressione}), confrontati con quelli del file di testo non compresso.
+ * <p>Genera un file di testo temporaneo con il numero di appuntamenti passato come primo argomento (di default {@code 1000000}),
+ * come {@link BenchmarkCaricamento}, e lo carica in un'agenda. Salva poi più volte l'agenda in una cartella temporanea, senza
+ * compressione e con alcuni livelli di compressione, e la ricarica dal file scritto, stampando per ogni ripetizione il tempo
+ * impiegato e per ogni livello la dimensione del file. Il journal viene disattivato e l'agenda modificata
+ * prima di ogni salvataggio, per cui ogni salvataggio riscrive l'intero file.
+ * <p>Le prime ripetizioni servono a scaldare la JVM, per cui è consigliabile considerare solo le ultime.
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class BenchmarkCompressione {
+
+	private static final int RIPETIZIONI = 5;
+	private static final int[] LIVELLI = { Agenda.COMPRESSIONE_DISATTIVATA, 1, 6, 9 };
+
+	public static void main(String[] args) throws IOException {
+		int numero = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		File testo = BenchmarkCaricamento.scriviFile(BenchmarkCaricamento.generaRighe(numero));
+		Agenda originale = new Agenda(testo);
+		File cartella = Files.createTempDirectory("benchmark").toFile();
+		String vecchioPath = Agenda.changePathToAgende(cartella.getPath());
+		Agenda.Durabilita vecchiaDurabilita = Agenda.setDurabilita(Agenda.Durabilita.NESSUNA);
+		int vecchioLivello = Agenda.getLivelloCompressione();
+		int vecchiaSoglia = Agenda.setSogliaJournal(0);
+		try {
+			for(int livello: LIVELLI) {
+				Agenda.setLivelloCompressione(livello);
+				String nome = livello == Agenda.COMPRESSIONE_DISATTIVATA ? "testo" : "gzip " + livello;
+				Agenda agenda = new Agenda(nome, originale.getAppuntamenti());
+				File file = new File(cartella, nome + (livello == Agenda.COMPRESSIONE_DISATTIVATA ? ".txt" : Agenda.ESTENSIONE_COMPRESSA));
+				file.deleteOnExit();
+
+				for(int r = 1; r <= RIPETIZIONI; r++) {
+					agenda.aggiungiAppuntamento("01-01-0001", "00-00", "1", "Benchmark", "Benchmark");
+					agenda.rimuoviPerDataOrario("01-01-0001", "00-00");
+					long inizio = System.nanoTime();
+					agenda.salvaAgendaSuFile();
+					BenchmarkCaricamento.stampa("salva " + nome, r, System.nanoTime() - inizio, agenda.getDimensioneAgenda());
+				}
+				for(int r = 1; r <= RIPETIZIONI; r++) {
+					long inizio = System.nanoTime();
+					Agenda letta = new Agenda(file);
+					BenchmarkCaricamento.stampa("carica " + nome, r, System.nanoTime() - inizio, letta.getDimensioneAgenda());
+				}
+				System.out.printf("%-24s %d byte (%.1f%%)%n%n", nome, file.length(), 100.0 * file.length() / testo.length());
+			}
+		} finally {
+			Agenda.setLivelloCompressione(vecchioLivello);
+			Agenda.setSogliaJournal(vecchiaSoglia);
+			Agenda.setDurabilita(vecchiaDurabilita);
+			Agenda.changePathToAgende(vecchioPath);
+			cartella.deleteOnExit();
+		}
+	}
+}
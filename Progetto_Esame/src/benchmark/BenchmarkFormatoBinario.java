@@ -0,0 +1,44 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import codice.Agenda;
+import codice.FormatoBinario;
+
+/**
+ * Semplice programma di misura (non un test) del tempo di caricamento di un'{@link Agenda} dal formato binario
+ * (vedi {@link FormatoBinario}), confrontato con il caricamento dal file di testo equivalente.
+ * <p>Genera un file di testo temporaneo con il numero di appuntamenti passato come primo argomento (di default {@code 1000000}),
+ * come {@link BenchmarkCaricamento}, e lo converte nel formato binario. Carica poi più volte entrambi i file, tramite
+ * {@link Agenda#Agenda(File)} e {@link FormatoBinario#leggi}, stampando per ogni ripetizione il tempo impiegato
+ * e il numero di appuntamenti letti al secondo.
+ * <p>Le prime ripetizioni servono a scaldare la JVM, per cui è consigliabile considerare solo le ultime.
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class BenchmarkFormatoBinario {
+
+	private static final int RIPETIZIONI = 5;
+
+	public static void main(String[] args) throws IOException {
+		int numero = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		File testo = BenchmarkCaricamento.scriviFile(BenchmarkCaricamento.generaRighe(numero));
+		File binario = FormatoBinario.daTesto(testo);
+		binario.deleteOnExit();
+		System.out.printf("File di testo: %d byte, file binario: %d byte%n", testo.length(), binario.length());
+
+		for(int r = 1; r <= RIPETIZIONI; r++) {
+			long inizio = System.nanoTime();
+			Agenda agenda = new Agenda(testo);
+			BenchmarkCaricamento.stampa("new Agenda(File)", r, System.nanoTime() - inizio, agenda.getDimensioneAgenda());
+		}
+
+		for(int r = 1; r <= RIPETIZIONI; r++) {
+			long inizio = System.nanoTime();
+			Agenda agenda = FormatoBinario.leggi(binario);
+			BenchmarkCaricamento.stampa("FormatoBinario.leggi", r, System.nanoTime() - inizio, agenda.getDimensioneAgenda());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.util.ArrayList;
+import codice.Agenda;
+import codice.AgendaColonnare;
+import codice.Appuntamento;
+import codice.AppuntamentoException;
+import jbook.util.DataOrario;
+
+/**
+ * Semplice programma di misura (non un test) che confronta l'occupazione di memoria <em>heap</em> di un grande
+ * insieme di appuntamenti memorizzato in:<ul>
+ * <li> un {@code ArrayList<Appuntamento>};
+ * <li> un'{@link Agenda} (che mantiene anche gli indici per data e per persona);
+ * <li> un {@link AgendaColonnare}.</ul>
+ * Gli appuntamenti vengono creati come se fossero letti da file, per cui ogni luogo e ogni nome è una {@link String} distinta.
+ * <p>Il numero di appuntamenti può essere passato come primo argomento (di default {@code 500000}).
+ * La misura è indicativa: viene letta la memoria occupata dopo aver richiesto più volte il <em>garbage collector</em>.
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class BenchmarkMemoria {
+
+	private static final String[] LUOGHI = { "Ufficio", "Casa Mia", "Sala Conferenze", "Viale Roma 22", "Ristorante", "Palestra" };
+	private static final String[] PERSONE = { "Luca", "Giacomo", "Mario Rossi", "Giovanna Pascoli", "Paolo", "Capo", "Marta" };
+
+	static ArrayList<Appuntamento> generaAppuntamenti(int numero) throws AppuntamentoException {
+		ArrayList<Appuntamento> appuntamenti = new ArrayList<>(numero);
+		DataOrario inizio = new DataOrario("01-01-2000", "08-00");
+		for(int i = 0; i < numero; i++) {
+			DataOrario dataOrario = inizio.plusMinuti(90L * i);
+			appuntamenti.add(new Appuntamento(dataOrario.getDataToString(), dataOrario.getOrarioToString(),
+					Integer.toString(30 + i % 60), new String(LUOGHI[i % LUOGHI.length]), new String(PERSONE[i % PERSONE.length])));
+		}
+		return appuntamenti;
+	}
+
+	private static long memoriaUsata() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 5; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch(InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void stampa(String descrizione, long byteOccupati, int numero) {
+		System.out.printf("%-28s %10.1f MB  %6.1f byte/appuntamento%n", descrizione, byteOccupati / 1048576.0, (double) byteOccupati / numero);
+	}
+
+	public static void main(String[] args) throws AppuntamentoException {
+		int numero = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+
+		long base = memoriaUsata();
+		ArrayList<Appuntamento> lista = generaAppuntamenti(numero);
+		long memoriaLista = memoriaUsata() - base;
+		stampa("ArrayList<Appuntamento>", memoriaLista, numero);
+
+		Agenda agenda = new Agenda("Archivio", lista);
+		lista = null;
+		long memoriaAgenda = memoriaUsata() - base;
+		stampa("Agenda (indici inclusi)", memoriaAgenda, numero);
+
+		AgendaColonnare colonnare = new AgendaColonnare(agenda);
+		agenda = null;
+		long memoriaColonnare = memoriaUsata() - base;
+		stampa("AgendaColonnare", memoriaColonnare, numero);
+
+		System.out.println("Appuntamenti: " + colonnare.getDimensioneAgenda() + ", stringhe nel dizionario: " + colonnare.getDimensioneDizionario());
+	}
+}
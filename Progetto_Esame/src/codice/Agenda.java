@@ -1,19 +1,43 @@
 package codice;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.function.LongUnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jbook.util.DataOrario;
 import jbook.util.PatternMatcher;
 
 /**
@@ -22,20 +46,34 @@ import jbook.util.PatternMatcher;
  * <p>
  * Ogni {@code Agenda} è formata da:<ul>
  * <li> un <strong>nome</strong> nel formato {@link String} che la identifica;<br>
- * <li> un {@code ArrayList<Appuntamento>}, ovvero una lista di oggetti {@link Appuntamento}.</ul>
+ * <li> un {@code TreeMap<DataOrario, Appuntamento>}, ovvero un insieme di oggetti {@link Appuntamento} indicizzati
+ * tramite il loro data-orario di inizio.</ul>
  * <p>
- * Durante il suo ciclo di vita, ogni {@code Agenda} ordina automaticamente (in base alla data e all'orario di inizio)
+ * Durante il suo ciclo di vita, ogni {@code Agenda} mantiene ordinati (in base alla data e all'orario di inizio)
  * gli appuntamenti al suo interno.
  * <p>
  * Un oggetto {@code Agenda} accetta un {@code Appuntamento} se e solo se quest'ultimo è compatibile con gli altri già presenti.
  * Per essere compatibile, un appuntamento non può esistere nel medesimo lasso temporale di un altro.<br>
  * Ad esempio, se un appuntamento dell'agenda inizia il {@code 20-04-2004} alle {@code 18-00} e dura {@code 60} minuti, non è possibile inserire
- * nell'agenda un altro appuntamento che inizia alle {@code 18-30} del medesimo giorno.
+ * nell'agenda un altro appuntamento che inizia alle {@code 18-30} del medesimo giorno.<br>
+ * Dato che gli appuntamenti in agenda non si sovrappongono mai, per verificare la compatibilità è sufficiente
+ * confrontare il nuovo appuntamento con i soli appuntamenti adiacenti (il precedente e il successivo secondo l'orario di inizio).
+ * Sia il controllo che l'inserimento hanno quindi costo logaritmico rispetto alla dimensione dell'agenda.
+ * <p>
+ * Ogni {@code Agenda} mantiene inoltre un indice secondario che associa il nome della persona (normalizzato in minuscolo)
+ * agli appuntamenti con essa. L'indice viene aggiornato ad ogni aggiunta, rimozione e modifica, 
+ * per cui le ricerche e le rimozioni per persona hanno un costo proporzionale al numero di appuntamenti trovati.<br>
+ * Allo stesso modo, gli appuntamenti vengono raggruppati per giorno di inizio: le ricerche e le rimozioni per data
+ * accedono direttamente al gruppo del giorno cercato.
  * <p>
  * Inoltre, ogni {@code Agenda} può venir impostata su <em>salvata</em> o <em>non salvata</em>
  * a seconda se quest'ultima venga scritta su file oppure modificata durante l'esecuzione. Le agende non
  * importate da file vengono sempre inizializzate come <em>non salvate</em>.
  * <p>
+ * È possibile essere notificati ad ogni modifica dell'agenda registrando un osservatore con {@link #aggiungiOsservatore}
+ * (vedi ad esempio {@link ServizioPersistenza}). I metodi che modificano l'agenda e quelli che la salvano su file sono 
+ * sincronizzati sull'agenda stessa, per cui un'agenda può essere salvata da un altro thread mentre viene modificata.
+ * <p>
  * A tal proposito, le agende condividono un <em>pathname</em> che indica il percorso in cui vengono
  * salvate su file di testo {@code txt}. Tale percorso, di base, è la cartella {@code Agende_testuali/}
  * presente nella directory di questo progetto. Se tale cartella non esiste può venire creata
@@ -43,6 +81,12 @@ import jbook.util.PatternMatcher;
  * di salvataggio su file. È anche possibile modificare tale percorso usando il metodo {@link #changePathToAgende}
  * durante l'esecuzione.
  * <p>
+ * Un'agenda già salvata su file non viene riscritta interamente ad ogni salvataggio: le modifiche effettuate
+ * dall'ultimo salvataggio (aggiunte, rimozioni e modifiche di appuntamenti) vengono accodate ad un <em>journal</em>
+ * {@code <nome>.journal} posto accanto al file {@code <nome>.txt}, che viene riprodotto durante il caricamento. 
+ * Quando il journal supera {@link #getSogliaJournal} record, il file di testo viene riscritto e il journal eliminato
+ * (vedi {@link #salvaAgendaSuFile}).
+ * <p>
  * <strong>N.B. :</strong> le agende vengono salvate SOLO su file di tipo {@code txt}. È possibile importarle anche da file
  * di altri formati, ad esempio {@code md} o {@code docx}, tuttavia, in questo caso, verranno inizializzate come <em>non salvate</em>
  * nel rispetto di questo vincolo. <em>È stato introdotto questo limite per semplicità di progettazione, evitando così di dover
@@ -56,7 +100,10 @@ import jbook.util.PatternMatcher;
  * ricerca appuntamenti e modifica appuntamenti. Le ricerche e le rimozioni sono possibili in diverse varianti. È possibile cercare e/o
  * eliminare tutti gli elementi che condividono lo stesso nome per la persona con cui si ha appuntamento, oppure che condividono la stessa data.<br>
  * È inoltre possibile effettuare ricerche e rimozioni più precise, tramite {@link #searchAppuntamentoPerDataOrario} e 
- * {@link #rimuoviPerDataOrario}, selezionando il singolo appuntamento identificato dalla data e orario passati come parametri.
+ * {@link #rimuoviPerDataOrario}, selezionando il singolo appuntamento identificato dalla data e orario passati come parametri.<br>
+ * Infine, i metodi {@link #appuntamentiTra}, {@link #appuntamentiDa}, {@link #appuntamentiFinoA} e {@link #appuntamentiDaAdesso}
+ * restituiscono delle <em>viste</em> in sola lettura sugli appuntamenti che iniziano in un determinato intervallo temporale,
+ * senza copiare l'agenda.
  * <p>
  * Sono presenti ulteriori metodi, come {@link #isAgenda}, {@link #contains} e {@link #isCompatible}, 
  * utili a lavorare con oggetti di classe {@code Appuntamento}.
@@ -72,29 +119,88 @@ import jbook.util.PatternMatcher;
 public class Agenda implements Iterable<Appuntamento> {
 	
 	private String nomeAgenda;
-	private ArrayList<Appuntamento> appuntamenti;
-	private boolean saved;
+	private TreeMap<DataOrario, Appuntamento> appuntamenti;
+	private HashMap<String, TreeMap<DataOrario, Appuntamento>> indicePersone;
+	private HashMap<LocalDate, TreeMap<DataOrario, Appuntamento>> indiceGiorni;
+	private volatile boolean saved;
+	private long versione;
+	private final CopyOnWriteArrayList<Consumer<Agenda>> osservatori = new CopyOnWriteArrayList<>();
+	private JournalAgenda journal;
+	private String firmaFile;
+	private File cartellaMesi;
+	private boolean salvataAltrove;
+	private long versioneArchiviata = -1;
+	private final TreeSet<YearMonth> mesiModificati = new TreeSet<>();
 	private static String textFilesPathName = "Agende_testuali/";
+	private static final int DIMENSIONE_BLOCCO = 4096;
+	
+	/**
+	 * Il numero massimo di record del journal di default, oltre il quale il file dell'agenda viene riscritto.
+	 */
+	public static final int SOGLIA_JOURNAL_DEFAULT = 1000;
+	private static int sogliaJournal = SOGLIA_JOURNAL_DEFAULT;
+	private static Durabilita durabilita = Durabilita.PER_FILE;
+	private static boolean salvataggioPerMese = false;
+	
+	/**
+	 * L'estensione dei file di testo compressi delle agende (vedi {@link #setLivelloCompressione}).
+	 */
+	public static final String ESTENSIONE_COMPRESSA = ".txt.gz";
+	
+	/**
+	 * Il livello di compressione con cui le agende vengono salvate in un file di testo non compresso.
+	 */
+	public static final int COMPRESSIONE_DISATTIVATA = -1;
+	private static int livelloCompressione = COMPRESSIONE_DISATTIVATA;
+	private static final int DIMENSIONE_BUFFER_GZIP = 65536;
+	
+	/**
+	 * L'enumerazione {@code Durabilita} indica quando i file scritti durante il salvataggio delle agende
+	 * vengono sincronizzati su disco (vedi {@link Agenda#setDurabilita}).
+	 * <p>In ogni caso, il file di un'agenda non viene mai riscritto sul posto: il nuovo contenuto viene scritto su un file
+	 * temporaneo che sostituisce quello originale con un unico spostamento atomico.
+	 */
+	
+	public enum Durabilita {
+		
+		/**
+		 * I file non vengono sincronizzati: il salvataggio è il più veloce, ma in caso di interruzione del sistema
+		 * le ultime modifiche potrebbero andare perse.
+		 */
+		NESSUNA,
+		
+		/**
+		 * Ogni file viene sincronizzato su disco, insieme alla sua cartella, al termine del salvataggio della relativa agenda.
+		 */
+		PER_FILE,
+		
+		/**
+		 * Durante il salvataggio di più agende (vedi {@link ContenitoreAgende#salvaContenitoreSuFile}) tutti i file vengono
+		 * sincronizzati insieme al termine del salvataggio, e ogni cartella una sola volta. 
+		 * Il salvataggio di una singola agenda si comporta come {@link #PER_FILE}.
+		 */
+		PER_GRUPPO
+	}
 	
 	
 	private class IteratoreAgenda implements Iterator<Appuntamento> {
-		private int indiceContatti;
+		private Iterator<Appuntamento> iteratoreAppuntamenti;
 		private int lastIndex;
 		
 		private IteratoreAgenda() {
-			indiceContatti = 0;
+			iteratoreAppuntamenti = appuntamenti.values().iterator();
 			lastIndex = appuntamenti.size();
 		}
 		
 		@Override
 		public boolean hasNext() {
-			return indiceContatti < lastIndex;
+			return iteratoreAppuntamenti.hasNext();
 		}
 
 		@Override
 		public Appuntamento next() throws ConcurrentModificationException {
 			if(lastIndex != appuntamenti.size()) throw new ConcurrentModificationException();
-			return appuntamenti.get(indiceContatti++);
+			return iteratoreAppuntamenti.next();
 		}
 	}
 	
@@ -102,6 +208,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 * Crea una nuova Agenda assegnandole un nome e un arraylist di appuntamenti.
 	 * <p>Se il nome è una stringa vuota, assegna all'agenda il nome di default <em>"Agenda"</em>.
 	 * <p>Se l'arraylist non può identificare un'agenda (cioè vi sono appuntamenti non compatibili con gli altri), crea un'agenda vuota.
+	 * <p>Gli appuntamenti vengono aggiunti tutti insieme tramite {@link #aggiungiAppuntamenti}.
 	 * <p>L'agenda viene creata come <em>non salvata</em>.
 	 * 
 	 * @param nomeAgenda stringa che identifica l'agenda
@@ -110,9 +217,16 @@ public class Agenda implements Iterable<Appuntamento> {
 	
 	public Agenda(String nomeAgenda, ArrayList<Appuntamento> appuntamenti) {
 		this.nomeAgenda = (nomeAgenda.isEmpty()) ? "Agenda": nomeAgenda;
-		this.appuntamenti = (isAgenda(appuntamenti)) ? new ArrayList<>(appuntamenti) : new ArrayList<>();
+		this.appuntamenti = new TreeMap<>();
+		this.indicePersone = new HashMap<>();
+		this.indiceGiorni = new HashMap<>();
+		for(boolean aggiunto: aggiungiAppuntamenti(appuntamenti)) {
+			if(!aggiunto) {
+				svuota();
+				break;
+			}
+		}
 		saved = false;
-		ordinaAppuntamenti(this.appuntamenti);
 	}
 	
 	/**
@@ -152,16 +266,26 @@ public class Agenda implements Iterable<Appuntamento> {
 	/**
 	 * Crea una nuova {@code Agenda} importandola da un {@code File}.
 	 * Assegna al nome dell'{@code Agenda} il nome del {@code File}, rimuovendo eventuali estensioni.
-	 * Crea un'arraylist di appuntamenti leggendo le righe dal {@code File} 
+	 * Aggiunge all'agenda gli appuntamenti letti dalle righe del {@code File} 
 	 * se sono nel corretto formato {@code dd-MM-uuuu|HH-mm|minuti|luogo|persona}
 	 * <p>
 	 * Se vi sono righe malformate, quest'ultime verranno ignorate. 
 	 * Alla fine verrà stampato un messaggio d'errore nello {@code Standard Error}
-	 * contenente le righe non lette.
+	 * contenente le righe non lette (al più {@link ReportCaricamento#CAPIENZA_DEFAULT}) con il relativo numero di riga.<br>
+	 * Per maggiori informazioni sulla lettura vedi anche {@link #Agenda(File, ReportCaricamento)}.
 	 * <p>
 	 * <strong>Attenzione:</strong> le agende importate da file verranno impostate come
 	 * <em>salvate</em> se e solo se sono state importate da un file di testo {@code txt}.
 	 * Questo perché le agende vengono salvate su file <strong>soltanto</strong> in quel formato.
+	 * <p>
+	 * Se accanto al file di testo è presente il relativo journal {@code <nome>.journal}, le modifiche in esso registrate vengono 
+	 * riprodotte sull'agenda. Se il journal non può essere riprodotto interamente (ad esempio perché danneggiato), 
+	 * l'agenda viene impostata come <em>non salvata</em>.
+	 * <p>
+	 * Se il file è la cartella {@code <nome>.mesi} di un'agenda salvata per mese (vedi {@link #setSalvataggioPerMese}), 
+	 * vengono letti i file di tutti i mesi e l'agenda viene impostata come <em>salvata</em>. Allo stesso modo, se il file
+	 * è un file di testo compresso {@code <nome>.txt.gz} (vedi {@link #setLivelloCompressione}), viene decompresso durante
+	 * la lettura e l'agenda viene impostata come <em>salvata</em>.
 	 * 
 	 * @param file la rappresentazione astratta del file da cui leggere.
 	 * @throws IOException se si è verificata un'eccezione di I/O durante la lettura da file.
@@ -169,30 +293,200 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 
 	public Agenda(File file) throws IOException, FileNotFoundException {
+		this(file, new ReportCaricamento(), System.err);
+	}
+	
+	/**
+	 * Crea una nuova {@code Agenda} importandola da un {@code File}, come {@link #Agenda(File)}, 
+	 * ma senza stampare alcun messaggio: le righe scartate vengono registrate nel {@link ReportCaricamento} 
+	 * passato come parametro, con il relativo numero di riga e il motivo.
+	 * <p>
+	 * Il file viene letto in streaming, scandendo direttamente i caratteri di ogni riga (vedi {@link LettoreAgenda}).
+	 * Gli appuntamenti letti vengono aggiunti all'agenda a blocchi tramite {@link #aggiungiAppuntamenti}: 
+	 * come in precedenza, se due righe descrivono appuntamenti in conflitto viene mantenuta la prima.
+	 * La memoria occupata, oltre a quella dell'agenda stessa, non dipende quindi dalla dimensione del file.
+	 * 
+	 * @param file la rappresentazione astratta del file da cui leggere.
+	 * @param report il report in cui registrare l'esito del caricamento.
+	 * @throws IOException se si è verificata un'eccezione di I/O durante la lettura da file.
+	 * @throws FileNotFoundException se il file non esiste.
+	 */
+	
+	public Agenda(File file, ReportCaricamento report) throws IOException, FileNotFoundException {
+		this(file, report, null);
+	}
+	
+	private Agenda(File file, ReportCaricamento report, PrintStream avvisi) throws IOException, FileNotFoundException {
+		nomeAgenda = nomeDaFile(file.getName());
+		appuntamenti = new TreeMap<>();
+		indicePersone = new HashMap<>();
+		indiceGiorni = new HashMap<>();
 		
-		BufferedReader reader = new BufferedReader(new FileReader(file));
+		if(PartizioniAgenda.isCartella(file)) {
+			for(File segmento: PartizioniAgenda.segmenti(file).values()) caricaSegmento(segmento, report);
+			cartellaMesi = file.getAbsoluteFile();
+			saved = true;
+			if(avvisi != null) avvisaRigheScartate(avvisi, file, nomeAgenda, report);
+			return;
+		}
 		
-		nomeAgenda = stripExtension(file.getName());
-		appuntamenti = new ArrayList<>();
-
-		String stringaAppuntamento;
-		String [] errString = new String[2];
-		errString[0] = errString[1] = "Attenzione. Impossibile leggere dal file " + file.getName() + " le seguenti righe poiché malformate:\n";
-		Consumer<String> appendErr = (errLine) -> errString[1] += "Riga: " + errLine + "\n";
-		while((stringaAppuntamento = reader.readLine()) != null) {
-			String[] parametri = stringaAppuntamento.split("((min)?\\|)");
-				try {
-					if(parametri.length != 5 || !aggiungiAppuntamento(new Appuntamento(parametri))) appendErr.accept(stringaAppuntamento);						
-				} catch(AppuntamentoException e) { appendErr.accept(stringaAppuntamento); }	
-			} 	
-		reader.close();	
-		ordinaAppuntamenti(appuntamenti);
+		if(isCompresso(file)) {
+			try(LettoreAgenda lettore = new LettoreAgenda(apriCompresso(file))) {
+				carica(lettore, report);
+			}
+			salvataAltrove = true;
+			saved = true;
+			if(avvisi != null) avvisaRigheScartate(avvisi, file, nomeAgenda, report);
+			return;
+		}
+		
+		String firma = firma(file);
+		try(LettoreAgenda lettore = new LettoreAgenda(new FileReader(file))) {
+			carica(lettore, report);
+		}
+		firmaFile = firma;
 		saved = PatternMatcher.create(".*\\.txt$", file.getName()).matches();
+		if(saved) {
+			JournalAgenda letto = new JournalAgenda(file);
+			saved = letto.riproduci(this);
+			if(saved) journal = letto;
+		}
 
-		if(!errString[1].equals(errString[0]))	System.err.println(errString[1] + "Agenda " + nomeAgenda + " creata ignorando le righe elencate.");
+		if(avvisi != null) avvisaRigheScartate(avvisi, file, nomeAgenda, report);
 	}
 	
-	private static String stripExtension(String filename) {
+	/*
+	 * Imposta come salvata un'agenda ricostruita a partire da una copia equivalente del file di testo (e.g. uno snapshot 
+	 * del manifest delle agende), come se fosse appena stata caricata da quest'ultimo in assenza di journal.
+	 */
+	synchronized void impostaCaricataDa(File file) {
+		journal = new JournalAgenda(file);
+		firmaFile = firma(file);
+		saved = true;
+	}
+	
+	/*
+	 * La firma di un file di testo (dimensione e data di ultima modifica): se la firma del file da cui l'agenda è stata letta,
+	 * o su cui è stata riscritta, non è cambiata, il file non è stato modificato da altri (vedi ContenitoreAgende.ricarica).
+	 */
+	static String firma(File file) {
+		return file.length() + "|" + file.lastModified();
+	}
+	
+	synchronized String getFirmaFile() {
+		return firmaFile;
+	}
+	
+	static boolean isCompresso(File file) {
+		return file.getName().endsWith(ESTENSIONE_COMPRESSA);
+	}
+	
+	/*
+	 * Il nome dell'agenda salvata nel file: il nome del file senza estensione, oppure senza ".txt.gz" se il file è compresso.
+	 */
+	static String nomeDaFile(String nomeFile) {
+		if(nomeFile.endsWith(ESTENSIONE_COMPRESSA) && nomeFile.length() > ESTENSIONE_COMPRESSA.length()) {
+			return nomeFile.substring(0, nomeFile.length() - ESTENSIONE_COMPRESSA.length());
+		}
+		return stripExtension(nomeFile);
+	}
+	
+	/*
+	 * Il contenuto viene decompresso man mano che viene letto, per cui non è mai presente per intero in memoria.
+	 */
+	private static Reader apriCompresso(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			return new InputStreamReader(new GZIPInputStream(input, DIMENSIONE_BUFFER_GZIP));
+		} catch(IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+	
+	private void caricaSegmento(File segmento, ReportCaricamento report) throws IOException {
+		try(LettoreAgenda lettore = new LettoreAgenda(new FileReader(segmento))) {
+			carica(lettore, report);
+		}
+	}
+	
+	/**
+	 * Legge gli appuntamenti di un'agenda salvata per mese (vedi {@link #setSalvataggioPerMese}) che iniziano tra le due date 
+	 * passate come parametri, comprese. Vengono letti soltanto i file dei mesi compresi nel periodo, per cui il tempo di lettura
+	 * non dipende dalla dimensione dell'intera agenda. Le righe malformate vengono ignorate.
+	 * <p>L'agenda viene letta dalla cartella {@code <nome>.mesi} all'interno del <strong>PathName</strong> impostato per le Agende.
+	 * 
+	 * @param nomeAgenda il nome dell'agenda da cui leggere gli appuntamenti.
+	 * @param dataInizio la data di inizio del periodo nel formato {@code dd-MM-uuuu}.
+	 * @param dataFine la data di fine del periodo nel formato {@code dd-MM-uuuu}.
+	 * @return la lista degli appuntamenti del periodo, ordinati per data e orario di inizio.
+	 * @throws IOException se si è verificata un'eccezione di I/O durante la lettura.
+	 * @throws FileNotFoundException se l'agenda non è stata salvata per mese.
+	 * @throws IllegalArgumentException se una delle due date non è valida.
+	 */
+	
+	public static ArrayList<Appuntamento> leggiPeriodo(String nomeAgenda, String dataInizio, String dataFine) 
+			throws IOException, FileNotFoundException, IllegalArgumentException {
+		LocalDate inizio, fine;
+		try {
+			inizio = DataOrario.parseData(dataInizio);
+			fine = DataOrario.parseData(dataFine);
+		} catch(DateTimeParseException e) {
+			throw new IllegalArgumentException("Data non valida: " + e.getParsedString(), e);
+		}
+		File cartella = PartizioniAgenda.cartella(textFilesPathName, nomeAgenda);
+		if(!PartizioniAgenda.isCartella(cartella)) throw new FileNotFoundException("Impossibile trovare l'agenda " + nomeAgenda + " salvata per mese.");
+		
+		Agenda periodo = new Agenda(nomeAgenda);
+		ReportCaricamento report = new ReportCaricamento();
+		for(File segmento: PartizioniAgenda.segmenti(cartella).subMap(YearMonth.from(inizio), true, YearMonth.from(fine), true).values()) {
+			periodo.caricaSegmento(segmento, report);
+		}
+		DataOrario daOrario = DataOrario.daMinutiEpoch(inizio.toEpochDay() * DataOrario.MINUTI_GIORNO);
+		DataOrario aOrario = DataOrario.daMinutiEpoch((fine.toEpochDay() + 1) * DataOrario.MINUTI_GIORNO);
+		return new ArrayList<>(periodo.appuntamenti.subMap(daOrario, aOrario).values());
+	}
+	
+	/*
+	 * Stampa le righe scartate durante il caricamento di un'agenda da file, come avviene in Agenda(File).
+	 */
+	static void avvisaRigheScartate(PrintStream avvisi, File file, String nomeAgenda, ReportCaricamento report) {
+		if(report.isCompleto()) return;
+		avvisi.println("Attenzione. Impossibile leggere dal file " + file.getName() + " le seguenti righe poiché malformate:\n" 
+				+ report + "Agenda " + nomeAgenda + " creata ignorando le righe elencate.");
+	}
+	
+	private void carica(LettoreAgenda lettore, ReportCaricamento report) throws IOException {
+		ArrayList<Appuntamento> blocco = new ArrayList<>(DIMENSIONE_BLOCCO);
+		long[] righeBlocco = new long[DIMENSIONE_BLOCCO];
+		boolean fine = false;
+		while(!fine) {
+			fine = !lettore.prossimaRiga();
+			if(!fine) {
+				report.rigaLetta();
+				Appuntamento.Risultato risultato = lettore.haCinqueCampi() ? Appuntamento.crea(lettore.getCampi()) : null;
+				if(risultato != null && risultato.isValido()) {
+					righeBlocco[blocco.size()] = lettore.getNumeroRiga();
+					blocco.add(risultato.getAppuntamento());
+				}
+				else {
+					String motivo = lettore.isTroncata() ? "riga troppo lunga" : risultato == null ? "numero di campi errato" : risultato.getMessaggio();
+					report.aggiungiErrore(lettore.getNumeroRiga(), lettore.getRiga(), motivo);
+				}
+			}
+			if(blocco.size() == DIMENSIONE_BLOCCO || (fine && !blocco.isEmpty())) {
+				boolean[] esito = aggiungiAppuntamenti(blocco);
+				for(int i = 0; i < esito.length; i++) {
+					if(esito[i]) continue;
+					String testo = blocco.get(i).toString();
+					report.aggiungiErrore(righeBlocco[i], testo.substring(0, testo.length() - 1), "appuntamento non compatibile con l'agenda");
+				}
+				blocco.clear();
+			}
+		}
+	}
+	
+	static String stripExtension(String filename) {
 	    return filename.lastIndexOf(".") > 0 ? filename.substring(0, filename.lastIndexOf(".")) : filename;
 	}
 	
@@ -200,6 +494,87 @@ public class Agenda implements Iterable<Appuntamento> {
 		appuntamenti.sort( (first, second) -> first.getDataTimeInizio().compareTo(second.getDataTimeInizio()));
 	}
 	
+	/*
+	 * Il confronto tra i nomi è case-insensitive solo per le lettere ASCII, 
+	 * come avviene in Appuntamento.matchPersona con la flag CASE_INSENSITIVE.
+	 */
+	private static String normalizzaPersona(String nome) {
+		char[] caratteri = nome.toCharArray();
+		for(int i = 0; i < caratteri.length; i++) {
+			if(caratteri[i] >= 'A' && caratteri[i] <= 'Z') caratteri[i] += 'a' - 'A';
+		}
+		return new String(caratteri);
+	}
+	
+	private static <K> void inserisciInIndice(HashMap<K, TreeMap<DataOrario, Appuntamento>> indice, K chiave, Appuntamento appointment) {
+		indice.computeIfAbsent(chiave, k -> new TreeMap<>()).put(appointment.getDataTimeInizio(), appointment);
+	}
+	
+	private static <K> void eliminaDaIndice(HashMap<K, TreeMap<DataOrario, Appuntamento>> indice, K chiave, Appuntamento appointment) {
+		TreeMap<DataOrario, Appuntamento> gruppo = indice.get(chiave);
+		gruppo.remove(appointment.getDataTimeInizio());
+		if(gruppo.isEmpty()) indice.remove(chiave);
+	}
+	
+	private static Collection<Appuntamento> gruppoDaIndice(TreeMap<DataOrario, Appuntamento> gruppo) {
+		return gruppo == null ? Collections.emptyList() : gruppo.values();
+	}
+	
+	private Collection<Appuntamento> gruppoPersona(String nome) {
+		return gruppoDaIndice(indicePersone.get(normalizzaPersona(nome)));
+	}
+	
+	private Collection<Appuntamento> gruppoData(String data) {
+		try {
+			return gruppoDaIndice(indiceGiorni.get(DataOrario.parseData(data)));
+		} catch(DateTimeParseException e) {
+			return Collections.emptyList();
+		}
+	}
+	
+	/*
+	 * I mesi modificati vengono registrati solo se l'agenda è salvata per mese: altrimenti il prossimo salvataggio per mese 
+	 * riscrive comunque tutti i segmenti.
+	 */
+	private void segnaMese(Appuntamento appointment) {
+		if(cartellaMesi != null) mesiModificati.add(YearMonth.from(appointment.getDataTimeInizio().getData()));
+	}
+	
+	private void inserisci(Appuntamento appointment) {
+		segnaMese(appointment);
+		appuntamenti.put(appointment.getDataTimeInizio(), appointment);
+		inserisciInIndice(indicePersone, normalizzaPersona(appointment.getPersona()), appointment);
+		inserisciInIndice(indiceGiorni, appointment.getDataTimeInizio().getData(), appointment);
+	}
+	
+	private void elimina(Appuntamento appointment) {
+		segnaMese(appointment);
+		appuntamenti.remove(appointment.getDataTimeInizio());
+		eliminaDaIndice(indicePersone, normalizzaPersona(appointment.getPersona()), appointment);
+		eliminaDaIndice(indiceGiorni, appointment.getDataTimeInizio().getData(), appointment);
+	}
+	
+	private boolean svuota() {
+		boolean risultato = !appuntamenti.isEmpty();
+		if(cartellaMesi != null) mesiModificati.addAll(mesi());
+		appuntamenti.clear();
+		indicePersone.clear();
+		indiceGiorni.clear();
+		return risultato;
+	}
+	
+	private boolean eliminaTutti(ArrayList<Appuntamento> daEliminare) {
+		for(Appuntamento appointment: daEliminare) {
+			elimina(appointment);
+			registra(j -> j.registraRimozione(appointment));
+		}
+		return !daEliminare.isEmpty();
+	}
+	
+	private void registra(Consumer<JournalAgenda> record) {
+		if(journal != null) record.accept(journal);
+	}
+	
 	/**
 	 * Crea, se non esiste, il Path per il salvataggio delle agende.
 	 * 
@@ -226,6 +601,119 @@ public class Agenda implements Iterable<Appuntamento> {
 		return oldPath;
 	}
 	
+	/**
+	 * Cambia il numero massimo di record del journal delle agende, oltre il quale durante il salvataggio
+	 * il file di testo viene riscritto interamente. Con una soglia pari a {@code 0} il journal non viene mai usato.
+	 * 
+	 * @param soglia il nuovo numero massimo di record.
+	 * @return la soglia precedentemente impostata.
+	 * @throws IllegalArgumentException se la soglia è negativa.
+	 */
+	
+	public static int setSogliaJournal(int soglia) throws IllegalArgumentException {
+		if(soglia < 0) throw new IllegalArgumentException("Soglia negativa: " + soglia);
+		int vecchiaSoglia = sogliaJournal;
+		sogliaJournal = soglia;
+		return vecchiaSoglia;
+	}
+	
+	/**
+	 * Ritorna il numero massimo di record del journal delle agende. Se non è stato cambiato, 
+	 * vale {@link #SOGLIA_JOURNAL_DEFAULT}.
+	 * 
+	 * @return la soglia di tipo {@code int}.
+	 */
+	
+	public static int getSogliaJournal() {
+		return sogliaJournal;
+	}
+	
+	/**
+	 * Cambia la politica di sincronizzazione su disco dei file delle agende.
+	 * Di default le agende vengono salvate con {@link Durabilita#PER_FILE}.
+	 * 
+	 * @param nuovaDurabilita la nuova politica di sincronizzazione.
+	 * @return la politica precedentemente impostata.
+	 */
+	
+	public static Durabilita setDurabilita(Durabilita nuovaDurabilita) {
+		Durabilita vecchiaDurabilita = durabilita;
+		durabilita = nuovaDurabilita;
+		return vecchiaDurabilita;
+	}
+	
+	/**
+	 * Ritorna la politica di sincronizzazione su disco dei file delle agende.
+	 * 
+	 * @return la {@link Durabilita} impostata.
+	 */
+	
+	public static Durabilita getDurabilita() {
+		return durabilita;
+	}
+	
+	/**
+	 * Imposta il salvataggio delle agende <em>per mese</em>: ogni agenda viene salvata in una cartella {@code <nome>.mesi},
+	 * con un file di testo {@code uuuu-MM.txt} per ogni mese in cui inizia almeno un appuntamento, anziché in un unico file 
+	 * {@code <nome>.txt}. Salvando un'agenda già salvata per mese (o caricata dalla propria cartella, vedi {@link #Agenda(File)}) 
+	 * vengono riscritti soltanto i file dei mesi in cui sono stati aggiunti, rimossi o modificati appuntamenti. Al termine del
+	 * salvataggio, gli eventuali altri file dell'agenda (il file di testo con il journal e il file compresso) vengono eliminati, e viceversa.
+	 * <p>Di default le agende vengono salvate in un unico file di testo.
+	 * 
+	 * @param perMese {@code true} per salvare le agende per mese, {@code false} per salvarle in un unico file di testo.
+	 * @return l'impostazione precedente.
+	 */
+	
+	public static boolean setSalvataggioPerMese(boolean perMese) {
+		boolean vecchiaImpostazione = salvataggioPerMese;
+		salvataggioPerMese = perMese;
+		return vecchiaImpostazione;
+	}
+	
+	/**
+	 * Ritorna {@code true} se le agende vengono salvate per mese (vedi {@link #setSalvataggioPerMese}).
+	 * 
+	 * @return {@code true} se il salvataggio per mese è attivo, {@code false} altrimenti.
+	 */
+	
+	public static boolean isSalvataggioPerMese() {
+		return salvataggioPerMese;
+	}
+	
+	/**
+	 * Imposta il livello di compressione dei file delle agende. Con un livello compreso tra {@code 0} e {@code 9} ogni agenda 
+	 * viene salvata in un file di testo compresso in formato GZIP {@code <nome>.txt.gz}, anziché nel file {@code <nome>.txt}: 
+	 * i livelli più alti producono file più piccoli, ma richiedono più tempo per il salvataggio.
+	 * Il contenuto viene compresso e decompresso man mano che viene scritto e letto, senza costruirlo per intero in memoria.
+	 * <p>Il file compresso viene sempre riscritto interamente, senza utilizzare il journal. Al termine del salvataggio, l'eventuale
+	 * file di testo non compresso dell'agenda viene eliminato insieme al journal, e viceversa.
+	 * Se è attivo il salvataggio per mese (vedi {@link #setSalvataggioPerMese}), la compressione viene ignorata.
+	 * <p>Di default le agende vengono salvate senza compressione ({@link #COMPRESSIONE_DISATTIVATA}).
+	 * 
+	 * @param livello il livello di compressione, da {@code 0} a {@code 9}, oppure {@link #COMPRESSIONE_DISATTIVATA}.
+	 * @return il livello precedentemente impostato.
+	 * @throws IllegalArgumentException se il livello non è valido.
+	 */
+	
+	public static int setLivelloCompressione(int livello) throws IllegalArgumentException {
+		if(livello != COMPRESSIONE_DISATTIVATA && (livello < Deflater.NO_COMPRESSION || livello > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("Livello di compressione non valido: " + livello);
+		}
+		int vecchioLivello = livelloCompressione;
+		livelloCompressione = livello;
+		return vecchioLivello;
+	}
+	
+	/**
+	 * Ritorna il livello di compressione dei file delle agende (vedi {@link #setLivelloCompressione}).
+	 * 
+	 * @return il livello di compressione, oppure {@link #COMPRESSIONE_DISATTIVATA}.
+	 */
+	
+	public static int getLivelloCompressione() {
+		return livelloCompressione;
+	}
+	
 	/**
 	 * Ritorna il Path per il salvataggio delle agende su file.
 	 * Se questo non è stato cambiato, di base è la cartella <em>"Agende_testuali/"</em>
@@ -241,6 +729,18 @@ public class Agenda implements Iterable<Appuntamento> {
 	/**
 	 * Salva l'agenda su un file di testo nel formato {@code txt}.
 	 * Imposta il valore dell'agenda come <em>salvata</em>.
+	 * <p>Se il file dell'agenda esiste già ed è quello da cui l'agenda è stata caricata (o su cui è stata salvata l'ultima volta),
+	 * vengono solo accodate al journal {@code <nome>.journal} le modifiche effettuate dall'ultimo salvataggio, 
+	 * per cui il tempo di salvataggio dipende dal numero di modifiche e non dalla dimensione dell'agenda.
+	 * <p>Altrimenti (ad esempio dopo aver cambiato il nome dell'agenda, oppure se il file è stato modificato all'esterno dell'applicazione,
+	 * per cui il journal non gli appartiene più), oppure se il journal supera {@link #getSogliaJournal} record,
+	 * il file viene riscritto interamente e il journal eliminato. Gli appuntamenti vengono scritti uno alla volta su 
+	 * un {@link BufferedWriter} (vedi {@link #elencaAppuntamenti(Appendable)}), senza costruire in memoria il contenuto dell'intero file.
+	 * <p>La riscrittura avviene su un file temporaneo nella stessa cartella, che sostituisce il file dell'agenda con uno spostamento 
+	 * atomico: un'interruzione durante il salvataggio non danneggia quindi il file precedente. I file scritti vengono sincronizzati 
+	 * su disco secondo la {@link Durabilita} impostata.
+	 * <p>Se è attivo il salvataggio per mese (vedi {@link #setSalvataggioPerMese}), l'agenda viene invece salvata nella cartella
+	 * {@code <nome>.mesi}, riscrivendo allo stesso modo soltanto i file dei mesi modificati.
 	 * <p>
 	 * Il salvataggio avviene all'interno del <strong>PathName</strong> impostato
 	 * per le Agende. Per cui, se tale percorso non esiste, viene creato.
@@ -249,15 +749,260 @@ public class Agenda implements Iterable<Appuntamento> {
 	 * @throws IOException se si verifica un'eccezione di I/O durante il tentativo di salvataggio.
 	 */
 	
-	public boolean salvaAgendaSuFile() throws IOException {
+	public synchronized boolean salvaAgendaSuFile() throws IOException {
+		GruppoScritture gruppo = new GruppoScritture(durabilita);
+		try {
+			salvaAgendaSuFile(gruppo);
+			gruppo.completa();
+		} catch(IOException e) {
+			gruppo.annulla();
+			throw e;
+		}
+		return saved;
+	}
+	
+	/*
+	 * Scrive l'agenda registrando i file nel gruppo: l'agenda risulta salvata solo quando il gruppo viene completato,
+	 * e solo se nel frattempo non è stata modificata.
+	 */
+	synchronized void salvaAgendaSuFile(GruppoScritture gruppo) throws IOException {
+		long versioneScritta = versione;
 		if(!new File(textFilesPathName).exists()) createPathToAgende();
+		if(salvataggioPerMese) {
+			salvaMesi(gruppo, versioneScritta);
+			gruppo.dopo(() -> completaSalvataggio(versioneScritta));
+			return;
+		}
+		if(livelloCompressione != COMPRESSIONE_DISATTIVATA) {
+			salvaCompressa(gruppo, livelloCompressione);
+			gruppo.dopo(() -> completaSalvataggio(versioneScritta));
+			return;
+		}
 		File file = new File(textFilesPathName, nomeAgenda + ".txt");
-		if(!file.exists()) file.createNewFile();
-		BufferedWriter br = new BufferedWriter(new FileWriter(file));
-		br.write(elencaAppuntamenti(appuntamenti));
-		br.close();
-		saved = true;
-		return saved;
+		if(journal != null && journal.isBase(file) && file.exists() && firma(file).equals(firmaFile) && journal.getNumeroRecord() <= sogliaJournal) {
+			journal.scriviPendenti(gruppo);
+		}
+		else {
+			Path temporaneo = gruppo.fileTemporaneo(file.toPath());
+			try(BufferedWriter br = new BufferedWriter(new FileWriter(temporaneo.toFile()))) {
+				elencaAppuntamenti(br);
+			} catch(IOException e) {
+				Files.deleteIfExists(temporaneo);
+				throw e;
+			}
+			JournalAgenda nuovoJournal = (journal != null && journal.isBase(file)) ? journal : new JournalAgenda(file);
+			gruppo.sostituisci(temporaneo, file.toPath());
+			gruppo.dopo(() -> completaRiscrittura(file, nuovoJournal, versioneScritta));
+		}
+		gruppo.dopo(() -> completaSalvataggio(versioneScritta));
+	}
+	
+	/*
+	 * Se l'agenda è stata modificata dopo la riscrittura del file, le modifiche registrate nel frattempo 
+	 * si riferiscono al file precedente: il journal viene quindi abbandonato e il prossimo salvataggio riscrive il file.
+	 */
+	private synchronized void completaRiscrittura(File file, JournalAgenda nuovoJournal, long versioneScritta) throws IOException {
+		firmaFile = firma(file);
+		salvataAltrove = false;
+		if(versioneScritta != versione) journal = null;
+		else {
+			nuovoJournal.azzera();
+			journal = nuovoJournal;
+		}
+		String nome = nomeDaFile(file.getName());
+		eliminaRappresentazioni(new File(file.getParentFile(), nome + ESTENSIONE_COMPRESSA), PartizioniAgenda.cartella(file.getParent(), nome));
+		cartellaMesi = null;
+		mesiModificati.clear();
+	}
+	
+	/*
+	 * Al termine di un salvataggio vengono eliminate le altre rappresentazioni dell'agenda nella stessa cartella (e.g. il file 
+	 * di testo dopo un salvataggio compresso): altrimenti al caricamento successivo potrebbe essere letta la copia precedente.
+	 * La cartella di un'agenda salvata per mese viene eliminata insieme ai propri segmenti.
+	 */
+	private static boolean eliminaRappresentazioni(File... rappresentazioni) throws IOException {
+		boolean eliminato = false;
+		for(File file: rappresentazioni) {
+			File[] segmenti = file.isDirectory() ? file.listFiles() : null;
+			if(segmenti != null) for(File segmento: segmenti) Files.deleteIfExists(segmento.toPath());
+			eliminato |= Files.deleteIfExists(file.toPath());
+		}
+		return eliminato;
+	}
+	
+	/**
+	 * Elimina i file con cui l'agenda col nome passato come parametro è salvata all'interno del <strong>PathName</strong> 
+	 * impostato per le Agende: il file di testo con il relativo journal, il file di testo compresso e la cartella dei mesi.
+	 * 
+	 * @param nomeAgenda il nome dell'agenda.
+	 * @return {@code true} se è stato eliminato almeno un file, {@code false} se l'agenda non è salvata su file.
+	 * @throws IOException se non è possibile eliminare un file.
+	 */
+	
+	public static boolean eliminaFileAgenda(String nomeAgenda) throws IOException {
+		return eliminaRappresentazioni(new File(textFilesPathName, nomeAgenda + ".txt"), new File(textFilesPathName, nomeAgenda + JournalAgenda.ESTENSIONE),
+				new File(textFilesPathName, nomeAgenda + ESTENSIONE_COMPRESSA), PartizioniAgenda.cartella(textFilesPathName, nomeAgenda));
+	}
+	
+	private void salvaCompressa(GruppoScritture gruppo, int livello) throws IOException {
+		File file = new File(textFilesPathName, nomeAgenda + ESTENSIONE_COMPRESSA);
+		Path temporaneo = gruppo.fileTemporaneo(file.toPath());
+		try(BufferedWriter br = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temporaneo), DIMENSIONE_BUFFER_GZIP) {
+			{ def.setLevel(livello); }
+		}))) {
+			elencaAppuntamenti(br);
+		} catch(IOException e) {
+			Files.deleteIfExists(temporaneo);
+			throw e;
+		}
+		gruppo.sostituisci(temporaneo, file.toPath());
+		gruppo.dopo(() -> completaRiscritturaCompressa(file));
+	}
+	
+	/*
+	 * Il journal e la firma si riferiscono al file di testo non compresso, che non descrive più l'agenda e viene quindi eliminato.
+	 */
+	private synchronized void completaRiscritturaCompressa(File file) throws IOException {
+		journal = null;
+		firmaFile = null;
+		salvataAltrove = true;
+		String nome = nomeDaFile(file.getName());
+		eliminaRappresentazioni(new File(file.getParentFile(), nome + ".txt"), new File(file.getParentFile(), nome + JournalAgenda.ESTENSIONE),
+				PartizioniAgenda.cartella(file.getParent(), nome));
+		cartellaMesi = null;
+		mesiModificati.clear();
+	}
+	
+	/*
+	 * Se la cartella è quella da cui l'agenda è stata letta o su cui è stata salvata, vengono riscritti soltanto i segmenti
+	 * dei mesi modificati, altrimenti tutti. I segmenti dei mesi rimasti senza appuntamenti vengono eliminati.
+	 */
+	private void salvaMesi(GruppoScritture gruppo, long versioneScritta) throws IOException {
+		File cartella = PartizioniAgenda.cartella(textFilesPathName, nomeAgenda);
+		Files.createDirectories(cartella.toPath());
+		boolean completo = !cartella.equals(cartellaMesi);
+		TreeSet<YearMonth> daScrivere = completo ? mesi() : new TreeSet<>(mesiModificati);
+		ArrayList<File> daEliminare = new ArrayList<>();
+		if(completo) {
+			for(Map.Entry<YearMonth, File> segmento: PartizioniAgenda.segmenti(cartella).entrySet()) {
+				if(!daScrivere.contains(segmento.getKey())) daEliminare.add(segmento.getValue());
+			}
+		}
+		for(YearMonth mese: daScrivere) {
+			Collection<Appuntamento> delMese = appuntamenti.subMap(PartizioniAgenda.inizio(mese), PartizioniAgenda.inizio(mese.plusMonths(1))).values();
+			File segmento = PartizioniAgenda.segmento(cartella, mese);
+			if(delMese.isEmpty()) {
+				daEliminare.add(segmento);
+				continue;
+			}
+			Path temporaneo = gruppo.fileTemporaneo(segmento.toPath());
+			try(BufferedWriter br = new BufferedWriter(new FileWriter(temporaneo.toFile()))) {
+				elencaAppuntamenti(delMese, br);
+			} catch(IOException e) {
+				Files.deleteIfExists(temporaneo);
+				throw e;
+			}
+			gruppo.sostituisci(temporaneo, segmento.toPath());
+		}
+		gruppo.dopo(() -> completaSalvataggioMesi(cartella, daEliminare, completo, versioneScritta));
+	}
+	
+	/*
+	 * Il journal e la firma si riferiscono al file di testo, che non descrive più l'agenda e viene quindi eliminato (così come il file
+	 * compresso). Se l'agenda è stata modificata dopo un salvataggio completo, le modifiche non sono state registrate: il prossimo 
+	 * salvataggio riscrive quindi tutti i segmenti.
+	 */
+	private synchronized void completaSalvataggioMesi(File cartella, ArrayList<File> daEliminare, boolean completo, long versioneScritta) throws IOException {
+		for(File segmento: daEliminare) Files.deleteIfExists(segmento.toPath());
+		journal = null;
+		firmaFile = null;
+		String nome = stripExtension(cartella.getName());
+		eliminaRappresentazioni(new File(cartella.getParentFile(), nome + ".txt"), new File(cartella.getParentFile(), nome + JournalAgenda.ESTENSIONE),
+				new File(cartella.getParentFile(), nome + ESTENSIONE_COMPRESSA));
+		if(versioneScritta == versione) {
+			cartellaMesi = cartella;
+			mesiModificati.clear();
+		}
+		else if(completo) cartellaMesi = null;
+	}
+	
+	/*
+	 * I mesi in cui inizia almeno un appuntamento, trovati saltando da un mese al successivo.
+	 */
+	private TreeSet<YearMonth> mesi() {
+		TreeSet<YearMonth> mesi = new TreeSet<>();
+		DataOrario chiave = appuntamenti.isEmpty() ? null : appuntamenti.firstKey();
+		while(chiave != null) {
+			YearMonth mese = YearMonth.from(chiave.getData());
+			mesi.add(mese);
+			chiave = appuntamenti.ceilingKey(PartizioniAgenda.inizio(mese.plusMonths(1)));
+		}
+		return mesi;
+	}
+	
+	/*
+	 * Usato quando l'agenda viene letta da un ArchivioAgende, o vi viene scritta: come in completaRiscritturaCompressa, l'agenda
+	 * non è più descritta dal file di testo, e risulta salvata se non è stata modificata dopo la versione scritta.
+	 * La versione viene ricordata, così che l'archivio non riscriva un'agenda che non è cambiata (vedi isArchiviata).
+	 */
+	synchronized void impostaArchiviata(long versioneScritta) {
+		journal = null;
+		firmaFile = null;
+		salvataAltrove = true;
+		versioneArchiviata = versioneScritta;
+		if(versioneScritta == versione) saved = true;
+	}
+	
+	synchronized boolean isArchiviata() {
+		return versioneArchiviata == versione;
+	}
+	
+	synchronized long getVersione() {
+		return versione;
+	}
+	
+	/*
+	 * Un'agenda letta o salvata per mese oppure in un file compresso o in un archivio non è descritta dal file di testo <nome>.txt, anche se questo esiste.
+	 */
+	synchronized boolean isDescrittaDaTesto() {
+		return cartellaMesi == null && !salvataAltrove;
+	}
+	
+	private synchronized void completaSalvataggio(long versioneScritta) {
+		if(versioneScritta == versione) saved = true;
+	}
+	
+	/*
+	 * Imposta l'agenda come non salvata e notifica gli osservatori.
+	 */
+	private void segnaModificata() {
+		saved = false;
+		versione++;
+		for(Consumer<Agenda> osservatore: osservatori) osservatore.accept(this);
+	}
+	
+	/**
+	 * Registra un osservatore, che verrà notificato ad ogni modifica dell'agenda (aggiunta, rimozione e modifica di appuntamenti 
+	 * e cambio del nome). Un'operazione che modifica più appuntamenti produce un'unica notifica.
+	 * <p>L'osservatore viene chiamato dal thread che ha modificato l'agenda, mentre questo ne detiene il lock: 
+	 * deve quindi terminare rapidamente, senza attendere altri thread.
+	 * 
+	 * @param osservatore l'osservatore da notificare, che riceve l'agenda modificata.
+	 */
+	
+	public void aggiungiOsservatore(Consumer<Agenda> osservatore) {
+		osservatori.add(osservatore);
+	}
+	
+	/**
+	 * Rimuove un osservatore precedentemente registrato con {@link #aggiungiOsservatore}.
+	 * 
+	 * @param osservatore l'osservatore da rimuovere.
+	 * @return {@code true} se l'osservatore era registrato, {@code false} altrimenti.
+	 */
+	
+	public boolean rimuoviOsservatore(Consumer<Agenda> osservatore) {
+		return osservatori.remove(osservatore);
 	}
 	
 	/**
@@ -295,9 +1040,9 @@ public class Agenda implements Iterable<Appuntamento> {
 	 * @param nomeAgenda nuovo nome dell'agenda di tipo {@code String}.
 	 */
 
-	public void setNomeAgenda(String nomeAgenda) {
+	public synchronized void setNomeAgenda(String nomeAgenda) {
 		this.nomeAgenda = nomeAgenda.isEmpty() ? "Agenda" : nomeAgenda;
-		saved = false;
+		segnaModificata();
 	}
 	
 	/**
@@ -307,7 +1052,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 
 	public ArrayList<Appuntamento> getAppuntamenti() {
-		return new ArrayList<>(appuntamenti);
+		return new ArrayList<>(appuntamenti.values());
 	}
 	
 	/**
@@ -320,34 +1065,32 @@ public class Agenda implements Iterable<Appuntamento> {
 		return appuntamenti.size();
 	}
 
-	private ArrayList<Appuntamento> searchAppuntamentoGenerico(Predicate <Appuntamento> predicato) {
-		return (ArrayList<Appuntamento>) appuntamenti.stream().filter(predicato).collect(Collectors.toList());
-	}
-	
 	/**
 	 * Effettua una ricerca degli appuntamenti basata sul nome della persona con cui
 	 * si ha l'appuntamento. Ritorna una lista degli appuntamenti trovati.<br>
 	 * La lista sarà vuota se non è stato trovato alcun appuntamento.
+	 * <p>Il confronto è <em>case-insensitive</em> e avviene tramite l'indice delle persone dell'agenda.
 	 * 
 	 * @param nome il nome della persona con cui si ha l'appuntamento.
 	 * @return un {@code ArrayList} degli appuntamenti trovati.
 	 */
 	
 	public ArrayList<Appuntamento> searchAppuntamentoPerPersona(String nome) {	
-		return searchAppuntamentoGenerico( appuntamento -> appuntamento.matchPersona(nome));
+		return new ArrayList<>(gruppoPersona(nome));
 	}
 	
 	/**
 	 * Effettua una ricerca degli appuntamenti basata sulla data degli stessi.
 	 * Ritorna una lista degli appuntamenti trovati.<br>La lista sarà vuota se
-	 * non è stato trovato alcun appuntamento.
+	 * non è stato trovato alcun appuntamento oppure se la data non è nel formato corretto.
+	 * <p>La ricerca accede direttamente al gruppo di appuntamenti del giorno cercato.
 	 * 
 	 * @param data la data dell'appuntamento nel formato {@code dd-MM-uuuu}.
 	 * @return un {@code ArrayList} degli appuntamenti trovati.
 	 */
 	
 	public ArrayList<Appuntamento> searchAppuntamentoPerData(String data) {
-		return searchAppuntamentoGenerico( appuntamento -> appuntamento.matchData(data));
+		return new ArrayList<>(gruppoData(data));
 	}
 	
 	/**
@@ -355,7 +1098,8 @@ public class Agenda implements Iterable<Appuntamento> {
 	 * <p>Siccome non possono esistere due appuntamenti che iniziano nel medesimo momento, questo
 	 * metodo è utile per cercare con precisione un singolo appuntamento.<br>
 	 * Ritorna una lista contenente al più un elemento. La lista sarà vuota se
-	 * l'appuntamento cercato non esiste.
+	 * l'appuntamento cercato non esiste oppure se la data e l'orario non sono nel formato corretto.
+	 * <p>La ricerca avviene direttamente sull'indice ordinato dell'agenda, con costo logaritmico.
 	 * 
 	 * @param data la data dell'appuntamento nel formato {@code dd-MM-uuuu}.
 	 * @param orario l'orario dell'appuntamento nel formato {@code HH-mm}.
@@ -363,7 +1107,12 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public ArrayList<Appuntamento> searchAppuntamentoPerDataOrario(String data, String orario) {
-		return searchAppuntamentoGenerico( appuntamento -> appuntamento.matchDataOrario(data, orario));
+		ArrayList<Appuntamento> risultato = new ArrayList<>();
+		try {
+			Appuntamento trovato = appuntamenti.get(new DataOrario(data, orario));
+			if(trovato != null) risultato.add(trovato);
+		} catch(DateTimeParseException e) { }
+		return risultato;
 	}
 	
 	/**
@@ -381,7 +1130,127 @@ public class Agenda implements Iterable<Appuntamento> {
 	
 	public ArrayList<Appuntamento> searchAppuntamentoPerDataOrario(String dataOrario) {
 		String[] parametri = dataOrarioSplit(dataOrario);
-		return searchAppuntamentoGenerico( appuntamento -> appuntamento.matchDataOrario(parametri[0], parametri[1]));
+		return searchAppuntamentoPerDataOrario(parametri[0], parametri[1]);
+	}
+	
+	/**
+	 * Ritorna una vista in sola lettura, ordinata per data e orario, degli appuntamenti che iniziano
+	 * a partire da {@code inizio} (incluso) e prima di {@code fine} (escluso).
+	 * <p>Gli estremi dell'intervallo vengono individuati sull'indice ordinato dell'agenda con costo logaritmico, mentre gli
+	 * appuntamenti vengono letti solo durante l'iterazione. La vista riflette le successive modifiche dell'agenda, 
+	 * tuttavia non è possibile modificare l'agenda mentre si itera sulla vista: in tal caso verrà sollevata 
+	 * un'eccezione {@link ConcurrentModificationException}.
+	 * 
+	 * @param inizio il data-orario di inizio dell'intervallo (incluso).
+	 * @param fine il data-orario di fine dell'intervallo (escluso).
+	 * @return una {@code Collection} in sola lettura degli appuntamenti che iniziano nell'intervallo.
+	 * @throws IllegalArgumentException se {@code inizio} è successivo a {@code fine}.
+	 */
+	
+	public Collection<Appuntamento> appuntamentiTra(DataOrario inizio, DataOrario fine) throws IllegalArgumentException {
+		return Collections.unmodifiableCollection(appuntamenti.subMap(inizio, true, fine, false).values());
+	}
+	
+	/**
+	 * Ritorna una vista in sola lettura, ordinata per data e orario, degli appuntamenti che iniziano
+	 * a partire da {@code inizio} (incluso).
+	 * <p>Valgono le stesse considerazioni di {@link #appuntamentiTra}.
+	 * 
+	 * @param inizio il data-orario da cui iniziare (incluso).
+	 * @return una {@code Collection} in sola lettura degli appuntamenti che iniziano da {@code inizio} in poi.
+	 */
+	
+	public Collection<Appuntamento> appuntamentiDa(DataOrario inizio) {
+		return Collections.unmodifiableCollection(appuntamenti.tailMap(inizio, true).values());
+	}
+	
+	/**
+	 * Ritorna una vista in sola lettura, ordinata per data e orario, degli appuntamenti che iniziano
+	 * prima di {@code fine} (escluso).
+	 * <p>Valgono le stesse considerazioni di {@link #appuntamentiTra}.
+	 * 
+	 * @param fine il data-orario entro cui gli appuntamenti devono iniziare (escluso).
+	 * @return una {@code Collection} in sola lettura degli appuntamenti che iniziano prima di {@code fine}.
+	 */
+	
+	public Collection<Appuntamento> appuntamentiFinoA(DataOrario fine) {
+		return Collections.unmodifiableCollection(appuntamenti.headMap(fine, false).values());
+	}
+	
+	/**
+	 * Ritorna una vista in sola lettura, ordinata per data e orario, degli appuntamenti che iniziano
+	 * a partire da questo momento (vedi {@link DataOrario#adesso}).
+	 * <p>Valgono le stesse considerazioni di {@link #appuntamentiTra}.
+	 * 
+	 * @return una {@code Collection} in sola lettura degli appuntamenti futuri.
+	 */
+	
+	public Collection<Appuntamento> appuntamentiDaAdesso() {
+		return appuntamentiDa(DataOrario.adesso());
+	}
+	
+	/**
+	 * Cerca il primo intervallo libero di almeno {@code minuti} minuti che inizia non prima di {@code dopo}.<br>
+	 * Ritorna il data-orario di inizio dell'intervallo trovato: un appuntamento che inizia in quel momento
+	 * e dura {@code minuti} minuti è compatibile con l'agenda.
+	 * <p>La ricerca individua sull'indice ordinato l'appuntamento in corso in {@code dopo} e scorre poi gli appuntamenti
+	 * successivi, fermandosi al primo spazio sufficientemente ampio tra la fine di uno e l'inizio del seguente.
+	 * Il costo è quindi logaritmico rispetto alla dimensione dell'agenda, più il numero di appuntamenti esaminati.
+	 * 
+	 * @param dopo il data-orario da cui iniziare la ricerca (incluso).
+	 * @param minuti la durata minima dell'intervallo cercato.
+	 * @return il {@link DataOrario} di inizio del primo intervallo libero.
+	 * @throws IllegalArgumentException se {@code minuti} non è positivo.
+	 */
+	
+	public DataOrario cercaSlotLibero(DataOrario dopo, int minuti) throws IllegalArgumentException {
+		if(minuti <= 0) throw new IllegalArgumentException("La durata deve essere positiva: " + minuti);
+		return cercaSlotLibero(dopo, minuti, inizio -> inizio);
+	}
+	
+	/**
+	 * Cerca il primo intervallo libero di almeno {@code minuti} minuti che inizia non prima di {@code dopo} e
+	 * che è interamente compreso nella fascia oraria giornaliera tra {@code inizioGiornata} (incluso) e {@code fineGiornata} (escluso).
+	 * <p>Valgono le stesse considerazioni di {@link #cercaSlotLibero(DataOrario, int)}: se lo spazio tra due appuntamenti
+	 * esce dalla fascia oraria, la ricerca prosegue dall'inizio della fascia del giorno seguente.
+	 * 
+	 * @param dopo il data-orario da cui iniziare la ricerca (incluso).
+	 * @param minuti la durata minima dell'intervallo cercato.
+	 * @param inizioGiornata l'orario di inizio della fascia giornaliera.
+	 * @param fineGiornata l'orario di fine della fascia giornaliera.
+	 * @return il {@link DataOrario} di inizio del primo intervallo libero.
+	 * @throws IllegalArgumentException se {@code minuti} non è positivo, se {@code inizioGiornata} non precede
+	 * {@code fineGiornata} oppure se la fascia giornaliera è più breve di {@code minuti}.
+	 */
+	
+	public DataOrario cercaSlotLibero(DataOrario dopo, int minuti, LocalTime inizioGiornata, LocalTime fineGiornata) throws IllegalArgumentException {
+		int inizioFascia = inizioGiornata.getHour() * 60 + inizioGiornata.getMinute();
+		int fineFascia = fineGiornata.getHour() * 60 + fineGiornata.getMinute();
+		if(minuti <= 0 || minuti > fineFascia - inizioFascia) {
+			throw new IllegalArgumentException("Impossibile cercare " + minuti + " minuti tra le " + inizioGiornata + " e le " + fineGiornata);
+		}
+		return cercaSlotLibero(dopo, minuti, inizio -> {
+			long minutoDelGiorno = Math.floorMod(inizio, DataOrario.MINUTI_GIORNO);
+			if(minutoDelGiorno < inizioFascia) return inizio - minutoDelGiorno + inizioFascia;
+			if(minutoDelGiorno + minuti > fineFascia) return inizio - minutoDelGiorno + DataOrario.MINUTI_GIORNO + inizioFascia;
+			return inizio;
+		});
+	}
+	
+	/*
+	 * adattaInizio sposta in avanti un possibile inizio (in minuti dall'epoca)
+	 * fino al primo istante ammesso, senza mai spostarlo all'indietro.
+	 */
+	private DataOrario cercaSlotLibero(DataOrario dopo, int minuti, LongUnaryOperator adattaInizio) {
+		long inizio = dopo.getMinutiEpoch();
+		Map.Entry<DataOrario, Appuntamento> precedente = appuntamenti.floorEntry(dopo);
+		if(precedente != null) inizio = Math.max(inizio, precedente.getValue().getDataTimeFine().getMinutiEpoch());
+		inizio = adattaInizio.applyAsLong(inizio);
+		for(Appuntamento appointment: appuntamenti.tailMap(dopo, false).values()) {
+			if(appointment.getDataTimeInizio().getMinutiEpoch() >= inizio + minuti) break;
+			inizio = adattaInizio.applyAsLong(Math.max(inizio, appointment.getDataTimeFine().getMinutiEpoch()));
+		}
+		return DataOrario.daMinutiEpoch(inizio);
 	}
 	
 	/**
@@ -395,7 +1264,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public boolean contains(Appuntamento appointment) {
-		return appuntamenti.contains(appointment);
+		return appointment.equals(appuntamenti.get(appointment.getDataTimeInizio()));
 	}
 	
 	/**
@@ -427,20 +1296,53 @@ public class Agenda implements Iterable<Appuntamento> {
 	/**
 	 * Verifica che un appuntamento sia compatibile con l'agenda. Ritorna {@code true} se
 	 * esso non è in conflitto con nessun appuntamento in agenda.
+	 * <p>Poiché gli appuntamenti dell'agenda non si sovrappongono, il controllo viene effettuato
+	 * solo sull'ultimo appuntamento che inizia non dopo di esso e sul primo che inizia dopo di esso.
 	 * 
 	 * @param appointment l'appuntamento da testare
 	 * @return {@code true} se l'appuntamento è compatibile con l'agenda, {@code false} altrimenti.
 	 */
 	
 	public boolean isCompatible(Appuntamento appointment) {
-		return appuntamenti.stream().allMatch( elemento -> elemento.isCompatible(appointment) );
+		Map.Entry<DataOrario, Appuntamento> precedente = appuntamenti.floorEntry(appointment.getDataTimeInizio());
+		Map.Entry<DataOrario, Appuntamento> successivo = appuntamenti.higherEntry(appointment.getDataTimeInizio());
+		return (precedente == null || precedente.getValue().isCompatible(appointment)) 
+				&& (successivo == null || successivo.getValue().isCompatible(appointment));
 	}
 
 
-	private String elencaAppuntamenti(ArrayList<Appuntamento> lista) {
-		String stringaAppuntamenti = "";
-		for(Appuntamento appointment: lista) stringaAppuntamenti+= appointment.toString();
-		return stringaAppuntamenti;
+	/*
+	 * Una scrittura su Appendable, per riusare gli stessi metodi sia su file che su stringa.
+	 */
+	private interface Scrittura {
+		void scriviSu(Appendable destinazione) throws IOException;
+	}
+	
+	private static String inStringa(Scrittura scrittura) {
+		StringBuilder builder = new StringBuilder();
+		try {
+			scrittura.scriviSu(builder);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e); // uno StringBuilder non solleva IOException
+		}
+		return builder.toString();
+	}
+	
+	private static void elencaAppuntamenti(Iterable<Appuntamento> lista, Appendable destinazione) throws IOException {
+		for(Appuntamento appointment: lista) appointment.scriviSu(destinazione);
+	}
+	
+	/**
+	 * Scrive l'elenco di tutti gli appuntamenti dell'agenda sull'{@link Appendable} passato come parametro, 
+	 * un appuntamento per riga, nello stesso formato usato per il salvataggio su file.
+	 * <p>Ogni appuntamento viene scritto direttamente sulla destinazione, senza costruire l'elenco in una stringa.
+	 * 
+	 * @param destinazione l'{@code Appendable} su cui scrivere (e.g. un {@link java.io.Writer} o uno {@link StringBuilder}).
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void elencaAppuntamenti(Appendable destinazione) throws IOException {
+		elencaAppuntamenti(appuntamenti.values(), destinazione);
 	}
 	
 	/**
@@ -453,7 +1355,20 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public String elencaPerPersona(String nome) {
-		return elencaAppuntamenti(searchAppuntamentoPerPersona(nome));
+		return inStringa(destinazione -> elencaPerPersona(nome, destinazione));
+	}
+	
+	/**
+	 * Scrive sull'{@link Appendable} passato come parametro lo stesso elenco di {@link #elencaPerPersona(String)},
+	 * senza costruire alcuna stringa intermedia.
+	 * 
+	 * @param nome il nome della persona da cui elencare gli appuntamenti
+	 * @param destinazione l'{@code Appendable} su cui scrivere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void elencaPerPersona(String nome, Appendable destinazione) throws IOException {
+		elencaAppuntamenti(gruppoPersona(nome), destinazione);
 	}
 	
 	/**
@@ -466,7 +1381,20 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public String elencaPerData(String data) {
-		return elencaAppuntamenti(searchAppuntamentoPerData(data));
+		return inStringa(destinazione -> elencaPerData(data, destinazione));
+	}
+	
+	/**
+	 * Scrive sull'{@link Appendable} passato come parametro lo stesso elenco di {@link #elencaPerData(String)},
+	 * senza costruire alcuna stringa intermedia.
+	 * 
+	 * @param data la data da cui elencare gli appuntamenti
+	 * @param destinazione l'{@code Appendable} su cui scrivere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void elencaPerData(String data, Appendable destinazione) throws IOException {
+		elencaAppuntamenti(gruppoData(data), destinazione);
 	}
 	
 	/**
@@ -478,7 +1406,20 @@ public class Agenda implements Iterable<Appuntamento> {
 	
 	@Override
 	public String toString() {
-		return "Agenda: " + nomeAgenda + "\n" + elencaAppuntamenti(appuntamenti);
+		return inStringa(this::scriviSu);
+	}
+	
+	/**
+	 * Scrive sull'{@link Appendable} passato come parametro la stessa rappresentazione di {@link #toString()},
+	 * senza costruire alcuna stringa intermedia.
+	 * 
+	 * @param destinazione l'{@code Appendable} su cui scrivere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void scriviSu(Appendable destinazione) throws IOException {
+		destinazione.append("Agenda: ").append(nomeAgenda).append('\n');
+		elencaAppuntamenti(destinazione);
 	}
 	
 
@@ -492,11 +1433,11 @@ public class Agenda implements Iterable<Appuntamento> {
 	 * @return {@code true} se l'aggiunta ha avuto esito positivo, {@code false} altrimenti.
 	 */
 	
-	public boolean aggiungiAppuntamento(Appuntamento appointment) {
+	public synchronized boolean aggiungiAppuntamento(Appuntamento appointment) {
 		if(!this.isCompatible(appointment)) return false;
-		appuntamenti.add(appointment);
-		ordinaAppuntamenti(appuntamenti);
-		saved = false;
+		inserisci(appointment);
+		registra(j -> j.registraAggiunta(appointment));
+		segnaModificata();
 		return true;
 	}
 	
@@ -520,12 +1461,8 @@ public class Agenda implements Iterable<Appuntamento> {
 	
 	
 	public boolean aggiungiAppuntamento(String data, String orario, String durata, String luogo, String nomePersona) {
-		try {
-			return aggiungiAppuntamento(new Appuntamento(data, orario, durata, luogo, nomePersona));
-		}
-		catch(AppuntamentoException e) { 
-			return false; 
-		}
+		Appuntamento.Risultato risultato = Appuntamento.crea(data, orario, durata, luogo, nomePersona);
+		return risultato.isValido() && aggiungiAppuntamento(risultato.getAppuntamento());
 	}
 	
 	
@@ -555,9 +1492,53 @@ public class Agenda implements Iterable<Appuntamento> {
 		return aggiungiAppuntamento(splittati[0], splittati[1], durata, luogo, nomePersona);
 	}
 	
-	private boolean rimuoviGenerico(BooleanSupplier removeBy) {
+	/**
+	 * Prova ad aggiungere nell'agenda tutti gli appuntamenti di una collezione.<br>
+	 * Ritorna un array che riporta, per ogni appuntamento (nell'ordine di iterazione della collezione),
+	 * se questo è stato aggiunto o meno. Se è stato aggiunto almeno un appuntamento, l'agenda viene impostata
+	 * a <em>non salvata</em>.
+	 * <p>L'esito è lo stesso che si otterrebbe chiamando {@link #aggiungiAppuntamento(Appuntamento)} su ogni appuntamento,
+	 * nell'ordine della collezione: in caso di conflitto tra due appuntamenti della collezione, viene aggiunto il primo.
+	 * <p>Gli appuntamenti vengono ordinati una sola volta per data e orario di inizio, dopodiché un'unica scansione
+	 * verifica che non siano in conflitto tra loro. In tal caso (ad esempio durante il caricamento di un'agenda da file)
+	 * ognuno viene confrontato solo con gli appuntamenti adiacenti già presenti in agenda, senza ulteriori ordinamenti.
+	 * Altrimenti gli appuntamenti vengono aggiunti uno alla volta.
+	 * 
+	 * @param nuovi la collezione degli appuntamenti da aggiungere.
+	 * @return un array di {@code boolean}, in cui l'elemento {@code i} vale {@code true} se l'{@code i}-esimo appuntamento
+	 * è stato aggiunto, {@code false} altrimenti.
+	 */
+	
+	public synchronized boolean[] aggiungiAppuntamenti(Collection<Appuntamento> nuovi) {
+		Appuntamento[] daAggiungere = nuovi.toArray(new Appuntamento[0]);
+		boolean[] esito = new boolean[daAggiungere.length];
+		Integer[] ordine = new Integer[daAggiungere.length];
+		for(int i = 0; i < ordine.length; i++) ordine[i] = i;
+		Arrays.sort(ordine, Comparator.comparing(i -> daAggiungere[i].getDataTimeInizio()));
+		
+		for(int k = 0; k < ordine.length - 1; k++) {
+			if(!daAggiungere[ordine[k]].isBefore(daAggiungere[ordine[k + 1]])) {
+				for(int i = 0; i < daAggiungere.length; i++) esito[i] = aggiungiAppuntamento(daAggiungere[i]);
+				return esito;
+			}
+		}
+		
+		for(int i = 0; i < daAggiungere.length; i++) esito[i] = isCompatible(daAggiungere[i]);
+		boolean modificata = false;
+		for(int indice: ordine) {
+			if(esito[indice]) {
+				inserisci(daAggiungere[indice]);
+				registra(j -> j.registraAggiunta(daAggiungere[indice]));
+				modificata = true;
+			}
+		}
+		if(modificata) segnaModificata();
+		return esito;
+	}
+	
+	private synchronized boolean rimuoviGenerico(BooleanSupplier removeBy) {
 		boolean risultato = removeBy.getAsBoolean();
-		if(risultato) saved = false;
+		if(risultato) segnaModificata();
 		return risultato;
 	}
 	
@@ -571,7 +1552,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public boolean rimuoviPerPersona(String nome) {
-		return rimuoviGenerico( () -> appuntamenti.removeAll(searchAppuntamentoPerPersona(nome)));
+		return rimuoviGenerico( () -> eliminaTutti(searchAppuntamentoPerPersona(nome)));
 	}
 	
 	/**
@@ -584,7 +1565,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public boolean rimuoviPerData(String data) {
-		return rimuoviGenerico( () -> appuntamenti.removeAll(searchAppuntamentoPerData(data)));
+		return rimuoviGenerico( () -> eliminaTutti(searchAppuntamentoPerData(data)));
 	}
 	
 	/**
@@ -597,7 +1578,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public boolean rimuoviPerDataOrario(String data, String orario) {
-		return rimuoviGenerico( () -> appuntamenti.removeAll(searchAppuntamentoPerDataOrario(data, orario)));
+		return rimuoviGenerico( () -> eliminaTutti(searchAppuntamentoPerDataOrario(data, orario)));
 	}
 	
 	/**
@@ -612,7 +1593,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public boolean rimuoviPerDataOrario(String dataOrario) {
-		return rimuoviGenerico( () -> appuntamenti.removeAll(searchAppuntamentoPerDataOrario(dataOrario)));
+		return rimuoviGenerico( () -> eliminaTutti(searchAppuntamentoPerDataOrario(dataOrario)));
 	}
 	
 	/**
@@ -624,33 +1605,43 @@ public class Agenda implements Iterable<Appuntamento> {
 	 */
 	
 	public boolean rimuoviTutto() {
-		return rimuoviGenerico( () -> appuntamenti.removeAll(appuntamenti));
+		return rimuoviGenerico( () -> {
+			boolean risultato = svuota();
+			if(risultato) registra(JournalAgenda::registraSvuotamento);
+			return risultato;
+		});
 	}
 
 	
 	private int testModifica(Appuntamento oldApp, String newValue, String flag) {
-		try {
-			appuntamenti.remove(oldApp);
-			Appuntamento newApp = new Appuntamento(
-					(flag.equals("data")) ? newValue : oldApp.getData(),
-					(flag.equals("orario")) ? newValue : oldApp.getOrario(),
-					(flag.equals("durata")) ? newValue : oldApp.getDurata(),
-					(flag.equals("luogo")) ? newValue : oldApp.getLuogo(), 
-					(flag.equals("persona")) ? newValue : oldApp.getPersona());
-			
-			if(!aggiungiAppuntamento(newApp)) {
-				appuntamenti.add(oldApp);
-				ordinaAppuntamenti(appuntamenti);
-				return -1;
-			}
-			
-			return 1;
-		}
-		catch(AppuntamentoException e) {
-			appuntamenti.add(oldApp);
-			ordinaAppuntamenti(appuntamenti);
-			return -2;
+		Appuntamento.Risultato risultato = Appuntamento.crea(
+				(flag.equals("data")) ? newValue : oldApp.getData(),
+				(flag.equals("orario")) ? newValue : oldApp.getOrario(),
+				(flag.equals("durata")) ? newValue : oldApp.getDurata(),
+				(flag.equals("luogo")) ? newValue : oldApp.getLuogo(), 
+				(flag.equals("persona")) ? newValue : oldApp.getPersona());
+		if(!risultato.isValido()) return -2;
+		return sostituisci(oldApp, risultato.getAppuntamento()) ? 1 : -1;
+	}
+	
+	private synchronized boolean sostituisci(Appuntamento vecchio, Appuntamento nuovo) {
+		elimina(vecchio);
+		if(!isCompatible(nuovo)) {
+			inserisci(vecchio);
+			return false;
 		}
+		inserisci(nuovo);
+		registra(j -> j.registraModifica(vecchio, nuovo));
+		segnaModificata();
+		return true;
+	}
+	
+	/*
+	 * Usato per riprodurre i record di modifica del journal.
+	 */
+	boolean sostituisci(String data, String orario, Appuntamento nuovo) {
+		ArrayList<Appuntamento> trovato = searchAppuntamentoPerDataOrario(data, orario);
+		return !trovato.isEmpty() && sostituisci(trovato.get(0), nuovo);
 	}
 	
 	/**
@@ -683,7 +1674,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	 * 
 	 */
 	
-	public int modificaAppuntamento(String dataApp, String orarioApp, String parametroDaModificare, String newValue) {
+	public synchronized int modificaAppuntamento(String dataApp, String orarioApp, String parametroDaModificare, String newValue) {
 		ArrayList<Appuntamento> risultato = searchAppuntamentoPerDataOrario(dataApp, orarioApp);
 		if(risultato.isEmpty()) return 0;
 		Appuntamento vecchioAppuntamento = risultato.get(0);
@@ -767,7 +1758,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	
 	@Override
 	public Agenda clone() {
-		return new Agenda(nomeAgenda, appuntamenti);
+		return new Agenda(nomeAgenda, getAppuntamenti());
 	}
 	
 	/**
@@ -790,7 +1781,7 @@ public class Agenda implements Iterable<Appuntamento> {
 	public boolean equals(Object object) {
 		if(object == null || object.getClass() != this.getClass()) return false;
 		Agenda other = (Agenda) object;
-		return (other.getNomeAgenda().equals(this.nomeAgenda) && this.appuntamenti.equals(other.getAppuntamenti()));
+		return (other.getNomeAgenda().equals(this.nomeAgenda) && this.getAppuntamenti().equals(other.getAppuntamenti()));
 	}
 	
 	
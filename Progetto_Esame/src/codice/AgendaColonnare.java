@@ -0,0 +1,268 @@
+package codice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import jbook.util.DataOrario;
+
+/**
+ * La classe {@code AgendaColonnare} è una rappresentazione compatta, in sola aggiunta, di un'{@link Agenda}
+ * pensata per agende molto grandi <em>(e.g. archivi con milioni di appuntamenti)</em>.
+ * <p>
+ * Invece di mantenere un oggetto {@link Appuntamento} per ogni elemento (che a sua volta contiene due {@link DataOrario}
+ * e diverse {@link String}), gli appuntamenti vengono memorizzati <em>per colonne</em>, ovvero in array di tipi primitivi:<ul>
+ * <li> {@code int[]} per l'inizio di ogni appuntamento, espresso in minuti trascorsi dall'epoca (vedi {@link DataOrario#getMinutiEpoch});
+ * <li> {@code short[]} per la durata in minuti;
+ * <li> {@code int[]} per il luogo e {@code int[]} per il nome della persona, espressi come identificativi di un
+ * <strong>dizionario</strong> di stringhe condiviso. Ogni luogo e ogni nome viene quindi memorizzato una sola volta.</ul>
+ * <p>
+ * Come per l'{@link Agenda}, gli appuntamenti sono mantenuti ordinati per data e orario di inizio e
+ * un appuntamento viene aggiunto se e solo se è compatibile con gli altri già presenti.
+ * La ricerca della posizione e il controllo di compatibilità hanno costo logaritmico, mentre l'inserimento
+ * in mezzo all'agenda richiede lo spostamento degli elementi successivi. Per questo motivo la costruzione a partire
+ * da un'{@link Agenda} esistente (già ordinata) è il modo più efficiente per creare un {@code AgendaColonnare}.
+ * <p>
+ * La classe implementa l'interfaccia {@link Iterable}: durante l'iterazione, ogni {@code Appuntamento} viene
+ * <em>materializzato</em> su richiesta a partire dalle colonne. Non è possibile aggiungere appuntamenti mentre si itera: nel caso
+ * ciò dovesse accadere, verrà sollevata un'eccezione {@link ConcurrentModificationException}.
+ * <p>
+ * <strong>N.B. :</strong> per contenere l'inizio in un {@code int}, sono accettati solo appuntamenti compresi
+ * (circa) tra l'anno {@code -2113} e l'anno {@code 6053}.
+ *
+ * @see Agenda
+ * @see Appuntamento
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class AgendaColonnare implements Iterable<Appuntamento> {
+
+	private static final int CAPACITA_INIZIALE = 16;
+
+	private String nomeAgenda;
+	private int[] inizio;
+	private short[] durata;
+	private int[] luogo;
+	private int[] persona;
+	private int dimensione;
+	private ArrayList<String> dizionario;
+	private HashMap<String, Integer> indiceDizionario;
+
+
+	private class IteratoreColonne implements Iterator<Appuntamento> {
+		private int indice;
+		private int lastIndex;
+
+		private IteratoreColonne() {
+			indice = 0;
+			lastIndex = dimensione;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return indice < lastIndex;
+		}
+
+		@Override
+		public Appuntamento next() throws ConcurrentModificationException {
+			if(lastIndex != dimensione) throw new ConcurrentModificationException();
+			if(!hasNext()) throw new NoSuchElementException();
+			return getAppuntamento(indice++);
+		}
+	}
+
+	/**
+	 * Crea un nuovo {@code AgendaColonnare} vuoto assegnandogli un nome.
+	 * <p>Se il nome è una stringa vuota, assegna all'agenda il nome di default <em>"Agenda"</em>.
+	 *
+	 * @param nomeAgenda stringa che identifica l'agenda.
+	 */
+
+	public AgendaColonnare(String nomeAgenda) {
+		this.nomeAgenda = nomeAgenda.isEmpty() ? "Agenda" : nomeAgenda;
+		inizio = new int[CAPACITA_INIZIALE];
+		durata = new short[CAPACITA_INIZIALE];
+		luogo = new int[CAPACITA_INIZIALE];
+		persona = new int[CAPACITA_INIZIALE];
+		dimensione = 0;
+		dizionario = new ArrayList<>();
+		indiceDizionario = new HashMap<>();
+	}
+
+	/**
+	 * Crea un nuovo {@code AgendaColonnare} con lo stesso nome e gli stessi appuntamenti dell'{@link Agenda}
+	 * passata come parametro.<br>
+	 * Dato che l'agenda è già ordinata, gli appuntamenti vengono accodati alle colonne senza spostamenti.
+	 *
+	 * @param agenda l'agenda da convertire.
+	 * @throws IllegalArgumentException se un appuntamento dell'agenda non è rappresentabile (vedi {@link AgendaColonnare}).
+	 */
+
+	public AgendaColonnare(Agenda agenda) throws IllegalArgumentException {
+		this(agenda.getNomeAgenda());
+		garantisciCapacita(agenda.getDimensioneAgenda());
+		for(Appuntamento appointment: agenda) inserisciIn(dimensione, appointment);
+	}
+
+	private int idDizionario(String valore) {
+		Integer id = indiceDizionario.get(valore);
+		if(id == null) {
+			id = dizionario.size();
+			dizionario.add(valore);
+			indiceDizionario.put(valore, id);
+		}
+		return id;
+	}
+
+	private void garantisciCapacita(int capacita) {
+		if(capacita <= inizio.length) return;
+		int nuovaCapacita = Math.max(capacita, inizio.length + (inizio.length >> 1));
+		inizio = Arrays.copyOf(inizio, nuovaCapacita);
+		durata = Arrays.copyOf(durata, nuovaCapacita);
+		luogo = Arrays.copyOf(luogo, nuovaCapacita);
+		persona = Arrays.copyOf(persona, nuovaCapacita);
+	}
+
+	private static int minutiInizio(Appuntamento appointment) throws IllegalArgumentException {
+		try {
+			return Math.toIntExact(appointment.getDataTimeInizio().getMinutiEpoch());
+		} catch(ArithmeticException e) {
+			throw new IllegalArgumentException("Appuntamento non rappresentabile: " + appointment.getDataTimeInizio());
+		}
+	}
+
+	/*
+	 * Ritorna l'indice del primo appuntamento che inizia non prima di minuti,
+	 * oppure la dimensione se non esiste.
+	 */
+	private int primoIndiceDa(long minuti) {
+		int basso = 0, alto = dimensione;
+		while(basso < alto) {
+			int medio = (basso + alto) >>> 1;
+			if(inizio[medio] < minuti) basso = medio + 1;
+			else alto = medio;
+		}
+		return basso;
+	}
+
+	private void inserisciIn(int indice, Appuntamento appointment) {
+		int minuti = minutiInizio(appointment);
+		garantisciCapacita(dimensione + 1);
+		int daSpostare = dimensione - indice;
+		System.arraycopy(inizio, indice, inizio, indice + 1, daSpostare);
+		System.arraycopy(durata, indice, durata, indice + 1, daSpostare);
+		System.arraycopy(luogo, indice, luogo, indice + 1, daSpostare);
+		System.arraycopy(persona, indice, persona, indice + 1, daSpostare);
+		inizio[indice] = minuti;
+		durata[indice] = (short) appointment.getMinutiDurata();
+		luogo[indice] = idDizionario(appointment.getLuogo());
+		persona[indice] = idDizionario(appointment.getPersona());
+		dimensione++;
+	}
+
+	/**
+	 * Ritorna il nome dell'agenda.
+	 *
+	 * @return il nome dell'agenda di tipo {@code String}.
+	 */
+
+	public String getNomeAgenda() {
+		return nomeAgenda;
+	}
+
+	/**
+	 * Ritorna la dimensione dell'agenda.
+	 *
+	 * @return il numero {@code int} di appuntamenti dell'agenda.
+	 */
+
+	public int getDimensioneAgenda() {
+		return dimensione;
+	}
+
+	/**
+	 * Ritorna il numero di stringhe distinte (luoghi e nomi delle persone) memorizzate nel dizionario dell'agenda.
+	 *
+	 * @return la dimensione {@code int} del dizionario.
+	 */
+
+	public int getDimensioneDizionario() {
+		return dizionario.size();
+	}
+
+	/**
+	 * Verifica che un appuntamento sia compatibile con l'agenda. Ritorna {@code true} se
+	 * esso non è in conflitto con nessun appuntamento in agenda.
+	 * <p>Come per {@link Agenda#isCompatible}, il controllo viene effettuato solo sugli appuntamenti adiacenti,
+	 * individuati tramite una ricerca binaria sulla colonna degli inizi.
+	 *
+	 * @param appointment l'appuntamento da testare.
+	 * @return {@code true} se l'appuntamento è compatibile con l'agenda, {@code false} altrimenti.
+	 */
+
+	public boolean isCompatible(Appuntamento appointment) {
+		long minuti = appointment.getDataTimeInizio().getMinutiEpoch();
+		long fine = appointment.getDataTimeFine().getMinutiEpoch();
+		int indice = primoIndiceDa(minuti);
+		if(indice > 0 && (long) inizio[indice - 1] + durata[indice - 1] > minuti) return false;
+		return indice == dimensione || inizio[indice] >= fine;
+	}
+
+	/**
+	 * Prova ad aggiungere un appuntamento nell'agenda. Se l'appuntamento non è
+	 * compatibile con quest'ultima, non verrà aggiunto.
+	 *
+	 * @param appointment l'appuntamento da aggiungere.
+	 * @return {@code true} se l'aggiunta ha avuto esito positivo, {@code false} altrimenti.
+	 * @throws IllegalArgumentException se l'appuntamento non è rappresentabile (vedi {@link AgendaColonnare}).
+	 */
+
+	public boolean aggiungiAppuntamento(Appuntamento appointment) throws IllegalArgumentException {
+		int minuti = minutiInizio(appointment);
+		if(!isCompatible(appointment)) return false;
+		inserisciIn(primoIndiceDa(minuti), appointment);
+		return true;
+	}
+
+	/**
+	 * Materializza l'appuntamento in posizione {@code indice}, secondo l'ordine per data e orario di inizio.
+	 *
+	 * @param indice la posizione dell'appuntamento.
+	 * @return un nuovo {@code Appuntamento} costruito a partire dalle colonne.
+	 * @throws IndexOutOfBoundsException se l'indice non è compreso tra {@code 0} e la dimensione dell'agenda.
+	 */
+
+	public Appuntamento getAppuntamento(int indice) throws IndexOutOfBoundsException {
+		if(indice < 0 || indice >= dimensione) throw new IndexOutOfBoundsException(indice);
+		return new Appuntamento(DataOrario.daMinutiEpoch(inizio[indice]), durata[indice], dizionario.get(luogo[indice]), dizionario.get(persona[indice]));
+	}
+
+	/**
+	 * Crea una nuova {@link Agenda}, con lo stesso nome e gli stessi appuntamenti di questo {@code AgendaColonnare}.
+	 * L'agenda viene creata come <em>non salvata</em>.
+	 *
+	 * @return una nuova {@code Agenda} equivalente.
+	 */
+
+	public Agenda toAgenda() {
+		ArrayList<Appuntamento> appuntamenti = new ArrayList<>(dimensione);
+		for(Appuntamento appointment: this) appuntamenti.add(appointment);
+		return new Agenda(nomeAgenda, appuntamenti);
+	}
+
+	/**
+	 * Ritorna un nuovo {@link Iterator} per questo {@code AgendaColonnare}, che materializza
+	 * ogni {@code Appuntamento} solo quando richiesto.
+	 *
+	 * @return un {@code Iterator<Appuntamento>}.
+	 */
+
+	@Override
+	public Iterator<Appuntamento> iterator() {
+		return new IteratoreColonne();
+	}
+}
@@ -1,8 +1,10 @@
 package codice;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.format.ResolverStyle;
+import java.util.EnumMap;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
@@ -75,7 +77,7 @@ import jbook.util.PatternMatcher;
  * Per recuperare i dati di un appuntamento nel tipo {@link String}, sono presenti dei metodi {@code getter}. In particolare:<ul>
  * <li>{@link #getData()};
  * <li>{@link #getOrario()};
- * <li>{@link #getDurata()};
+ * <li>{@link #getDurata()} (e {@link #getMinutiDurata()} per la durata nel tipo {@code int});
  * <li>{@link #getLuogo()};
  * <li>{@link #getPersona()};
  * <li>{@link #getDataTimeInizio()};
@@ -86,6 +88,9 @@ import jbook.util.PatternMatcher;
  * <li>{@link #matchDataOrario(String data, String orario)} -> confronta questa <strong>data-orario</strong> con il data-orario passato per argomento;
  * <li>{@link #matchPersona(String nome)} -> confronta questo <strong>nome persona</strong> con il nome persona passato per argomento.</ul>
  * 
+ * Oltre al costruttore, è disponibile il metodo statico {@link #crea}, che esegue gli stessi controlli in un'unica passata 
+ * e descrive l'esito tramite un {@link Risultato} invece di sollevare un'eccezione.<p>
+ * 
  * Inoltre è possibile rappresentare l'appuntamento attraverso il metodo {@link #toString} e confrontare questo
  * {@code Appuntamento} con un altro, tramite il metodo {@link #equals}.
  * 
@@ -101,7 +106,7 @@ import jbook.util.PatternMatcher;
 public class Appuntamento {
 	private DataOrario dataTimeInizio;
 	private DataOrario dataTimeFine;
-	private String durata;
+	private int durata;
 	private String luogo;
 	private String nomePersona;
 	
@@ -115,34 +120,29 @@ public class Appuntamento {
 	 */
 	
 	public static class ControlloDati{
+		private static final EnumMap<TipoControllo, ControlloMappato> CONTROLLI = new EnumMap<>(TipoControllo.class);
+		
+		static {
+			CONTROLLI.put(TipoControllo.CONTROLLO_DATA, new ControlloMappato(TipoControllo.CONTROLLO_DATA, DataOrario::isDataValida, "Data non valida!"));
+			CONTROLLI.put(TipoControllo.CONTROLLO_ORARIO, new ControlloMappato(TipoControllo.CONTROLLO_ORARIO, DataOrario::isOrarioValido, "Orario non valido!"));
+			CONTROLLI.put(TipoControllo.CONTROLLO_DURATA, new ControlloMappato(TipoControllo.CONTROLLO_DURATA, durata -> parseDurata(durata) > 0, "Durata non valida!"));
+			CONTROLLI.put(TipoControllo.CONTROLLO_LUOGO, new ControlloMappato(TipoControllo.CONTROLLO_LUOGO, ControlloDati::isLuogoValido, "Luogo non valido!"));
+			CONTROLLI.put(TipoControllo.CONTROLLO_PERSONA, new ControlloMappato(TipoControllo.CONTROLLO_PERSONA, ControlloDati::isNomeValido, "Nome non valido!"));
+		}
+		
+		/*
+		 * Ogni controllo viene creato una sola volta, insieme al suo Risultato di fallimento
+		 * (immutabile e quindi condiviso). L'eccezione viene creata solo quando il controllo fallisce.
+		 */
 		private static class ControlloMappato {
 			private Predicate<String> controllo;
-			private AppuntamentoException exception;
+			private String messaggio;
+			private Risultato fallimento;
 			
-			private ControlloMappato(TipoControllo tc) {
-				switch(tc) {
-					case CONTROLLO_DATA -> {
-						controllo = ControlloDati::isDataValida;
-						exception = new AppuntamentoException("Data non valida!");
-					}
-					case CONTROLLO_ORARIO -> {
-						controllo = ControlloDati::isOrarioValido;
-						exception = new AppuntamentoException("Orario non valido!");
-					}
-					case CONTROLLO_DURATA -> {
-						controllo = durata -> PatternMatcher.create("^(0*[1-9][0-9]{0,3})$", durata).matches();
-						exception = new AppuntamentoException("Durata non valida!");
-					}
-					case CONTROLLO_LUOGO -> {
-						controllo = luogo -> PatternMatcher.create("^[a-z]{1,20}(\\s)?[a-z]{0,20}(\\s[0-9]{0,4})?$", luogo, Pattern.CASE_INSENSITIVE).matches();
-						exception = new AppuntamentoException("Luogo non valido!");
-					}
-					case CONTROLLO_PERSONA -> {
-						controllo = nome -> PatternMatcher.create("^(?![0-9]+$)[a-z0-9]{1,20}(\\s)?[a-z0-9]{0,20}$", nome, Pattern.CASE_INSENSITIVE).matches();
-						exception = new AppuntamentoException("Nome non valido!");
-					}
-					
-				}
+			private ControlloMappato(TipoControllo tc, Predicate<String> controllo, String messaggio) {
+				this.controllo = controllo;
+				this.messaggio = messaggio;
+				this.fallimento = new Risultato(null, tc, messaggio);
 			}
 			
 			private boolean test(String stringa) {
@@ -150,7 +150,7 @@ public class Appuntamento {
 			}
 			
 			private AppuntamentoException getAppuntamentoException() {
-				return exception;
+				return new AppuntamentoException(messaggio);
 			}
 		}
 		
@@ -216,34 +216,102 @@ public class Appuntamento {
 			CONTROLLO_PERSONA
 		}
 		
-		private static boolean isDataTimeValid(String format, String dataTime){
-			try {
-				DateTimeFormatter.ofPattern(format).withResolverStyle(ResolverStyle.STRICT).parse(dataTime);
+		private static boolean isLettera(int c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+		
+		private static boolean isCifra(int c) {
+			return c >= '0' && c <= '9';
+		}
+		
+		/*
+		 * Gli stessi caratteri della classe \s delle regex (senza UNICODE_CHARACTER_CLASS).
+		 */
+		private static boolean isSpazio(int c) {
+			return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+		}
+		
+		private static boolean isAlfanumerico(int c) {
+			return isLettera(c) || isCifra(c);
+		}
+		
+		private static int contaDa(String stringa, int inizio, IntPredicate classe) {
+			int fine = inizio;
+			while(fine < stringa.length() && classe.test(stringa.charAt(fine))) fine++;
+			return fine - inizio;
+		}
+		
+		/*
+		 * Ritorna la durata in minuti se è valida secondo la regex ^(0*[1-9][0-9]{0,3})$, -1 altrimenti.
+		 */
+		private static int parseDurata(String durata) {
+			int minuti = 0, cifre = 0;
+			for(int i = contaDa(durata, 0, c -> c == '0'); i < durata.length(); i++) {
+				char c = durata.charAt(i);
+				if(!isCifra(c) || ++cifre > 4) return -1;
+				minuti = minuti * 10 + (c - '0');
 			}
-			catch(DateTimeParseException e) {
-				return false;
+			return cifre == 0 ? -1 : minuti;
+		}
+		
+		/*
+		 * Equivale alla regex ^[a-z]{1,20}(\s)?[a-z]{0,20}(\s[0-9]{0,4})?$ con CASE_INSENSITIVE, ovvero:
+		 * - lettere (1-40), eventualmente seguite da uno spazio e da un numero (0-4 cifre);
+		 * - lettere (1-20), spazio, lettere (0-20), eventualmente seguite da uno spazio e da un numero (0-4 cifre).
+		 */
+		private static boolean isLuogoValido(String luogo) {
+			int primaParola = contaDa(luogo, 0, ControlloDati::isLettera);
+			if(primaParola == 0) return false;
+			if(primaParola == luogo.length()) return primaParola <= 40;
+			if(!isSpazio(luogo.charAt(primaParola))) return false;
+			
+			int indice = primaParola + 1;
+			int secondaParola = contaDa(luogo, indice, ControlloDati::isLettera);
+			if(secondaParola == 0 && (indice == luogo.length() || isCifra(luogo.charAt(indice)))) {
+				return primaParola <= 40 && isNumeroFinale(luogo, indice);
 			}
-			return true;
+			if(primaParola > 20 || secondaParola > 20) return false;
+			indice += secondaParola;
+			return indice == luogo.length() || (isSpazio(luogo.charAt(indice)) && isNumeroFinale(luogo, indice + 1));
 		}
 		
-		private static boolean isDataValida(String data) {
-			return isDataTimeValid("dd-MM-uuuu", data);
+		private static boolean isNumeroFinale(String luogo, int inizio) {
+			int cifre = contaDa(luogo, inizio, ControlloDati::isCifra);
+			return cifre <= 4 && inizio + cifre == luogo.length();
 		}
 		
-		private static boolean isOrarioValido(String orario) {
-			return isDataTimeValid("HH-mm", orario);
+		/*
+		 * Equivale alla regex ^(?![0-9]+$)[a-z0-9]{1,20}(\s)?[a-z0-9]{0,20}$ con CASE_INSENSITIVE, ovvero:
+		 * - caratteri alfanumerici (1-40), non tutti numerici;
+		 * - caratteri alfanumerici (1-20), spazio, caratteri alfanumerici (0-20).
+		 * Come nella regex, il $ del lookahead accetta anche un terminatore di riga finale: 
+		 * per questo "1234\n" non è un nome valido, mentre "1234 " lo è.
+		 */
+		private static boolean isNomeValido(String nome) {
+			int primaParola = contaDa(nome, 0, ControlloDati::isAlfanumerico);
+			if(primaParola == 0) return false;
+			boolean soloCifre = contaDa(nome, 0, ControlloDati::isCifra) == primaParola;
+			if(primaParola == nome.length()) return primaParola <= 40 && !soloCifre;
+			
+			char spazio = nome.charAt(primaParola);
+			int secondaParola = contaDa(nome, primaParola + 1, ControlloDati::isAlfanumerico);
+			if(!isSpazio(spazio) || primaParola > 20 || secondaParola > 20 || primaParola + 1 + secondaParola != nome.length()) return false;
+			return !(soloCifre && secondaParola == 0 && (spazio == '\n' || spazio == '\r'));
 		}
 		
 		/**
 		 * Dato un {@link TipoControllo}, verifica se la {@code stringa} passata 
 		 * come argomento è valida come parametro per la creazione di
 		 * un {@code Appuntamento} attraverso:<ul>
-		 * <li> {@link PatternMatcher} che confronta la stringa con la regex assegnata,
+		 * <li> una scansione dei caratteri equivalente alla regex assegnata,
 		 * nel caso della <strong>durata</strong>, <strong>luogo</strong> e <strong>nome persona</strong>;
-		 * <li> {@link DataOrario} che utilizza la libreria {@link DateTimeFormatter} 
-		 * che nel caso della data, controlla se è conforme col formato <strong>{@code dd-MM-uuuu}</strong> 
+		 * <li> {@link DataOrario#isDataValida} e {@link DataOrario#isOrarioValido} 
+		 * che nel caso della data, controllano se è conforme col formato <strong>{@code dd-MM-uuuu}</strong> 
 		 * e se è congrua con il calendario e nel caso dell'orario, se è conforme
-		 * col formato <strong>{@code HH-mm}</strong> e controlla se supera le 24 ore.</ul>
+		 * col formato <strong>{@code HH-mm}</strong> e controllano se supera le 24 ore 
+		 * (ricorrendo al {@link DateTimeFormatter} solo per i formati non a larghezza fissa).</ul>
+		 * <p>I controlli vengono creati una sola volta e non allocano alcun oggetto: l'eccezione {@link AppuntamentoException}
+		 * viene creata solo se un parametro non è valido.
 		 * 
 		 * @param tc che descrive il tipo di controllo da effettuare sulla stringa.
 		 * @param stringa sulla quale verrà effettuato il controllo.
@@ -251,16 +319,68 @@ public class Appuntamento {
 		 */
 		
 		public static boolean controlloPer(TipoControllo tc, String stringa) {
-			return new ControlloMappato(tc).test(stringa);
+			return CONTROLLI.get(tc).test(stringa);
 		}
 		
-		private static void testParametri(String data, String orario, String durata, String luogo, String nome) throws AppuntamentoException {
-			String[] parametri = { data, orario, durata, luogo, nome };
-			int indice = 0;
-			for(TipoControllo tc: TipoControllo.values()) {
-				ControlloMappato cm = new ControlloMappato(tc);
-				if(!cm.test(parametri[indice++])) throw cm.getAppuntamentoException();
-			}
+	}
+	
+	/**
+	 * Il risultato della creazione di un {@code Appuntamento} tramite il metodo {@link Appuntamento#crea}.
+	 * <p>Se i parametri sono validi, contiene l'appuntamento creato. Altrimenti contiene il primo
+	 * {@link ControlloDati.TipoControllo} non superato (nell'ordine data, orario, durata, luogo, persona)
+	 * e il relativo messaggio d'errore, lo stesso dell'eccezione {@link AppuntamentoException} sollevata dal costruttore.
+	 * <p><strong>Questa classe è immutabile</strong>.
+	 */
+	
+	public static class Risultato {
+		private Appuntamento appuntamento;
+		private ControlloDati.TipoControllo errore;
+		private String messaggio;
+		
+		private Risultato(Appuntamento appuntamento, ControlloDati.TipoControllo errore, String messaggio) {
+			this.appuntamento = appuntamento;
+			this.errore = errore;
+			this.messaggio = messaggio;
+		}
+		
+		/**
+		 * Ritorna {@code true} se i parametri erano validi e l'appuntamento è stato creato.
+		 * 
+		 * @return {@code true} se l'appuntamento è stato creato, {@code false} altrimenti.
+		 */
+		
+		public boolean isValido() {
+			return appuntamento != null;
+		}
+		
+		/**
+		 * Ritorna l'appuntamento creato.
+		 * 
+		 * @return l'{@code Appuntamento} creato, oppure {@code null} se i parametri non erano validi.
+		 */
+		
+		public Appuntamento getAppuntamento() {
+			return appuntamento;
+		}
+		
+		/**
+		 * Ritorna il primo controllo non superato dai parametri.
+		 * 
+		 * @return il {@link ControlloDati.TipoControllo} non superato, oppure {@code null} se l'appuntamento è stato creato.
+		 */
+		
+		public ControlloDati.TipoControllo getErrore() {
+			return errore;
+		}
+		
+		/**
+		 * Ritorna il messaggio d'errore relativo al primo controllo non superato (e.g. <em>"Data non valida!"</em>).
+		 * 
+		 * @return il messaggio d'errore, oppure {@code null} se l'appuntamento è stato creato.
+		 */
+		
+		public String getMessaggio() {
+			return messaggio;
 		}
 	}
 	
@@ -285,12 +405,8 @@ public class Appuntamento {
 	 */
 	
 	public Appuntamento(String data, String orario, String durata, String luogo, String nomePersona) throws AppuntamentoException {
-		ControlloDati.testParametri(data, orario, durata, luogo, nomePersona);
-		this.dataTimeInizio = new DataOrario(data, orario);
-		this.durata=durata.replaceFirst("^0*", "");
-		this.dataTimeFine = dataTimeInizio.plusMinuti(this.durata);
-		this.luogo=luogo;
-		this.nomePersona=nomePersona;
+		ControlloDati.TipoControllo errore = inizializza(data, orario, durata, luogo, nomePersona);
+		if(errore != null) throw ControlloDati.CONTROLLI.get(errore).getAppuntamentoException();
 	}
 	
 	/**
@@ -308,6 +424,79 @@ public class Appuntamento {
 		this(parametri[0], parametri[1], parametri[2], parametri[3], parametri[4]);
 	}
 	
+	/*
+	 * Ricostruisce un appuntamento a partire da valori già validati in precedenza 
+	 * (e.g. dalle colonne di un'AgendaColonnare), senza ripetere i controlli.
+	 */
+	Appuntamento(DataOrario dataTimeInizio, int durata, String luogo, String nomePersona) {
+		this.dataTimeInizio = dataTimeInizio;
+		this.durata = durata;
+		this.dataTimeFine = dataTimeInizio.plusMinuti(durata);
+		this.luogo = luogo;
+		this.nomePersona = nomePersona;
+	}
+	
+	private Appuntamento() { }
+	
+	/*
+	 * Legge e verifica tutti i parametri in un'unica passata, convertendo data, orario e durata 
+	 * direttamente in minuti. Ritorna il primo controllo non superato, oppure null se 
+	 * i parametri sono validi (in tal caso inizializza l'appuntamento).
+	 */
+	private ControlloDati.TipoControllo inizializza(String data, String orario, String durata, String luogo, String nomePersona) {
+		long giorno = DataOrario.parseGiornoEpoch(data);
+		if(giorno == DataOrario.NON_VALIDO) return ControlloDati.TipoControllo.CONTROLLO_DATA;
+		int minuto = DataOrario.parseMinutoDelGiorno(orario);
+		if(minuto < 0) return ControlloDati.TipoControllo.CONTROLLO_ORARIO;
+		int minutiDurata = ControlloDati.parseDurata(durata);
+		if(minutiDurata < 0) return ControlloDati.TipoControllo.CONTROLLO_DURATA;
+		if(!ControlloDati.isLuogoValido(luogo)) return ControlloDati.TipoControllo.CONTROLLO_LUOGO;
+		if(!ControlloDati.isNomeValido(nomePersona)) return ControlloDati.TipoControllo.CONTROLLO_PERSONA;
+		
+		this.dataTimeInizio = DataOrario.daMinutiEpoch(giorno * DataOrario.MINUTI_GIORNO + minuto);
+		this.durata = minutiDurata;
+		this.dataTimeFine = dataTimeInizio.plusMinuti(minutiDurata);
+		this.luogo = luogo;
+		this.nomePersona = nomePersona;
+		return null;
+	}
+	
+	/**
+	 * Crea un nuovo {@code Appuntamento} a partire da data, orario, durata, luogo e nome della persona,
+	 * senza sollevare eccezioni se i parametri non sono validi.
+	 * <p>Esegue gli stessi controlli del costruttore {@link #Appuntamento(String, String, String, String, String)}, 
+	 * ma in un'unica passata: data, orario e durata (nei formati a larghezza fissa) vengono letti direttamente in minuti, 
+	 * senza essere parsificati una seconda volta. L'esito viene descritto da un {@link Risultato}; in caso di errore 
+	 * non viene creata alcuna eccezione.
+	 * 
+	 * @param data stringa che identifica la data
+	 * @param orario stringa che identifica l'orario
+	 * @param durata stringa che identifica la durata
+	 * @param luogo stringa che identifica il luogo
+	 * @param nomePersona stringa che identifica il nome della persona
+	 * @return un {@link Risultato} contenente l'appuntamento creato oppure il primo controllo non superato.
+	 */
+	
+	public static Risultato crea(String data, String orario, String durata, String luogo, String nomePersona) {
+		Appuntamento appointment = new Appuntamento();
+		ControlloDati.TipoControllo errore = appointment.inizializza(data, orario, durata, luogo, nomePersona);
+		return errore == null ? new Risultato(appointment, null, null) : ControlloDati.CONTROLLI.get(errore).fallimento;
+	}
+	
+	/**
+	 * Crea un nuovo {@code Appuntamento} attraverso gli elementi dell'array <strong>{@code parametri}</strong>,
+	 * senza sollevare eccezioni se i parametri non sono validi (vedi {@link #crea(String, String, String, String, String)}).
+	 * <p>Vengono considerati i primi 5 indici dell'array. Se l'array contiene meno parametri del dovuto, verrà
+	 * sollevata un'eccezione {@link IndexOutOfBoundsException}.
+	 * 
+	 * @param parametri di tipo {@code String[]} che descrive l'insieme dei dati per la creazione di un {@code Appuntamento}.
+	 * @return un {@link Risultato} contenente l'appuntamento creato oppure il primo controllo non superato.
+	 */
+	
+	public static Risultato crea(String[] parametri) {
+		return crea(parametri[0], parametri[1], parametri[2], parametri[3], parametri[4]);
+	}
+	
 	/**
 	 * Restituisce la data dell'appuntamento.
 	 * 
@@ -345,6 +534,16 @@ public class Appuntamento {
 	 */
 	
 	public String getDurata() {
+		return Integer.toString(durata);
+	}
+	
+	/**
+	 * Restituisce la durata dell'appuntamento in minuti.
+	 * 
+	 * @return la durata dell'appuntamento nel tipo {@code int}.
+	 */
+	
+	public int getMinutiDurata() {
 		return durata;
 	}
 	
@@ -462,7 +661,29 @@ public class Appuntamento {
 
 	@Override
 	public String toString() {
-		return this.getData()+"|"+this.getOrario()+"|"+this.getDurata()+"min|"+this.getLuogo()+"|"+this.getPersona()+"\n";
+		StringBuilder builder = new StringBuilder(64);
+		try {
+			scriviSu(builder);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e); // uno StringBuilder non solleva IOException
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Scrive la rappresentazione dell'appuntamento (la stessa di {@link #toString}) sull'{@link Appendable} 
+	 * passato come parametro, campo per campo, senza costruire la stringa completa.
+	 * <p>È il formato usato per il salvataggio delle agende su file.
+	 * 
+	 * @param destinazione l'{@code Appendable} su cui scrivere (e.g. un {@link java.io.Writer} o uno {@link StringBuilder}).
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void scriviSu(Appendable destinazione) throws IOException {
+		dataTimeInizio.scriviDataSu(destinazione);
+		destinazione.append('|');
+		dataTimeInizio.scriviOrarioSu(destinazione);
+		destinazione.append('|').append(Integer.toString(durata)).append("min|").append(luogo).append('|').append(nomePersona).append('\n');
 	}
 	
 	/**
@@ -488,7 +709,7 @@ public class Appuntamento {
 		Appuntamento other = (Appuntamento) object;
 		return (other.getDataTimeInizio().equals(this.dataTimeInizio)) 
 				&& (other.getDataTimeFine().equals(this.dataTimeFine)) 
-				&& (other.getDurata().equals(this.durata))
+				&& (other.getMinutiDurata() == this.durata)
 				&& (other.getLuogo().equals(this.luogo))
 				&& (other.getPersona().equals(this.nomePersona));
 	}
@@ -0,0 +1,458 @@
+package codice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * La classe {@code ArchivioAgende} gestisce un <em>archivio</em>: un unico file ({@code <nome>}{@value #ESTENSIONE}) che contiene
+ * più agende, ognuna nel formato binario di {@link FormatoBinario}, in alternativa a un file per ogni agenda.
+ * <p>
+ * Il file è composto da:<ul>
+ * <li> un'<strong>intestazione</strong> di {@value #DIMENSIONE_INTESTAZIONE} byte: il numero magico {@code AGA1}, la versione del formato,
+ * la posizione, la lunghezza e il checksum (CRC-32C) dell'indice;
+ * <li> le <strong>voci</strong> delle agende: ogni voce occupa due <em>copie</em> consecutive, ognuna di uno spazio (la <em>capacità</em>)
+ * leggermente maggiore della sua lunghezza, per poter essere riscritta sul posto anche se l'agenda cresce. Solo una delle due copie è valida;
+ * <li> l'<strong>indice</strong>, che associa al nome di ogni agenda la posizione, la lunghezza, la capacità e il checksum della sua voce,
+ * oltre alla copia valida.</ul>
+ * Tutti i valori sono scritti in ordine <em>big-endian</em>.
+ * <p>
+ * All'apertura viene letto soltanto l'indice; ogni agenda viene poi letta con un'unica lettura posizionale tramite {@link FileChannel},
+ * senza aprire altri file. Durante un aggiornamento (vedi {@link #aggiorna}) ogni agenda viene riscritta sul posto, nella copia non valida
+ * della sua voce, se la nuova voce non supera la capacità di quella precedente, altrimenti in fondo al file; il nuovo indice viene poi
+ * scritto in fondo al file e infine l'intestazione viene aggiornata per puntare a quest'ultimo. La copia valida di una voce non viene
+ * quindi mai sovrascritta: se l'aggiornamento viene interrotto prima dell'intestazione, l'archivio resta interamente quello precedente.
+ * <p>
+ * Lo spazio non più utilizzato (voci spostate o rimosse e indici precedenti) viene recuperato dalla <em>compattazione</em>
+ * (vedi {@link #compatta}), che riscrive l'archivio su un file temporaneo e lo sostituisce con uno spostamento atomico, come in
+ * {@link Agenda#salvaAgendaSuFile}. La compattazione viene eseguita automaticamente al termine di un aggiornamento, quando lo spazio
+ * inutilizzato supera la frazione {@link #SOGLIA_COMPATTAZIONE} del file.
+ * <p>
+ * I file scritti vengono sincronizzati su disco secondo la {@link Agenda.Durabilita} impostata.
+ * Al termine dell'utilizzo, l'archivio va chiuso con {@link #close}.
+ *
+ * @see ContenitoreAgende#caricaAgendeDaArchivio
+ * @see ContenitoreAgende#salvaContenitoreInArchivio
+ * @see FormatoBinario
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class ArchivioAgende implements AutoCloseable {
+
+	/**
+	 * L'estensione dei file di archivio.
+	 */
+	public static final String ESTENSIONE = ".archivio";
+
+	/**
+	 * La dimensione in byte dell'intestazione.
+	 */
+	public static final int DIMENSIONE_INTESTAZIONE = 32;
+
+	/**
+	 * La frazione del file inutilizzata oltre la quale l'archivio viene compattato al termine di un aggiornamento.
+	 */
+	public static final double SOGLIA_COMPATTAZIONE = 0.5;
+
+	private static final int NUMERO_MAGICO = 0x41474131;
+	private static final int VERSIONE = 2;
+	private static final int MARGINE_MINIMO = 64;
+	private static final long DIMENSIONE_MINIMA_COMPATTAZIONE = 64 * 1024;
+
+	private File file;
+	private FileChannel canale;
+	private TreeMap<String, Voce> indice;
+	private int lunghezzaIndice;
+	private long compattazioni;
+
+	/*
+	 * La posizione di una voce nel file, la sua copia valida e il checksum del suo contenuto.
+	 */
+	private static class Voce {
+		private long posizione;
+		private int lunghezza;
+		private int capacita;
+		private int checksum;
+		private byte copia;
+
+		private Voce(long posizione, int lunghezza, int capacita, int checksum, byte copia) {
+			this.posizione = posizione;
+			this.lunghezza = lunghezza;
+			this.capacita = capacita;
+			this.checksum = checksum;
+			this.copia = copia;
+		}
+
+		private long getPosizioneCopia() {
+			return posizione + copia * (long) capacita;
+		}
+
+		private long getSpazio() {
+			return 2L * capacita;
+		}
+	}
+
+	/*
+	 * Una voce da scrivere, codificata mentre si detiene il lock della relativa agenda.
+	 */
+	private static class Scrittura {
+		private Agenda agenda;
+		private String nome;
+		private byte[] contenuto;
+		private long versione;
+
+		private Scrittura(Agenda agenda) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			synchronized(agenda) {
+				this.agenda = agenda;
+				this.nome = agenda.getNomeAgenda();
+				this.versione = agenda.getVersione();
+				FormatoBinario.scriviBinario(agenda, out);
+			}
+			this.contenuto = out.toByteArray();
+		}
+	}
+
+	private ArchivioAgende(File file) {
+		this.file = file.getAbsoluteFile();
+		this.indice = new TreeMap<>();
+	}
+
+	/**
+	 * Apre l'archivio contenuto nel file passato come parametro. Se il file non esiste, viene creato un archivio vuoto.
+	 *
+	 * @param file il file dell'archivio.
+	 * @return l'archivio aperto.
+	 * @throws IOException se si verifica un errore di I/O, oppure il file non è un archivio o è danneggiato.
+	 */
+
+	public static ArchivioAgende apri(File file) throws IOException {
+		ArchivioAgende archivio = new ArchivioAgende(file);
+		archivio.apriCanale();
+		return archivio;
+	}
+
+	private void apriCanale() throws IOException {
+		canale = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if(canale.size() == 0) {
+				canale.write(ByteBuffer.allocate(DIMENSIONE_INTESTAZIONE), 0);
+				pubblica(scriviIndice(indice, DIMENSIONE_INTESTAZIONE));
+			}
+			else leggiIndice();
+		} catch(IOException e) {
+			canale.close();
+			throw e;
+		}
+	}
+
+	private void leggiIndice() throws IOException {
+		ByteBuffer intestazione = leggi(0, DIMENSIONE_INTESTAZIONE);
+		if(intestazione.getInt(0) != NUMERO_MAGICO) throw new IOException("Formato non riconosciuto: " + file.getName());
+		if(intestazione.getInt(4) != VERSIONE) throw new IOException("Versione del formato non supportata (" + intestazione.getInt(4) + "): " + file.getName());
+		long posizione = intestazione.getLong(8);
+		int lunghezza = intestazione.getInt(16);
+		long dimensione = canale.size();
+		if(posizione < DIMENSIONE_INTESTAZIONE || lunghezza < 4 || posizione + lunghezza > dimensione) {
+			throw new IOException("Archivio danneggiato (indice fuori dal file): " + file.getName());
+		}
+		ByteBuffer buffer = leggi(posizione, lunghezza);
+		if(checksum(buffer) != intestazione.getInt(20)) throw new IOException("Archivio danneggiato (checksum dell'indice errato): " + file.getName());
+
+		TreeMap<String, Voce> letto = new TreeMap<>();
+		try {
+			int numero = buffer.getInt();
+			for(int i = 0; i < numero; i++) {
+				byte[] nome = new byte[Short.toUnsignedInt(buffer.getShort())];
+				buffer.get(nome);
+				Voce voce = new Voce(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.get());
+				if(voce.posizione < DIMENSIONE_INTESTAZIONE || voce.lunghezza < 0 || voce.lunghezza > voce.capacita || (voce.copia != 0 && voce.copia != 1)
+						|| voce.posizione + voce.getSpazio() > dimensione || letto.put(new String(nome, StandardCharsets.UTF_8), voce) != null) {
+					throw new IOException("Archivio danneggiato (voce " + (i + 1) + " non valida): " + file.getName());
+				}
+			}
+		} catch(RuntimeException e) {
+			throw new IOException("Archivio danneggiato (indice troncato): " + file.getName(), e);
+		}
+		indice = letto;
+		lunghezzaIndice = lunghezza;
+	}
+
+	private ByteBuffer leggi(long posizione, int lunghezza) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(lunghezza);
+		while(buffer.hasRemaining()) {
+			if(canale.read(buffer, posizione + buffer.position()) < 0) throw new IOException("Archivio troncato: " + file.getName());
+		}
+		return buffer.flip();
+	}
+
+	private void scrivi(ByteBuffer buffer, long posizione) throws IOException {
+		while(buffer.hasRemaining()) canale.write(buffer, posizione + buffer.position());
+	}
+
+	private static int checksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		return (int) crc.getValue();
+	}
+
+	private static int checksum(byte[] contenuto) {
+		return checksum(ByteBuffer.wrap(contenuto));
+	}
+
+	private static byte[] codificaIndice(TreeMap<String, Voce> indice) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer numero = ByteBuffer.allocate(4).putInt(0, indice.size());
+		out.write(numero.array());
+		for(Map.Entry<String, Voce> elemento: indice.entrySet()) {
+			byte[] nome = elemento.getKey().getBytes(StandardCharsets.UTF_8);
+			if(nome.length > 0xFFFF) throw new IOException("Nome dell'agenda troppo lungo: " + elemento.getKey());
+			Voce voce = elemento.getValue();
+			out.write(ByteBuffer.allocate(2 + nome.length + 21).putShort((short) nome.length).put(nome)
+					.putLong(voce.posizione).putInt(voce.lunghezza).putInt(voce.capacita).putInt(voce.checksum).put(voce.copia).array());
+		}
+		return out.toByteArray();
+	}
+
+	/*
+	 * Scrive l'indice nella posizione indicata, ritornandone l'intestazione (non ancora scritta).
+	 */
+	private ByteBuffer scriviIndice(TreeMap<String, Voce> nuovoIndice, long posizione) throws IOException {
+		byte[] codificato = codificaIndice(nuovoIndice);
+		scrivi(ByteBuffer.wrap(codificato), posizione);
+		lunghezzaIndice = codificato.length;
+		return ByteBuffer.allocate(DIMENSIONE_INTESTAZIONE).putInt(NUMERO_MAGICO).putInt(VERSIONE).putLong(posizione)
+				.putInt(codificato.length).putInt(checksum(codificato)).putLong(0).flip();
+	}
+
+	/*
+	 * L'intestazione viene scritta solo dopo che le voci e l'indice sono stati sincronizzati su disco.
+	 */
+	private void pubblica(ByteBuffer intestazione) throws IOException {
+		boolean sincronizza = Agenda.getDurabilita() != Agenda.Durabilita.NESSUNA;
+		if(sincronizza) canale.force(false);
+		scrivi(intestazione, 0);
+		if(sincronizza) canale.force(false);
+	}
+
+	private static int capacita(int lunghezza) throws IOException {
+		int margine = Math.max(MARGINE_MINIMO, lunghezza / 4);
+		if(lunghezza > Integer.MAX_VALUE - margine) throw new IOException("Agenda troppo grande per l'archivio.");
+		return lunghezza + margine;
+	}
+
+	/**
+	 * Ritorna i nomi delle agende presenti nell'archivio, in ordine lessicografico.
+	 *
+	 * @return una lista dei nomi delle agende.
+	 */
+
+	public synchronized List<String> getNomi() {
+		return new ArrayList<>(indice.keySet());
+	}
+
+	/**
+	 * Ritorna {@code true} se l'archivio contiene un'agenda con il nome passato come parametro.
+	 *
+	 * @param nomeAgenda il nome dell'agenda.
+	 * @return {@code true} se l'agenda è presente, {@code false} altrimenti.
+	 */
+
+	public synchronized boolean contiene(String nomeAgenda) {
+		return indice.containsKey(nomeAgenda);
+	}
+
+	/**
+	 * Legge dall'archivio l'agenda con il nome passato come parametro, con un'unica lettura posizionale.
+	 * L'agenda letta risulta <em>salvata</em>.
+	 *
+	 * @param nomeAgenda il nome dell'agenda da leggere.
+	 * @return l'agenda letta.
+	 * @throws IOException se si verifica un errore di I/O, oppure la voce dell'agenda è danneggiata.
+	 * @throws NoSuchElementException se l'archivio non contiene l'agenda.
+	 */
+
+	public synchronized Agenda leggi(String nomeAgenda) throws IOException, NoSuchElementException {
+		Voce voce = indice.get(nomeAgenda);
+		if(voce == null) throw new NoSuchElementException("Agenda non presente nell'archivio: " + nomeAgenda);
+		ByteBuffer contenuto = leggi(voce.getPosizioneCopia(), voce.lunghezza);
+		if(checksum(contenuto) != voce.checksum) throw new IOException("Archivio danneggiato (checksum errato): agenda " + nomeAgenda);
+		Agenda agenda = FormatoBinario.leggi(nomeAgenda, contenuto, file.getName() + " (agenda " + nomeAgenda + ")");
+		agenda.impostaArchiviata(agenda.getVersione());
+		return agenda;
+	}
+
+	/**
+	 * Aggiorna l'archivio: scrive le agende passate come primo parametro (ognuna sotto il proprio nome, sostituendo l'eventuale
+	 * voce precedente) e rimuove quelle i cui nomi sono passati come secondo parametro. L'indice e l'intestazione vengono scritti
+	 * una sola volta per l'intero aggiornamento. Le agende la cui voce ha già lo stesso contenuto (stessa lunghezza e stesso checksum)
+	 * non vengono riscritte.
+	 * <p>Le agende scritte risultano <em>salvate</em>, se non sono state modificate durante l'aggiornamento. Al termine,
+	 * l'archivio viene compattato se lo spazio inutilizzato supera la frazione {@link #SOGLIA_COMPATTAZIONE} del file.
+	 *
+	 * @param daScrivere le agende da scrivere.
+	 * @param daRimuovere i nomi delle agende da rimuovere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+
+	public void aggiorna(Collection<Agenda> daScrivere, Collection<String> daRimuovere) throws IOException {
+		ArrayList<Scrittura> scritture = new ArrayList<>(daScrivere.size());
+		for(Agenda agenda: daScrivere) scritture.add(new Scrittura(agenda));
+		synchronized(this) {
+			TreeMap<String, Voce> nuovoIndice = new TreeMap<>(indice);
+			boolean modificato = false;
+			for(String nome: daRimuovere) modificato |= nuovoIndice.remove(nome) != null;
+			long fine = canale.size();
+			for(Scrittura scrittura: scritture) {
+				Voce vecchia = nuovoIndice.get(scrittura.nome);
+				int lunghezza = scrittura.contenuto.length;
+				int crc = checksum(scrittura.contenuto);
+				if(vecchia != null && vecchia.lunghezza == lunghezza && vecchia.checksum == crc) continue;
+				Voce voce;
+				if(vecchia != null && lunghezza <= vecchia.capacita) voce = new Voce(vecchia.posizione, lunghezza, vecchia.capacita, crc, (byte) (1 - vecchia.copia));
+				else {
+					voce = new Voce(fine, lunghezza, capacita(lunghezza), crc, (byte) 0);
+					fine += voce.getSpazio();
+				}
+				scrivi(ByteBuffer.wrap(scrittura.contenuto), voce.getPosizioneCopia());
+				nuovoIndice.put(scrittura.nome, voce);
+				modificato = true;
+			}
+			if(modificato) {
+				pubblica(scriviIndice(nuovoIndice, fine));
+				indice = nuovoIndice;
+			}
+			if(getSpazioInutilizzato() > SOGLIA_COMPATTAZIONE * canale.size() && canale.size() > DIMENSIONE_MINIMA_COMPATTAZIONE) compatta();
+		}
+		for(Scrittura scrittura: scritture) scrittura.agenda.impostaArchiviata(scrittura.versione);
+	}
+
+	/**
+	 * Scrive nell'archivio l'agenda passata come parametro, come in {@link #aggiorna}.
+	 *
+	 * @param agenda l'agenda da scrivere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+
+	public void scrivi(Agenda agenda) throws IOException {
+		aggiorna(List.of(agenda), List.of());
+	}
+
+	/**
+	 * Rimuove dall'archivio l'agenda con il nome passato come parametro, come in {@link #aggiorna}.
+	 *
+	 * @param nomeAgenda il nome dell'agenda da rimuovere.
+	 * @return {@code true} se l'agenda era presente, {@code false} altrimenti.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+
+	public boolean rimuovi(String nomeAgenda) throws IOException {
+		if(!contiene(nomeAgenda)) return false;
+		aggiorna(List.of(), List.of(nomeAgenda));
+		return true;
+	}
+
+	/**
+	 * Compatta l'archivio: riscrive tutte le voci una di seguito all'altra, seguite dall'indice, su un file temporaneo
+	 * che sostituisce l'archivio con uno spostamento atomico.
+	 *
+	 * @throws IOException se si verifica un errore di I/O durante la compattazione; in tal caso l'archivio resta invariato.
+	 */
+
+	public synchronized void compatta() throws IOException {
+		GruppoScritture gruppo = new GruppoScritture(Agenda.getDurabilita());
+		Path temporaneo = gruppo.fileTemporaneo(file.toPath());
+		TreeMap<String, Voce> compattato = new TreeMap<>();
+		try(FileChannel nuovo = FileChannel.open(temporaneo, StandardOpenOption.WRITE)) {
+			long posizione = DIMENSIONE_INTESTAZIONE;
+			for(Map.Entry<String, Voce> elemento: indice.entrySet()) {
+				Voce voce = elemento.getValue();
+				ByteBuffer contenuto = leggi(voce.getPosizioneCopia(), voce.lunghezza);
+				Voce spostata = new Voce(posizione, voce.lunghezza, capacita(voce.lunghezza), voce.checksum, (byte) 0);
+				while(contenuto.hasRemaining()) nuovo.write(contenuto, posizione + contenuto.position());
+				compattato.put(elemento.getKey(), spostata);
+				posizione += spostata.getSpazio();
+			}
+			byte[] codificato = codificaIndice(compattato);
+			ByteBuffer buffer = ByteBuffer.wrap(codificato);
+			while(buffer.hasRemaining()) nuovo.write(buffer, posizione + buffer.position());
+			ByteBuffer intestazione = ByteBuffer.allocate(DIMENSIONE_INTESTAZIONE).putInt(NUMERO_MAGICO).putInt(VERSIONE).putLong(posizione)
+					.putInt(codificato.length).putInt(checksum(codificato)).putLong(0).flip();
+			while(intestazione.hasRemaining()) nuovo.write(intestazione, intestazione.position());
+		} catch(IOException e) {
+			Files.deleteIfExists(temporaneo);
+			throw e;
+		}
+		gruppo.sostituisci(temporaneo, file.toPath());
+		canale.close();
+		try {
+			gruppo.completa();
+		} finally {
+			apriCanale();
+		}
+		compattazioni++;
+	}
+
+	/**
+	 * Ritorna lo spazio inutilizzato del file, in byte: le voci spostate o rimosse e gli indici precedenti.
+	 * Le due copie di ogni voce, compreso il margine lasciato per la riscrittura sul posto, non sono considerate inutilizzate.
+	 *
+	 * @return lo spazio inutilizzato di tipo {@code long}.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura della dimensione del file.
+	 */
+
+	public synchronized long getSpazioInutilizzato() throws IOException {
+		long utilizzato = DIMENSIONE_INTESTAZIONE + lunghezzaIndice;
+		for(Voce voce: indice.values()) utilizzato += voce.getSpazio();
+		return canale.size() - utilizzato;
+	}
+
+	/**
+	 * Ritorna la dimensione del file dell'archivio, in byte.
+	 *
+	 * @return la dimensione del file di tipo {@code long}.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura della dimensione del file.
+	 */
+
+	public synchronized long getDimensione() throws IOException {
+		return canale.size();
+	}
+
+	/**
+	 * Ritorna il numero di compattazioni eseguite da quando l'archivio è stato aperto.
+	 *
+	 * @return il numero di compattazioni di tipo {@code long}.
+	 */
+
+	public synchronized long getCompattazioni() {
+		return compattazioni;
+	}
+
+	/**
+	 * Chiude il file dell'archivio.
+	 *
+	 * @throws IOException se si verifica un errore di I/O durante la chiusura.
+	 */
+
+	@Override
+	public synchronized void close() throws IOException {
+		canale.close();
+	}
+}
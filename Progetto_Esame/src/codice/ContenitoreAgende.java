@@ -4,19 +4,29 @@ package codice;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Predicate;
-import jbook.util.PatternMatcher;
 
 
 /**
  * La classe {@code ContenitoreAgende} è una classe per la gestione di più
  * oggetti {@link Agenda}.<br>
- * Essa è formata da un unico campo {@code ArrayList<Agenda>}, ovvero una lista di agende, e 
+ * Essa è formata da una lista di agende (eventualmente non ancora caricate dai rispettivi file, vedi {@link #registraAgendeDaFiles}) e 
  * numerosi metodi per gestire tale lista.
  * <p>
  * È possibile gestire un numero pressoché illimitato di agende, con l'unico limite che non ci possono
@@ -40,6 +50,16 @@ import jbook.util.PatternMatcher;
  * La directory presa in considerazione, di default, è quella standard dichiarata nel Path per le agende 
  * <em>(vedi {@link Agenda#getFilesPath})</em>; a meno che non venga cambiato <em>run-time</em> tramite {@link Agenda#changePathToAgende}.
  * <p>
+ * Con {@link #registraAgendeDaFiles} le agende della cartella vengono soltanto <em>registrate</em>, a partire dal nome dei file, 
+ * senza leggerne il contenuto: ogni agenda viene caricata dal proprio file solo al primo accesso, tramite {@link #selezionaAgenda},
+ * un'iterazione o un altro metodo che ne richieda il contenuto. I metodi che utilizzano soltanto il nome e lo stato di salvataggio
+ * delle agende (e.g. {@link #elencaNomiAgende}, {@link #contains}, {@link #allSaved}) non caricano alcuna agenda.
+ * Un'agenda non ancora caricata è considerata <em>salvata</em>.
+ * <p>
+ * L'elenco delle agende è protetto dal lock del contenitore: i suoi metodi possono quindi essere chiamati anche mentre un altro 
+ * thread (e.g. un {@link ServizioRicaricamento}) aggiunge o sostituisce agende. Le agende soltanto registrate vengono lette
+ * dai rispettivi file senza detenere tale lock, per cui il caricamento di un'agenda non blocca l'accesso alle altre.
+ * <p>
  * {@code ContenitoreAgende} implementa l'interfaccia {@link Iterable}, che lo rende iterabile sugli elementi di tipo {@code Agenda}.<br>
  * Non è però possibile rimuovere o aggiungere agende mentre si itera. Nel caso si tentasse di farlo, verrà lanciata un'eccezione di tipo
  * {@link ConcurrentModificationException}.
@@ -55,14 +75,176 @@ import jbook.util.PatternMatcher;
 
 public class ContenitoreAgende implements Iterable<Agenda> {
 	
-	private ArrayList<Agenda> agende;
+	private ArrayList<VoceAgenda> voci;
+	private ArrayList<Consumer<Agenda>> osservatori;
+	
+	/**
+	 * Il numero di file letti contemporaneamente da {@link #caricaMultiAgendeDaFiles()}, pari al numero di processori disponibili.
+	 */
+	public static final int PARALLELISMO_DEFAULT = Runtime.getRuntime().availableProcessors();
 	
 	/**
 	 * Costruttore per un nuovo {@link ContenitoreAgende}.
 	 * Ques'ultimo viene creato <em>vuoto.</em>
 	 */
 	public ContenitoreAgende() {
-		agende = new ArrayList<>();
+		voci = new ArrayList<>();
+		osservatori = new ArrayList<>();
+	}
+	
+	/*
+	 * Una voce del contenitore: un'agenda già in memoria, oppure soltanto registrata a partire dal file da cui verrà caricata.
+	 */
+	private static class VoceAgenda {
+		private String nome;
+		private File file;
+		private ManifestAgende manifest;
+		private volatile Agenda agenda;
+		
+		private VoceAgenda(Agenda agenda) {
+			this.agenda = agenda;
+		}
+		
+		private VoceAgenda(File file, ManifestAgende manifest) {
+			this.nome = Agenda.nomeDaFile(file.getName());
+			this.file = file;
+			this.manifest = manifest;
+		}
+		
+		private String getNome() {
+			return agenda == null ? nome : agenda.getNomeAgenda();
+		}
+		
+		private boolean isSaved() {
+			return agenda == null || agenda.isSaved();
+		}
+	}
+	
+	/*
+	 * Gli osservatori del contenitore vengono registrati su ogni agenda presente e su quelle aggiunte in seguito.
+	 * Le agende non salvate vengono notificate subito, come se fossero appena state modificate.
+	 */
+	synchronized void aggiungiOsservatore(Consumer<Agenda> osservatore) {
+		osservatori.add(osservatore);
+		for(VoceAgenda voce: voci) {
+			if(voce.agenda != null) osserva(voce.agenda, osservatore);
+		}
+	}
+	
+	synchronized void rimuoviOsservatore(Consumer<Agenda> osservatore) {
+		osservatori.remove(osservatore);
+		for(VoceAgenda voce: voci) {
+			if(voce.agenda != null) voce.agenda.rimuoviOsservatore(osservatore);
+		}
+	}
+	
+	private static void osserva(Agenda agenda, Consumer<Agenda> osservatore) {
+		agenda.aggiungiOsservatore(osservatore);
+		if(!agenda.isSaved()) osservatore.accept(agenda);
+	}
+	
+	private synchronized boolean aggiungi(Agenda agenda) {
+		voci.add(new VoceAgenda(agenda));
+		for(Consumer<Agenda> osservatore: osservatori) osserva(agenda, osservatore);
+		return true;
+	}
+	
+	private synchronized boolean rimuovi(VoceAgenda voce) {
+		if(voce.agenda != null) {
+			for(Consumer<Agenda> osservatore: osservatori) voce.agenda.rimuoviOsservatore(osservatore);
+		}
+		return voci.remove(voce);
+	}
+	
+	/*
+	 * Carica l'agenda della voce, se non è ancora stata caricata: dallo snapshot del manifest se è ancora valido, altrimenti
+	 * dal file di testo. In caso di errore la voce resta non caricata, per cui il caricamento verrà ritentato all'accesso successivo.
+	 * Come in ricarica, il file viene letto senza bloccare il contenitore: va quindi chiamato senza detenerne il lock.
+	 * Il lock della voce fa sì che due thread non leggano lo stesso file; l'agenda letta viene poi pubblicata sotto il lock
+	 * del contenitore, registrandovi gli osservatori solo se la voce non è stata rimossa nel frattempo.
+	 */
+	private Agenda carica(VoceAgenda voce) throws UncheckedIOException {
+		Agenda caricata = voce.agenda;
+		if(caricata != null) return caricata;
+		synchronized(voce) {
+			if(voce.agenda != null) return voce.agenda;
+			try {
+				Agenda snapshot = voce.manifest.caricaSnapshot(voce.file);
+				caricata = snapshot != null ? snapshot : new Agenda(voce.file);
+			} catch(IOException e) {
+				throw new UncheckedIOException("Impossibile caricare l'agenda " + voce.nome + " dal file " + voce.file.getName(), e);
+			}
+			synchronized(this) {
+				voce.agenda = caricata;
+				if(voci.contains(voce)) {
+					for(Consumer<Agenda> osservatore: osservatori) osserva(caricata, osservatore);
+				}
+			}
+			return caricata;
+		}
+	}
+	
+	/*
+	 * Ricarica l'agenda dal file di testo passato come parametro, modificato all'esterno dell'applicazione (vedi ServizioRicaricamento).
+	 * Il file viene letto per intero senza bloccare il contenitore; la nuova agenda sostituisce poi quella in memoria con un'unica
+	 * assegnazione, per cui chi accede al contenitore vede sempre l'agenda precedente oppure quella nuova, mai un'agenda letta a metà.
+	 * Ritorna null se non c'è nulla da ricaricare: l'agenda non è ancora stata caricata (verrà letta dal file aggiornato al primo
+	 * accesso), il file non è cambiato da quando l'agenda lo ha letto o scritto, oppure il suo contenuto coincide con quello dell'agenda.
+	 * Se l'agenda in memoria ha modifiche non salvate non viene sostituita, e l'esito riporta il conflitto.
+	 */
+	EsitoCaricamento ricarica(File file) {
+		String nomeAgenda = Agenda.stripExtension(file.getName());
+		synchronized(this) {
+			VoceAgenda voce = cercaVoce(nomeAgenda);
+			if(voce != null && (voce.agenda == null || Agenda.firma(file).equals(voce.agenda.getFirmaFile()))) return null;
+		}
+		if(!file.exists()) return null;
+		
+		long inizio = System.nanoTime();
+		ReportCaricamento report = new ReportCaricamento();
+		Agenda nuova;
+		try {
+			nuova = new Agenda(file, report);
+		} catch(IOException e) {
+			return new EsitoCaricamento(file, EsitoCaricamento.Stato.ERRORE, null, report, e, System.nanoTime() - inizio);
+		}
+		
+		EsitoCaricamento.Stato stato = EsitoCaricamento.Stato.CARICATA;
+		synchronized(this) {
+			VoceAgenda voce = cercaVoce(nomeAgenda);
+			if(voce == null) aggiungi(nuova);
+			else if(voce.agenda == null) return null;
+			else {
+				Agenda attuale = voce.agenda;
+				synchronized(attuale) {
+					if(attuale.equals(nuova)) return null;
+					if(!attuale.isSaved()) stato = EsitoCaricamento.Stato.CONFLITTO;
+					else {
+						for(Consumer<Agenda> osservatore: osservatori) attuale.rimuoviOsservatore(osservatore);
+						voce.agenda = nuova;
+						for(Consumer<Agenda> osservatore: osservatori) osserva(nuova, osservatore);
+					}
+				}
+			}
+		}
+		return new EsitoCaricamento(file, stato, nomeAgenda, report, null, System.nanoTime() - inizio);
+	}
+	
+	private synchronized VoceAgenda cercaVoce(String nomeAgenda) {
+		for(VoceAgenda voce: voci) {
+			if(voce.getNome().equals(nomeAgenda)) return voce;
+		}
+		return null;
+	}
+
+	/*
+	 * Confronta per identità e non per nome: un'agenda rimossa ne può avere una omonima già aggiunta al suo posto.
+	 */
+	synchronized boolean isPresente(Agenda agenda) {
+		for(VoceAgenda voce: voci) {
+			if(voce.agenda == agenda) return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -70,18 +252,21 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 * 
 	 * @return il numero {@code int} delle agende presenti nel contenitore.
 	 */
-	public int getDimensione() {
-		return agende.size();
+	public synchronized int getDimensione() {
+		return voci.size();
 	}
 	
 	/**
-	 * Ritorna una copia della lista di agende presenti in questo contenitore.
+	 * Ritorna una copia della lista di agende presenti in questo contenitore. Le agende non ancora caricate vengono caricate.
 	 * 
 	 * @return una copia della lista di agende di tipo {@code ArrayList<Agenda>}.
+	 * @throws UncheckedIOException se non è possibile caricare un'agenda dal proprio file.
 	 */
 	
-	public ArrayList<Agenda> getAgende() {
-		return new ArrayList<>(agende);
+	public ArrayList<Agenda> getAgende() throws UncheckedIOException {
+		ArrayList<Agenda> agende = new ArrayList<>(getDimensione());
+		for(Agenda agenda: this) agende.add(agenda);
+		return agende;
 	}
 	
 
@@ -91,7 +276,7 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 		
 		private IteratoreContenitoreAgende() {
 			indiceAgende = 0;
-			lastIndex = agende.size();
+			lastIndex = getDimensione();
 		}
 		
 		@Override
@@ -100,9 +285,13 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 		}
 
 		@Override
-		public Agenda next() throws ConcurrentModificationException {
-			if(lastIndex != agende.size()) throw new ConcurrentModificationException();
-			return agende.get(indiceAgende++);
+		public Agenda next() throws ConcurrentModificationException, UncheckedIOException {
+			VoceAgenda voce;
+			synchronized(ContenitoreAgende.this) {
+				if(lastIndex != voci.size()) throw new ConcurrentModificationException();
+				voce = voci.get(indiceAgende++);
+			}
+			return carica(voce);
 		}
 	}
 	
@@ -121,30 +310,200 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	public boolean caricaAgendaDaFile(String fileName) throws IOException, FileNotFoundException {
 		File file = new File(Agenda.getFilesPath(), fileName);	
 		Agenda newAgenda = new Agenda(file);
-		return (this.contains(newAgenda.getNomeAgenda())) ? false : agende.add(newAgenda);
+		return aggiungiAgenda(newAgenda);
 	}
 	
 	/**
 	 * Carica ogni {@code Agenda} salvata su file di tipo {@code txt} presente all'interno della cartella
-	 * specificata da {@link Agenda#getFilesPath}.<br>
-	 * Eventuali sottocartelle vengono ignorate.
+	 * specificata da {@link Agenda#getFilesPath}, comprese le agende salvate per mese (vedi {@link Agenda#setSalvataggioPerMese}).<br>
+	 * Eventuali altre sottocartelle vengono ignorate.
 	 * <p>Un'agenda non viene importata se condivide il nome con un'altra già presente nel contenitore.
+	 * <p>I file vengono letti in parallelo (vedi {@link #caricaMultiAgendeDaFiles(int)}) con {@link #PARALLELISMO_DEFAULT} thread.
+	 * Le eventuali righe malformate di ogni file vengono stampate nello {@code Standard Error}, come in {@link Agenda#Agenda(File)}.
+	 * Se la lettura di un file fallisce, le agende lette correttamente vengono comunque aggiunte al contenitore, dopodiché
+	 * viene sollevata l'eccezione relativa al primo file (in ordine alfabetico) non letto.
 	 * 
 	 * @return {@code true} <em>se e solo se</em> vengono caricate <strong>tutte</strong> le agende presenti nella directory, {@code false} altrimenti.
 	 * @throws IOException se si è verificata un'eccezione di I/O durante la lettura dai files.
 	 */
 	
 	public boolean caricaMultiAgendeDaFiles() throws IOException {
+		boolean risultatoFinale = true;
+		IOException primoErrore = null;
+		for(EsitoCaricamento esito: caricaMultiAgendeDaFiles(PARALLELISMO_DEFAULT)) {
+			if(esito.getStato() == EsitoCaricamento.Stato.ERRORE) {
+				if(primoErrore == null) primoErrore = esito.getErrore();
+				continue;
+			}
+			Agenda.avvisaRigheScartate(System.err, esito.getFile(), esito.getNomeAgenda(), esito.getReport());
+			if(!esito.isCaricata()) risultatoFinale = false;
+		}
+		if(primoErrore != null) throw primoErrore;
+		return risultatoFinale;
+	}
+	
+	/**
+	 * Carica ogni {@code Agenda} salvata su file di tipo {@code txt} presente all'interno della cartella
+	 * specificata da {@link Agenda#getFilesPath}, leggendo più file contemporaneamente. Le agende salvate per mese 
+	 * vengono lette dalla propria cartella, mentre eventuali altre sottocartelle vengono ignorate.
+	 * <p>I file vengono letti da al più {@code parallelismo} thread, senza stampare alcun messaggio. Al termine della lettura,
+	 * le agende vengono aggiunte al contenitore una alla volta, nell'ordine alfabetico dei file: 
+	 * il risultato è quindi lo stesso indipendentemente dall'ordine in cui termina la lettura dei singoli file. 
+	 * Un'agenda non viene aggiunta se condivide il nome con un'altra già presente nel contenitore 
+	 * (oppure letta da un file precedente).
+	 * <p>Per ogni file viene ritornato un {@link EsitoCaricamento}, che ne descrive lo stato finale, il tempo di lettura, 
+	 * le righe scartate e l'eventuale errore di I/O.
+	 * 
+	 * @param parallelismo il numero massimo di file letti contemporaneamente.
+	 * @return una lista degli esiti, uno per ogni file, nell'ordine alfabetico dei file.
+	 * @throws IOException se la cartella non esiste oppure se la lettura viene interrotta.
+	 * @throws IllegalArgumentException se il parallelismo è minore di {@code 1}.
+	 */
+	
+	public List<EsitoCaricamento> caricaMultiAgendeDaFiles(int parallelismo) throws IOException, IllegalArgumentException {
+		if(parallelismo < 1) throw new IllegalArgumentException("Parallelismo non valido: " + parallelismo);
+		File[] listaFile = fileAgende();
+		
+		ManifestAgende manifest = ManifestAgende.leggi(new File(Agenda.getFilesPath()));
+		ArrayList<LetturaFile> letture = new ArrayList<>(listaFile.length);
+		for(File file: listaFile) letture.add(new LetturaFile(file, manifest));
+		eseguiTutti(letture, Math.min(parallelismo, listaFile.length));
+		
+		ArrayList<EsitoCaricamento> esiti = new ArrayList<>(letture.size());
+		synchronized(this) {
+			HashSet<String> nomi = new HashSet<>();
+			for(VoceAgenda voce: voci) nomi.add(voce.getNome());
+			for(LetturaFile lettura: letture) {
+				EsitoCaricamento.Stato stato;
+				if(lettura.errore != null) stato = EsitoCaricamento.Stato.ERRORE;
+				else if(!nomi.add(lettura.agenda.getNomeAgenda())) stato = EsitoCaricamento.Stato.NOME_DUPLICATO;
+				else {
+					aggiungi(lettura.agenda);
+					stato = EsitoCaricamento.Stato.CARICATA;
+				}
+				esiti.add(new EsitoCaricamento(lettura.file, stato, lettura.agenda == null ? null : lettura.agenda.getNomeAgenda(), 
+						lettura.report, lettura.errore, lettura.nanosecondi));
+			}
+		}
+		return esiti;
+	}
+	
+	/**
+	 * Registra nel contenitore ogni {@code Agenda} salvata su file di tipo {@code txt} presente all'interno della cartella
+	 * specificata da {@link Agenda#getFilesPath}, <strong>senza leggerne il contenuto</strong>, comprese le agende
+	 * salvate per mese. Eventuali altre sottocartelle vengono ignorate.
+	 * <p>Il nome di ogni agenda è il nome del relativo file, senza estensione: un'agenda non viene registrata se condivide il nome 
+	 * con un'altra già presente nel contenitore. Le agende registrate risultano <em>salvate</em> e vengono caricate
+	 * dal proprio file solo al primo accesso (vedi {@link ContenitoreAgende}); il tempo di esecuzione di questo metodo 
+	 * dipende quindi dal numero di file, ma non dalla loro dimensione.
+	 * <p>A differenza di {@link #caricaMultiAgendeDaFiles()}, gli eventuali errori di lettura di un file e le righe malformate
+	 * vengono segnalati solo al caricamento della relativa agenda.
+	 * 
+	 * @return {@code true} <em>se e solo se</em> vengono registrate <strong>tutte</strong> le agende presenti nella directory, {@code false} altrimenti.
+	 * @throws IOException se la cartella non esiste oppure non è possibile leggerla.
+	 */
+	
+	public synchronized boolean registraAgendeDaFiles() throws IOException {
+		boolean risultatoFinale = true;
+		File[] listaFile = fileAgende();
+		ManifestAgende manifest = ManifestAgende.leggi(new File(Agenda.getFilesPath()));
+		for(File file: listaFile) {
+			VoceAgenda voce = new VoceAgenda(file.getAbsoluteFile(), manifest);
+			if(contains(voce.getNome())) risultatoFinale = false;
+			else voci.add(voce);
+		}
+		return risultatoFinale;
+	}
+	
+	/*
+	 * I file di testo (anche compressi) della cartella delle agende e le cartelle delle agende salvate per mese, in ordine alfabetico.
+	 * Se la stessa agenda è presente in più rappresentazioni (e.g. se l'eliminazione della copia precedente al termine di un salvataggio 
+	 * non è riuscita), viene scelta quella modificata più di recente e, a parità, la prima in ordine alfabetico.
+	 */
+	private static File[] fileAgende() throws IOException {
 		File cartella = new File(Agenda.getFilesPath());
 		if(!cartella.exists()) throw new FileNotFoundException("Impossibile trovare la cartella per il caricamento delle Agende.");
-		File[] listaFile = cartella.listFiles();
-		boolean risultatoFinale = true;
+		File[] listaFile = cartella.listFiles( file -> (!file.isDirectory() && (file.getName().endsWith(".txt") || Agenda.isCompresso(file))) || PartizioniAgenda.isCartella(file));
+		if(listaFile == null) throw new IOException("Impossibile leggere la cartella per il caricamento delle Agende.");
+		Arrays.sort(listaFile);
+		HashMap<String, File> scelti = new HashMap<>();
 		for(File file: listaFile) {
-			if(!file.isDirectory() && PatternMatcher.create(".*\\.txt$", file.getName()).matches()) {
-				if(!caricaAgendaDaFile(file.getName())) risultatoFinale = false;
+			scelti.merge(Agenda.nomeDaFile(file.getName()), file, (primo, altro) -> ultimaModifica(altro) > ultimaModifica(primo) ? altro : primo);
+		}
+		return Arrays.stream(listaFile).filter( file -> scelti.get(Agenda.nomeDaFile(file.getName())) == file ).toArray(File[]::new);
+	}
+	
+	/*
+	 * Le modifiche accodate al journal di un file di testo ne fanno parte.
+	 */
+	private static long ultimaModifica(File file) {
+		if(!file.getName().endsWith(".txt")) return file.lastModified();
+		File journal = new File(file.getParentFile(), Agenda.stripExtension(file.getName()) + JournalAgenda.ESTENSIONE);
+		return Math.max(file.lastModified(), journal.lastModified());
+	}
+	
+	/*
+	 * La lettura di un singolo file, eseguita da uno dei thread di caricamento.
+	 */
+	private static class LetturaFile implements Callable<LetturaFile> {
+		private File file;
+		private ManifestAgende manifest;
+		private ReportCaricamento report;
+		private Agenda agenda;
+		private IOException errore;
+		private long nanosecondi;
+		
+		private LetturaFile(File file, ManifestAgende manifest) {
+			this.file = file;
+			this.manifest = manifest;
+			this.report = new ReportCaricamento();
+		}
+		
+		@Override
+		public LetturaFile call() {
+			long inizio = System.nanoTime();
+			try {
+				agenda = manifest.caricaSnapshot(file);
+				if(agenda == null) agenda = new Agenda(file, report);
+			} catch(IOException e) {
+				errore = e;
 			}
+			nanosecondi = System.nanoTime() - inizio;
+			return this;
+		}
+	}
+	
+	/*
+	 * Esegue i compiti con al più il numero di thread indicato, attendendo che terminino tutti.
+	 * I compiti riportano i propri errori di I/O, per cui non sollevano eccezioni controllate.
+	 */
+	private static <T> void eseguiTutti(List<? extends Callable<T>> compiti, int thread) throws InterruptedIOException {
+		if(thread <= 1) {
+			for(Callable<T> compito: compiti) esegui(compito);
+			return;
+		}
+		ExecutorService esecutore = Executors.newFixedThreadPool(thread);
+		try {
+			for(Future<T> risultato: esecutore.invokeAll(compiti)) risultato.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Operazione sulle agende interrotta.");
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			esecutore.shutdownNow();
+		}
+	}
+	
+	private static <T> void esegui(Callable<T> compito) {
+		try {
+			compito.call();
+		} catch(RuntimeException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new IllegalStateException(e);
 		}
-		return risultatoFinale;
 	}
 	
 	/**
@@ -171,14 +530,236 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 * Salva l'intero contenitore su files di tipo {@code txt}, uno per ogni agenda, all'interno
 	 * della directory indicata da {@link Agenda#getFilesPath}.
 	 * <p>Se un'agenda è impostata come <em>salvata</em>, viene ignorata.
+	 * <p>Le agende vengono scritte in parallelo con {@link #PARALLELISMO_DEFAULT} thread (vedi {@link #salvaContenitoreSuFile(int)}).
+	 * Se il salvataggio di un'agenda fallisce, viene sollevata l'eccezione relativa alla prima agenda (nell'ordine del contenitore) non salvata.
 	 * 
 	 * @return {@code true} se il salvataggio su files del contenitore è riuscito.
 	 * @throws IOException se si è verificata un'eccezione di I/O durante il salvataggio su files.
 	 */
 	
 	public boolean salvaContenitoreSuFile() throws IOException {
-		for(Agenda elemento: this) {
-			if(!elemento.isSaved()) elemento.salvaAgendaSuFile();
+		for(EsitoSalvataggio esito: salvaContenitoreSuFile(PARALLELISMO_DEFAULT)) {
+			if(!esito.isSalvata()) throw esito.getErrore();
+		}
+		return true;
+	}
+	
+	/**
+	 * Salva su files di tipo {@code txt} tutte le agende <em>non salvate</em> del contenitore, scrivendone più contemporaneamente,
+	 * all'interno della directory indicata da {@link Agenda#getFilesPath}.
+	 * <p>Le agende vengono scritte da al più {@code parallelismo} thread, dopodiché il metodo attende che tutte le scritture
+	 * siano terminate. Il salvataggio di ogni agenda avviene come in {@link Agenda#salvaAgendaSuFile}, secondo la durabilità impostata 
+	 * (vedi {@link Agenda#setDurabilita}):<ul>
+	 * <li> con {@link Agenda.Durabilita#NESSUNA} e {@link Agenda.Durabilita#PER_FILE} ogni agenda viene salvata indipendentemente dalle altre;
+	 * <li> con {@link Agenda.Durabilita#PER_GRUPPO} le agende vengono prima scritte tutte su file temporanei, che vengono poi sincronizzati
+	 * su disco e spostati sui file delle agende tutti insieme, sincronizzando la cartella una sola volta. Se la scrittura di un'agenda fallisce,
+	 * nessun file {@code txt} delle agende viene sostituito e le altre agende risultano {@link EsitoSalvataggio.Stato#ANNULLATA annullate}.
+	 * I record accodati ai journal vengono invece scritti subito, per cui restano sui rispettivi file anche se il salvataggio viene annullato
+	 * (senza però essere sincronizzati su disco).</ul>
+	 * <p>Per ogni agenda non salvata viene ritornato un {@link EsitoSalvataggio}, che ne descrive lo stato finale, il tempo di scrittura
+	 * e l'eventuale errore di I/O. Questo metodo non solleva eccezioni di I/O: gli errori sono riportati negli esiti.
+	 * 
+	 * @param parallelismo il numero massimo di agende scritte contemporaneamente.
+	 * @return una lista degli esiti, uno per ogni agenda non salvata, nell'ordine del contenitore.
+	 * @throws IllegalArgumentException se il parallelismo è minore di {@code 1}.
+	 */
+	
+	public List<EsitoSalvataggio> salvaContenitoreSuFile(int parallelismo) throws IllegalArgumentException {
+		if(parallelismo < 1) throw new IllegalArgumentException("Parallelismo non valido: " + parallelismo);
+		ArrayList<Agenda> daSalvare = new ArrayList<>();
+		synchronized(this) {
+			for(VoceAgenda voce: voci) {
+				if(!voce.isSaved()) daSalvare.add(voce.agenda);
+			}
+		}
+		return salva(daSalvare, parallelismo);
+	}
+	
+	/*
+	 * Salva le agende passate come parametro, come descritto in salvaContenitoreSuFile(int).
+	 */
+	static List<EsitoSalvataggio> salva(List<Agenda> daSalvare, int parallelismo) {
+		Agenda.Durabilita durabilita = Agenda.getDurabilita();
+		GruppoScritture condiviso = durabilita == Agenda.Durabilita.PER_GRUPPO ? new GruppoScritture(durabilita) : null;
+		ArrayList<ScritturaAgenda> scritture = new ArrayList<>();
+		for(Agenda agenda: daSalvare) {
+			scritture.add(new ScritturaAgenda(agenda, condiviso != null ? condiviso : new GruppoScritture(durabilita)));
+		}
+		try {
+			eseguiTutti(scritture, Math.min(parallelismo, scritture.size()));
+		} catch(InterruptedIOException e) {
+			if(condiviso != null) condiviso.annulla();
+			for(ScritturaAgenda scrittura: scritture) {
+				if(scrittura.errore == null && !scrittura.agenda.isSaved()) scrittura.errore = e;
+			}
+			return esiti(scritture, null, null);
+		}
+		
+		if(condiviso == null) return esiti(scritture, null, null);
+		IOException errore = null;
+		for(ScritturaAgenda scrittura: scritture) {
+			if(scrittura.errore != null) {
+				errore = scrittura.errore;
+				break;
+			}
+		}
+		if(errore != null) {
+			condiviso.annulla();
+			return esiti(scritture, EsitoSalvataggio.Stato.ANNULLATA, errore);
+		}
+		try {
+			condiviso.completa();
+		} catch(IOException e) {
+			return esiti(scritture, EsitoSalvataggio.Stato.ERRORE, e);
+		}
+		return esiti(scritture, null, null);
+	}
+	
+	/*
+	 * Gli esiti delle scritture: quelle fallite riportano il proprio errore, le altre lo stato e l'errore passati 
+	 * come parametri (se lo stato è null, sono salvate).
+	 */
+	private static List<EsitoSalvataggio> esiti(ArrayList<ScritturaAgenda> scritture, EsitoSalvataggio.Stato stato, IOException errore) {
+		ArrayList<EsitoSalvataggio> esiti = new ArrayList<>(scritture.size());
+		for(ScritturaAgenda scrittura: scritture) {
+			if(scrittura.errore != null) esiti.add(new EsitoSalvataggio(scrittura.nomeAgenda, EsitoSalvataggio.Stato.ERRORE, scrittura.errore, scrittura.nanosecondi));
+			else if(stato != null) esiti.add(new EsitoSalvataggio(scrittura.nomeAgenda, stato, errore, scrittura.nanosecondi));
+			else esiti.add(new EsitoSalvataggio(scrittura.nomeAgenda, EsitoSalvataggio.Stato.SALVATA, null, scrittura.nanosecondi));
+		}
+		return esiti;
+	}
+	
+	/*
+	 * La scrittura di una singola agenda, eseguita da uno dei thread di salvataggio.
+	 */
+	private static class ScritturaAgenda implements Callable<ScritturaAgenda> {
+		private Agenda agenda;
+		private String nomeAgenda;
+		private GruppoScritture gruppo;
+		private IOException errore;
+		private long nanosecondi;
+		
+		private ScritturaAgenda(Agenda agenda, GruppoScritture gruppo) {
+			this.agenda = agenda;
+			this.nomeAgenda = agenda.getNomeAgenda();
+			this.gruppo = gruppo;
+		}
+		
+		@Override
+		public ScritturaAgenda call() {
+			long inizio = System.nanoTime();
+			try {
+				agenda.salvaAgendaSuFile(gruppo);
+				if(gruppo.getDurabilita() != Agenda.Durabilita.PER_GRUPPO) gruppo.completa();
+			} catch(IOException e) {
+				if(gruppo.getDurabilita() != Agenda.Durabilita.PER_GRUPPO) gruppo.annulla();
+				errore = e;
+			}
+			nanosecondi = System.nanoTime() - inizio;
+			return this;
+		}
+	}
+	
+	/**
+	 * Aggiorna il manifest della cartella specificata da {@link Agenda#getFilesPath} (vedi {@link ManifestAgende}), scrivendo lo
+	 * snapshot di ogni agenda caricata e <em>salvata</em> il cui file di testo è cambiato dall'ultimo aggiornamento.
+	 * Le voci dei file non più presenti nella cartella vengono rimosse.
+	 * <p>Alla successiva registrazione o caricamento delle agende della cartella (vedi {@link #registraAgendeDaFiles} e 
+	 * {@link #caricaMultiAgendeDaFiles(int)}), le agende i cui file non sono cambiati vengono lette direttamente dallo snapshot,
+	 * senza interpretare nuovamente il file di testo. Le righe malformate di tali file, già segnalate al primo caricamento,
+	 * non vengono quindi segnalate di nuovo.
+	 * 
+	 * @return il numero di snapshot scritti.
+	 * @throws IOException se la cartella non esiste oppure si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public synchronized int aggiornaManifest() throws IOException {
+		File cartella = new File(Agenda.getFilesPath());
+		if(!cartella.exists()) throw new FileNotFoundException("Impossibile trovare la cartella per il salvataggio delle Agende.");
+		ManifestAgende manifest = ManifestAgende.leggi(cartella);
+		int aggiornati = 0;
+		for(VoceAgenda voce: voci) {
+			if(voce.agenda != null && manifest.aggiorna(voce.agenda)) aggiornati++;
+		}
+		manifest.rimuoviMancanti();
+		manifest.scrivi();
+		return aggiornati;
+	}
+
+	/**
+	 * Carica ogni {@code Agenda} contenuta nell'archivio (vedi {@link ArchivioAgende}) passato come parametro, all'interno
+	 * della cartella specificata da {@link Agenda#getFilesPath}. Viene letto un solo file: l'indice all'apertura e ogni agenda
+	 * con un'unica lettura posizionale.
+	 * <p>Un'agenda non viene importata se condivide il nome con un'altra già presente nel contenitore.
+	 * Se la lettura di un'agenda fallisce, le altre agende vengono comunque aggiunte al contenitore, dopodiché
+	 * viene sollevata l'eccezione relativa alla prima agenda (in ordine alfabetico) non letta.
+	 * 
+	 * @param fileName il nome del file dell'archivio.
+	 * @return {@code true} <em>se e solo se</em> vengono caricate <strong>tutte</strong> le agende dell'archivio, {@code false} altrimenti.
+	 * @throws IOException se si è verificata un'eccezione di I/O durante la lettura dall'archivio.
+	 * @throws FileNotFoundException se il file non esiste.
+	 */
+	
+	public boolean caricaAgendeDaArchivio(String fileName) throws IOException, FileNotFoundException {
+		File file = new File(Agenda.getFilesPath(), fileName);
+		if(!file.isFile()) throw new FileNotFoundException("Impossibile trovare l'archivio " + fileName);
+		boolean risultatoFinale = true;
+		IOException primoErrore = null;
+		try(ArchivioAgende archivio = ArchivioAgende.apri(file)) {
+			for(String nome: archivio.getNomi()) {
+				if(this.contains(nome)) {
+					risultatoFinale = false;
+					continue;
+				}
+				try {
+					if(!aggiungiAgenda(archivio.leggi(nome))) risultatoFinale = false;
+				} catch(IOException e) {
+					if(primoErrore == null) primoErrore = e;
+				}
+			}
+		}
+		if(primoErrore != null) throw primoErrore;
+		return risultatoFinale;
+	}
+	
+	/**
+	 * Salva l'intero contenitore nell'archivio (vedi {@link ArchivioAgende}) passato come parametro, all'interno
+	 * della cartella specificata da {@link Agenda#getFilesPath}; se l'archivio non esiste, viene creato.
+	 * <p>Vengono scritte soltanto le agende modificate dall'ultima volta in cui sono state lette da un archivio o scritte in un archivio,
+	 * oppure assenti dall'archivio, e tra queste soltanto quelle il cui contenuto è cambiato, sul posto quando possibile; le agende
+	 * dell'archivio che non sono più presenti nel contenitore vengono rimosse. Le agende soltanto registrate
+	 * (vedi {@link #registraAgendeDaFiles}) vengono caricate solo se non sono presenti nell'archivio. L'indice dell'archivio
+	 * viene aggiornato una sola volta e l'archivio viene compattato quando necessario, come in {@link ArchivioAgende#aggiorna}.
+	 * <p>Al termine, le agende scritte risultano <em>salvate</em>.
+	 * 
+	 * @param fileName il nome del file dell'archivio.
+	 * @return {@code true} se il salvataggio nell'archivio è riuscito.
+	 * @throws IOException se la cartella non esiste oppure si è verificata un'eccezione di I/O durante la scrittura.
+	 * @throws UncheckedIOException se non è possibile caricare un'agenda registrata dal proprio file.
+	 */
+	
+	public boolean salvaContenitoreInArchivio(String fileName) throws IOException, UncheckedIOException {
+		File cartella = new File(Agenda.getFilesPath());
+		if(!cartella.exists()) throw new FileNotFoundException("Impossibile trovare la cartella per il salvataggio delle Agende.");
+		try(ArchivioAgende archivio = ArchivioAgende.apri(new File(cartella, fileName))) {
+			ArrayList<Agenda> daScrivere = new ArrayList<>();
+			ArrayList<VoceAgenda> daCaricare = new ArrayList<>();
+			HashSet<String> nomi = new HashSet<>();
+			synchronized(this) {
+				for(VoceAgenda voce: voci) {
+					nomi.add(voce.getNome());
+					if(voce.agenda != null) {
+						if(!voce.agenda.isArchiviata() || !archivio.contiene(voce.agenda.getNomeAgenda())) daScrivere.add(voce.agenda);
+					}
+					else if(!archivio.contiene(voce.nome)) daCaricare.add(voce);
+				}
+			}
+			for(VoceAgenda voce: daCaricare) daScrivere.add(carica(voce));
+			ArrayList<String> daRimuovere = new ArrayList<>();
+			for(String nome: archivio.getNomi()) {
+				if(!nomi.contains(nome)) daRimuovere.add(nome);
+			}
+			archivio.aggiorna(daScrivere, daRimuovere);
 		}
 		return true;
 	}
@@ -189,8 +770,23 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 * @return {@code true} <em>se e solo se</em> ogni {@code Agenda} è impostata come <em>salvata</em>, {@code false} altrimenti.
 	 */
 	
-	public boolean allSaved() {
-		return agende.stream().allMatch( agenda -> agenda.isSaved() );
+	public synchronized boolean allSaved() {
+		return voci.stream().allMatch( voce -> voce.isSaved() );
+	}
+	
+	/**
+	 * Controlla che l'agenda col nome passato come parametro sia salvata su file. L'agenda non viene caricata se è stata
+	 * soltanto registrata (vedi {@link #registraAgendeDaFiles}).
+	 * 
+	 * @param nomeAgenda il nome dell'agenda.
+	 * @return {@code true} se l'agenda è impostata come <em>salvata</em>, {@code false} altrimenti.
+	 * @throws NoSuchElementException se non è stata trovata alcuna agenda a partire dal nome.
+	 */
+	
+	public synchronized boolean isSaved(String nomeAgenda) throws NoSuchElementException {
+		VoceAgenda voce = cercaVoce(nomeAgenda);
+		if(voce == null) throw new NoSuchElementException("Agenda non esiste!");
+		return voce.isSaved();
 	}
 	
 	/**
@@ -199,24 +795,28 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 * @return {@code true} se è stata rimossa almeno un'agenda, {@code false} se il contenitore era già vuoto.
 	 */
 	
-	public boolean clear() {
-		return agende.removeAll(agende);
+	public synchronized boolean clear() {
+		if(voci.isEmpty()) return false;
+		for(VoceAgenda voce: new ArrayList<>(voci)) rimuovi(voce);
+		return true;
 	}
 	
 	/**
 	 * Cerca un'agenda nel contenitore a partire da un nome ricevuto come parametro. Ritorna
 	 * un riferimento a tale {@code Agenda} se trovata.
+	 * <p>Se l'agenda è stata soltanto registrata (vedi {@link #registraAgendeDaFiles}), viene caricata dal proprio file.
+	 * Le eventuali righe malformate vengono stampate nello {@code Standard Error}, come in {@link Agenda#Agenda(File)}.
 	 * 
 	 * @param nomeAgenda il nome, di tipo {@code String}, con cui effettuare la ricerca.
 	 * @return un riferimento all' {@code Agenda} trovata.
 	 * @throws NoSuchElementException se non è stata trovata alcuna agenda a partire dal nome.
+	 * @throws UncheckedIOException se non è possibile caricare l'agenda dal proprio file.
 	 */
 	
-	public Agenda selezionaAgenda(String nomeAgenda) throws NoSuchElementException {
-		for(Agenda elemento: this) {
-			if(elemento.getNomeAgenda().equals(nomeAgenda)) return elemento;
-		}
-		throw new NoSuchElementException("Agenda non esiste!");
+	public Agenda selezionaAgenda(String nomeAgenda) throws NoSuchElementException, UncheckedIOException {
+		VoceAgenda voce = cercaVoce(nomeAgenda);
+		if(voce == null) throw new NoSuchElementException("Agenda non esiste!");
+		return carica(voce);
 	}
 	
 	
@@ -227,7 +827,7 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 */
 	
 	public boolean contains(String nomeAgenda) {
-		return agende.stream().anyMatch( agenda -> agenda.getNomeAgenda().equals(nomeAgenda) );
+		return cercaVoce(nomeAgenda) != null;
 	}
 	
 	/**
@@ -241,26 +841,19 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 */
 	
 	public boolean modificaNomeAgenda(String nomeAgenda, String newName) {
-		if(!this.contains(newName)) {
-			try {
-				Agenda agenda = selezionaAgenda(nomeAgenda);
-				agenda.setNomeAgenda(newName);
-				return true;
-			} catch(NoSuchElementException e) { return false; }
-		}
-		return false;
-	}
-	
-	
-	private boolean actionToAgenda(String nomeAgenda, Predicate<Agenda> actionIfFound, Predicate<Agenda> actionIfNotFound) {
+		if(this.contains(newName)) return false;
+		Agenda agenda;
 		try {
-			return actionIfFound.test(selezionaAgenda(nomeAgenda));
-		}
-		catch(NoSuchElementException e) {
-			return actionIfNotFound.test(new Agenda(nomeAgenda));
+			agenda = selezionaAgenda(nomeAgenda);
+		} catch(NoSuchElementException e) { return false; }
+		synchronized(this) {
+			if(this.contains(newName) || !isPresente(agenda) || !agenda.getNomeAgenda().equals(nomeAgenda)) return false;
+			agenda.setNomeAgenda(newName);
+			return true;
 		}
 	}
 	
+	
 	/**
 	 * Aggiunge una nuova {@code Agenda} al {@code ContenitoreAgende} assegnandoli il nome
 	 * ricevuto come parametro. Se la stringa è vuota, si tenterà di aggiungere al contenitore
@@ -273,7 +866,7 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 */
 	
 	public boolean aggiungiAgenda(String nomeAgenda) {
-		return actionToAgenda(nomeAgenda, agenda -> false, agenda -> agende.add(agenda));
+		return aggiungiAgenda(new Agenda(nomeAgenda));
 	}
 	
 	/**
@@ -284,8 +877,8 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 * @return {@code true} se l'operazione ha successo, {@code false} altrimenti.
 	 */
 	
-	public boolean aggiungiAgenda(Agenda toAdd) {
-		return (this.contains(toAdd.getNomeAgenda())) ? false : agende.add(toAdd);
+	public synchronized boolean aggiungiAgenda(Agenda toAdd) {
+		return (this.contains(toAdd.getNomeAgenda())) ? false : aggiungi(toAdd);
 	}
 	
 	/**
@@ -298,17 +891,21 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 */
 	
 	
-	public boolean removeAgenda(String nomeAgenda) {
-		return actionToAgenda(nomeAgenda, agenda -> agende.remove(agenda), agenda -> false);
+	public synchronized boolean removeAgenda(String nomeAgenda) {
+		VoceAgenda voce = cercaVoce(nomeAgenda);
+		return voce != null && rimuovi(voce);
 	}
 	
 	
 
-	private String makeString(Function<Agenda, String> getString)  {
-		ArrayList<Agenda> elenco = new ArrayList<>(agende);
+	private String makeString(Function<VoceAgenda, String> getString)  {
+		ArrayList<VoceAgenda> elenco;
+		synchronized(this) {
+			elenco = new ArrayList<>(voci);
+		}
 		String finalString = "";
-		elenco.sort( (first, second) -> first.getNomeAgenda().compareTo(second.getNomeAgenda()));
-		for(Agenda elemento: elenco) finalString += getString.apply(elemento);
+		elenco.sort( (first, second) -> first.getNome().compareTo(second.getNome()));
+		for(VoceAgenda elemento: elenco) finalString += getString.apply(elemento);
 		return finalString;
 	}
 	
@@ -320,24 +917,26 @@ public class ContenitoreAgende implements Iterable<Agenda> {
 	 */
 	
 	public String elencaNomiAgende() {
-		return makeString( agenda -> "- "+agenda.getNomeAgenda() + (agenda.isSaved() ? "":"*") + "\n");
+		return makeString( voce -> "- "+voce.getNome() + (voce.isSaved() ? "":"*") + "\n");
 	}
 	
 	/**
 	 * Ritorna una rappresentazione in stringa di questo {@code ContenitoreAgende}. Le agende sono elencate in ordine
-	 * lessicografico.
+	 * lessicografico. Le agende non ancora caricate vengono caricate.
 	 * 
 	 * @return una rappresentazione di tipo {@code String} di questo {@code ContenitoreAgende}.
+	 * @throws UncheckedIOException se non è possibile caricare un'agenda dal proprio file.
 	 */
 	
 	@Override
-	public String toString() {
-		return makeString( agenda -> agenda.toString() + "\n------------------------------------------\n\n");
+	public String toString() throws UncheckedIOException {
+		return makeString( voce -> carica(voce).toString() + "\n------------------------------------------\n\n");
 	}
 
 	/**
 	 * Ritorna un {@link Iterator} per questo {@code ContenitoreAgende}, utile a iterare su ogni
-	 * {@code Agenda}.
+	 * {@code Agenda}. Ogni agenda non ancora caricata viene caricata quando viene raggiunta dall'iterazione
+	 * (in caso di errore, {@code next} solleva un'eccezione {@link UncheckedIOException}).
 	 * 
 	 * @return un nuovo {@code Iterator<Agenda>}.
 	 */
@@ -0,0 +1,150 @@
+package codice;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * La classe {@code EsitoCaricamento} descrive l'esito del caricamento di un singolo file durante il caricamento di più
+ * agende da una cartella (vedi {@link ContenitoreAgende#caricaMultiAgendeDaFiles(int)}).
+ * <p>
+ * Ogni esito riporta il file letto, il tempo impiegato per leggerlo e lo {@link Stato} finale: l'agenda può essere stata
+ * aggiunta al contenitore, scartata perché esiste già un'agenda con lo stesso nome, oppure non letta a causa di un errore di I/O.
+ * Gli stessi esiti descrivono i file ricaricati da {@link ServizioRicaricamento}.
+ * Le eventuali righe malformate del file sono descritte dal relativo {@link ReportCaricamento}.
+ * <p><strong>Questa classe è immutabile</strong>.
+ *
+ * @see ContenitoreAgende
+ * @see ReportCaricamento
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class EsitoCaricamento {
+
+	/**
+	 * L'enumerazione {@code Stato} descrive come si è concluso il caricamento di un file.
+	 */
+
+	public enum Stato {
+
+		/**
+		 * L'agenda è stata letta e aggiunta al contenitore, oppure ha sostituito quella in memoria con lo stesso nome.
+		 */
+		CARICATA,
+
+		/**
+		 * L'agenda è stata letta, ma non aggiunta poiché il contenitore ne contiene già un'altra con lo stesso nome.
+		 */
+		NOME_DUPLICATO,
+
+		/**
+		 * Non è stato possibile leggere il file a causa di un errore di I/O.
+		 */
+		ERRORE,
+
+		/**
+		 * Il file è stato modificato all'esterno dell'applicazione, ma l'agenda in memoria con lo stesso nome ha modifiche
+		 * non salvate: l'agenda non è stata sostituita (vedi {@link ServizioRicaricamento}).
+		 */
+		CONFLITTO
+	}
+
+	private File file;
+	private Stato stato;
+	private String nomeAgenda;
+	private ReportCaricamento report;
+	private IOException errore;
+	private long nanosecondi;
+
+	EsitoCaricamento(File file, Stato stato, String nomeAgenda, ReportCaricamento report, IOException errore, long nanosecondi) {
+		this.file = file;
+		this.stato = stato;
+		this.nomeAgenda = nomeAgenda;
+		this.report = report;
+		this.errore = errore;
+		this.nanosecondi = nanosecondi;
+	}
+
+	/**
+	 * Ritorna il file letto.
+	 *
+	 * @return il {@code File} da cui è stata caricata l'agenda.
+	 */
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Ritorna lo stato finale del caricamento.
+	 *
+	 * @return lo {@link Stato} del caricamento.
+	 */
+
+	public Stato getStato() {
+		return stato;
+	}
+
+	/**
+	 * Ritorna {@code true} se l'agenda è stata aggiunta al contenitore.
+	 *
+	 * @return {@code true} se lo stato è {@link Stato#CARICATA}, {@code false} altrimenti.
+	 */
+
+	public boolean isCaricata() {
+		return stato == Stato.CARICATA;
+	}
+
+	/**
+	 * Ritorna il nome dell'agenda letta dal file.
+	 *
+	 * @return il nome dell'agenda, oppure {@code null} se il file non è stato letto.
+	 */
+
+	public String getNomeAgenda() {
+		return nomeAgenda;
+	}
+
+	/**
+	 * Ritorna il report con le righe del file che non è stato possibile aggiungere all'agenda.
+	 *
+	 * @return il {@link ReportCaricamento} del file.
+	 */
+
+	public ReportCaricamento getReport() {
+		return report;
+	}
+
+	/**
+	 * Ritorna l'errore di I/O che ha impedito la lettura del file.
+	 *
+	 * @return l'{@code IOException} sollevata, oppure {@code null} se il file è stato letto.
+	 */
+
+	public IOException getErrore() {
+		return errore;
+	}
+
+	/**
+	 * Ritorna il tempo impiegato per leggere il file, in nanosecondi.
+	 *
+	 * @return il tempo di lettura di tipo {@code long}.
+	 */
+
+	public long getNanosecondi() {
+		return nanosecondi;
+	}
+
+	/**
+	 * Ritorna una rappresentazione in stringa dell'esito, nel formato {@code nomeFile: STATO (N ms)},
+	 * seguito dall'eventuale errore.
+	 *
+	 * @return una rappresentazione dell'esito di tipo {@code String}.
+	 */
+
+	@Override
+	public String toString() {
+		return file.getName() + ": " + stato + " (" + nanosecondi / 1000000 + " ms)" + (errore == null ? "" : " " + errore.getMessage());
+	}
+}
@@ -0,0 +1,119 @@
+package codice;
+
+import java.io.IOException;
+
+/**
+ * La classe {@code EsitoSalvataggio} descrive l'esito del salvataggio su file di una singola agenda durante il salvataggio
+ * di più agende (vedi {@link ContenitoreAgende#salvaContenitoreSuFile(int)}).
+ * <p>
+ * Ogni esito riporta il nome dell'agenda, il tempo impiegato per scriverla e lo {@link Stato} finale: l'agenda può essere
+ * stata salvata, non salvata a causa di un errore di I/O, oppure non salvata perché il salvataggio dell'intero gruppo
+ * è stato annullato (vedi {@link Agenda.Durabilita#PER_GRUPPO}).
+ * <p><strong>Questa classe è immutabile</strong>.
+ *
+ * @see ContenitoreAgende
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class EsitoSalvataggio {
+
+	/**
+	 * L'enumerazione {@code Stato} descrive come si è concluso il salvataggio di un'agenda.
+	 */
+
+	public enum Stato {
+
+		/**
+		 * L'agenda è stata salvata su file.
+		 */
+		SALVATA,
+
+		/**
+		 * Non è stato possibile salvare l'agenda a causa di un errore di I/O.
+		 */
+		ERRORE,
+
+		/**
+		 * L'agenda è stata scritta, ma il suo file non è stato sostituito perché il salvataggio di un'altra agenda
+		 * dello stesso gruppo è fallito.
+		 */
+		ANNULLATA
+	}
+
+	private String nomeAgenda;
+	private Stato stato;
+	private IOException errore;
+	private long nanosecondi;
+
+	EsitoSalvataggio(String nomeAgenda, Stato stato, IOException errore, long nanosecondi) {
+		this.nomeAgenda = nomeAgenda;
+		this.stato = stato;
+		this.errore = errore;
+		this.nanosecondi = nanosecondi;
+	}
+
+	/**
+	 * Ritorna il nome dell'agenda.
+	 *
+	 * @return il nome dell'agenda di tipo {@code String}.
+	 */
+
+	public String getNomeAgenda() {
+		return nomeAgenda;
+	}
+
+	/**
+	 * Ritorna lo stato finale del salvataggio.
+	 *
+	 * @return lo {@link Stato} del salvataggio.
+	 */
+
+	public Stato getStato() {
+		return stato;
+	}
+
+	/**
+	 * Ritorna {@code true} se l'agenda è stata salvata.
+	 *
+	 * @return {@code true} se lo stato è {@link Stato#SALVATA}, {@code false} altrimenti.
+	 */
+
+	public boolean isSalvata() {
+		return stato == Stato.SALVATA;
+	}
+
+	/**
+	 * Ritorna l'errore di I/O che ha impedito il salvataggio. Per le agende {@link Stato#ANNULLATA} è l'errore
+	 * che ha causato l'annullamento del gruppo.
+	 *
+	 * @return l'{@code IOException} sollevata, oppure {@code null} se l'agenda è stata salvata.
+	 */
+
+	public IOException getErrore() {
+		return errore;
+	}
+
+	/**
+	 * Ritorna il tempo impiegato per scrivere l'agenda, in nanosecondi.
+	 *
+	 * @return il tempo di scrittura di tipo {@code long}.
+	 */
+
+	public long getNanosecondi() {
+		return nanosecondi;
+	}
+
+	/**
+	 * Ritorna una rappresentazione in stringa dell'esito, nel formato {@code nomeAgenda: STATO (N ms)},
+	 * seguito dall'eventuale errore.
+	 *
+	 * @return una rappresentazione dell'esito di tipo {@code String}.
+	 */
+
+	@Override
+	public String toString() {
+		return nomeAgenda + ": " + stato + " (" + nanosecondi / 1000000 + " ms)" + (errore == null ? "" : " " + errore.getMessage());
+	}
+}
@@ -0,0 +1,318 @@
+package codice;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32C;
+import jbook.util.DataOrario;
+
+/**
+ * La classe {@code FormatoBinario} legge e scrive un'{@link Agenda} in un formato binario compatto, alternativo al file di testo,
+ * che non richiede di interpretare date, orari e durate ad ogni caricamento.
+ * <p>
+ * Un file binario ({@code <nome>.agb}) è composto da:<ul>
+ * <li> un'<strong>intestazione</strong> di {@value #DIMENSIONE_INTESTAZIONE} byte: il numero magico {@code AGB1}, la versione del formato
+ * e il numero di appuntamenti;
+ * <li> un <strong>record</strong> di lunghezza fissa ({@value #DIMENSIONE_RECORD} byte) per ogni appuntamento, in ordine di inizio:
+ * l'inizio in minuti trascorsi dall'epoca (vedi {@link DataOrario#getMinutiEpoch}), la durata in minuti e la posizione, nella tabella
+ * delle stringhe, del luogo e del nome della persona;
+ * <li> la <strong>tabella delle stringhe</strong>, fino alla fine del file: ogni luogo e ogni nome compare una sola volta, preceduto dalla
+ * sua lunghezza in byte ({@code UTF-8}).</ul>
+ * Tutti i valori sono scritti in ordine <em>big-endian</em>.
+ * <p>
+ * La lettura tramite {@link #leggi(File)} avviene con {@link FileChannel#map}: i record vengono letti direttamente dalla memoria mappata,
+ * mentre ogni stringa della tabella viene decodificata (e validata) una sola volta, indipendentemente dal numero di appuntamenti che la utilizzano.
+ * La mappatura viene rilasciata soltanto dal garbage collector e su alcuni sistemi (e.g. Windows) impedisce nel frattempo di sostituire
+ * o eliminare il file: gli snapshot di {@link ManifestAgende}, che vengono riscritti ed eliminati subito dopo essere stati letti,
+ * vengono quindi letti con {@link FileChannel#read} in un buffer allocato sullo heap.
+ * <p>
+ * Come per i file di testo non {@code .txt}, un'agenda letta da un file binario viene creata come <em>non salvata</em>,
+ * poiché {@link Agenda#salvaAgendaSuFile} salva le agende soltanto in formato testuale.
+ * <p>
+ * Il metodo {@link #main} converte i file passati come argomento dal formato testuale a quello binario e viceversa.
+ *
+ * @see Agenda
+ * @see AgendaColonnare
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class FormatoBinario {
+
+	/**
+	 * L'estensione dei file binari.
+	 */
+	public static final String ESTENSIONE = ".agb";
+
+	/**
+	 * La dimensione in byte dell'intestazione.
+	 */
+	public static final int DIMENSIONE_INTESTAZIONE = 12;
+
+	/**
+	 * La dimensione in byte di un record.
+	 */
+	public static final int DIMENSIONE_RECORD = 20;
+
+	private static final int NUMERO_MAGICO = 0x41474231;
+	private static final int VERSIONE = 1;
+	private static final long MINUTI_MINIMI = new DataOrario("01-01-0000", "00-00").getMinutiEpoch();
+	private static final long MINUTI_MASSIMI = new DataOrario("31-12-9999", "23-59").getMinutiEpoch();
+	private static final int DURATA_MASSIMA = 9999;
+
+	private interface Scrittura {
+		void scrivi(OutputStream out) throws IOException;
+	}
+
+	private FormatoBinario() { }
+
+	/**
+	 * Scrive l'agenda sul file binario passato come parametro. Come in {@link Agenda#salvaAgendaSuFile}, il file viene
+	 * scritto su un file temporaneo che lo sostituisce solo al termine della scrittura (vedi {@link Agenda.Durabilita}).
+	 *
+	 * @param agenda l'agenda da scrivere.
+	 * @param file il file di destinazione.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+
+	public static void scrivi(Agenda agenda, File file) throws IOException {
+		sostituisci(file, out -> {
+			synchronized(agenda) {
+				scriviBinario(agenda, out);
+			}
+		});
+	}
+
+	/*
+	 * Scrive l'agenda nel formato binario; il chiamante deve detenere il lock dell'agenda.
+	 */
+	static void scriviBinario(Agenda agenda, OutputStream out) throws IOException {
+		HashMap<String, Integer> posizioni = new HashMap<>();
+		ByteArrayOutputStream tabella = new ByteArrayOutputStream();
+		DataOutputStream stringhe = new DataOutputStream(tabella);
+		DataOutputStream record = new DataOutputStream(out);
+		record.writeInt(NUMERO_MAGICO);
+		record.writeInt(VERSIONE);
+		record.writeInt(agenda.getDimensioneAgenda());
+		for(Appuntamento appointment: agenda) {
+			record.writeLong(appointment.getDataTimeInizio().getMinutiEpoch());
+			record.writeInt(appointment.getMinutiDurata());
+			record.writeInt(posizione(appointment.getLuogo(), posizioni, stringhe));
+			record.writeInt(posizione(appointment.getPersona(), posizioni, stringhe));
+		}
+		tabella.writeTo(record);
+		record.flush();
+	}
+
+	private static int posizione(String valore, HashMap<String, Integer> posizioni, DataOutputStream stringhe) throws IOException {
+		Integer posizione = posizioni.get(valore);
+		if(posizione == null) {
+			posizione = stringhe.size();
+			byte[] byteValore = valore.getBytes(StandardCharsets.UTF_8);
+			stringhe.writeShort(byteValore.length);
+			stringhe.write(byteValore);
+			posizioni.put(valore, posizione);
+		}
+		return posizione;
+	}
+
+	/**
+	 * Legge un'agenda dal file binario passato come parametro. Il nome dell'agenda è il nome del file, senza estensione.
+	 *
+	 * @param file il file binario da leggere.
+	 * @return una nuova {@link Agenda}, <em>non salvata</em>, con gli appuntamenti letti dal file.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura, oppure il file non è nel formato binario
+	 * o è danneggiato.
+	 */
+
+	public static Agenda leggi(File file) throws IOException {
+		return leggi(file, mappa(file));
+	}
+
+	/*
+	 * Come leggi(File), ma verifica prima che il contenuto del file abbia il checksum atteso (vedi checksum(File)).
+	 */
+	static Agenda leggi(File file, long checksumAtteso) throws IOException {
+		ByteBuffer buffer = leggiContenuto(file);
+		if(checksum(buffer) != checksumAtteso) throw new IOException("File danneggiato (checksum errato): " + file.getName());
+		return leggi(file, buffer);
+	}
+
+	/*
+	 * Il checksum (CRC-32C) dell'intero contenuto del file.
+	 */
+	static long checksum(File file) throws IOException {
+		return checksum(leggiContenuto(file));
+	}
+
+	private static long checksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		return crc.getValue();
+	}
+
+	private static ByteBuffer mappa(File file) throws IOException {
+		try(FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(canale.size() > Integer.MAX_VALUE) throw new IOException("File troppo grande: " + file.getName());
+			return canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+		}
+	}
+
+	/*
+	 * Legge l'intero contenuto del file in un buffer sullo heap, senza mapparlo (vedi la descrizione della classe).
+	 */
+	private static ByteBuffer leggiContenuto(File file) throws IOException {
+		try(FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(canale.size() > Integer.MAX_VALUE) throw new IOException("File troppo grande: " + file.getName());
+			ByteBuffer buffer = ByteBuffer.allocate((int) canale.size());
+			while(buffer.hasRemaining()) {
+				if(canale.read(buffer) < 0) throw new IOException("File troppo corto: " + file.getName());
+			}
+			return buffer.flip();
+		}
+	}
+
+	private static Agenda leggi(File file, ByteBuffer buffer) throws IOException {
+		return leggi(Agenda.stripExtension(file.getName()), buffer, file.getName());
+	}
+
+	/*
+	 * Legge un'agenda nel formato binario dal buffer (e.g. una voce di un ArchivioAgende); l'origine compare nei messaggi di errore.
+	 */
+	static Agenda leggi(String nomeAgenda, ByteBuffer buffer, String origine) throws IOException {
+		Agenda agenda = new Agenda(nomeAgenda);
+		ArrayList<Appuntamento> letti = leggiRecord(buffer, origine);
+		for(boolean aggiunto: agenda.aggiungiAppuntamenti(letti)) {
+			if(!aggiunto) throw new IOException("File danneggiato (appuntamenti in conflitto): " + origine);
+		}
+		return agenda;
+	}
+
+	private static ArrayList<Appuntamento> leggiRecord(ByteBuffer buffer, String nomeFile) throws IOException {
+		if(buffer.limit() < DIMENSIONE_INTESTAZIONE || buffer.getInt(0) != NUMERO_MAGICO) throw new IOException("Formato non riconosciuto: " + nomeFile);
+		if(buffer.getInt(4) != VERSIONE) throw new IOException("Versione del formato non supportata (" + buffer.getInt(4) + "): " + nomeFile);
+		int numero = buffer.getInt(8);
+		long inizioTabella = DIMENSIONE_INTESTAZIONE + (long) numero * DIMENSIONE_RECORD;
+		if(numero < 0 || inizioTabella > buffer.limit()) throw new IOException("File danneggiato (numero di record errato): " + nomeFile);
+		ByteBuffer tabella = buffer.slice((int) inizioTabella, buffer.limit() - (int) inizioTabella);
+		HashMap<Integer, String> luoghi = new HashMap<>();
+		HashMap<Integer, String> persone = new HashMap<>();
+		ArrayList<Appuntamento> letti = new ArrayList<>(numero);
+		for(int i = 0, posizione = DIMENSIONE_INTESTAZIONE; i < numero; i++, posizione += DIMENSIONE_RECORD) {
+			long inizio = buffer.getLong(posizione);
+			int durata = buffer.getInt(posizione + 8);
+			if(inizio < MINUTI_MINIMI || inizio > MINUTI_MASSIMI || durata < 1 || durata > DURATA_MASSIMA) {
+				throw new IOException("File danneggiato (record " + (i + 1) + " non valido): " + nomeFile);
+			}
+			String luogo = stringa(tabella, buffer.getInt(posizione + 12), luoghi, Appuntamento.ControlloDati.TipoControllo.CONTROLLO_LUOGO, nomeFile);
+			String persona = stringa(tabella, buffer.getInt(posizione + 16), persone, Appuntamento.ControlloDati.TipoControllo.CONTROLLO_PERSONA, nomeFile);
+			letti.add(new Appuntamento(DataOrario.daMinutiEpoch(inizio), durata, luogo, persona));
+		}
+		return letti;
+	}
+
+	private static String stringa(ByteBuffer tabella, int posizione, HashMap<Integer, String> decodificate,
+			Appuntamento.ControlloDati.TipoControllo controllo, String nomeFile) throws IOException {
+		String valore = decodificate.get(posizione);
+		if(valore == null) {
+			if(posizione < 0 || posizione > tabella.limit() - 2) throw new IOException("File danneggiato (stringa fuori dalla tabella): " + nomeFile);
+			int lunghezza = Short.toUnsignedInt(tabella.getShort(posizione));
+			if(lunghezza > tabella.limit() - posizione - 2) throw new IOException("File danneggiato (stringa fuori dalla tabella): " + nomeFile);
+			byte[] byteValore = new byte[lunghezza];
+			tabella.get(posizione + 2, byteValore);
+			valore = new String(byteValore, StandardCharsets.UTF_8);
+			if(!Appuntamento.ControlloDati.controlloPer(controllo, valore)) throw new IOException("File danneggiato (stringa non valida \"" + valore + "\"): " + nomeFile);
+			decodificate.put(posizione, valore);
+		}
+		return valore;
+	}
+
+	/**
+	 * Converte un file di testo (anche compresso) nel formato binario, scrivendo il file {@code <nome>.agb} nella stessa cartella.
+	 * Il file di testo viene letto come in {@link Agenda#Agenda(File)}, per cui le righe malformate vengono ignorate e segnalate.
+	 *
+	 * @param testo il file di testo da convertire.
+	 * @return il file binario scritto.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura o la scrittura.
+	 */
+
+	public static File daTesto(File testo) throws IOException {
+		File binario = new File(testo.getAbsoluteFile().getParentFile(), Agenda.nomeDaFile(testo.getName()) + ESTENSIONE);
+		scrivi(new Agenda(testo), binario);
+		return binario;
+	}
+
+	/**
+	 * Converte un file binario nel formato testuale, scrivendo il file {@code <nome>.txt} nella stessa cartella,
+	 * nello stesso formato utilizzato da {@link Agenda#salvaAgendaSuFile}.
+	 *
+	 * @param binario il file binario da convertire.
+	 * @return il file di testo scritto.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura o la scrittura, oppure il file binario è danneggiato.
+	 */
+
+	public static File inTesto(File binario) throws IOException {
+		File testo = new File(binario.getAbsoluteFile().getParentFile(), Agenda.stripExtension(binario.getName()) + ".txt");
+		Agenda agenda = leggi(binario);
+		sostituisci(testo, out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out));
+			agenda.elencaAppuntamenti(writer);
+			writer.flush();
+		});
+		return testo;
+	}
+
+	private static void sostituisci(File destinazione, Scrittura scrittura) throws IOException {
+		GruppoScritture gruppo = new GruppoScritture(Agenda.getDurabilita());
+		Path temporaneo = gruppo.fileTemporaneo(destinazione.toPath());
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporaneo))) {
+			scrittura.scrivi(out);
+		} catch(IOException e) {
+			Files.deleteIfExists(temporaneo);
+			throw e;
+		}
+		gruppo.sostituisci(temporaneo, destinazione.toPath());
+		gruppo.completa();
+	}
+
+	/**
+	 * Converte i file passati come argomento: i file {@code .agb} vengono convertiti in file di testo,
+	 * tutti gli altri nel formato binario.
+	 *
+	 * @param args i percorsi dei file da convertire.
+	 */
+
+	public static void main(String[] args) {
+		if(args.length == 0) {
+			System.err.println("Uso: java codice.FormatoBinario <file.txt | file" + ESTENSIONE + "> ...");
+			System.exit(2);
+		}
+		boolean errori = false;
+		for(String percorso: args) {
+			File file = new File(percorso);
+			try {
+				File convertito = file.getName().endsWith(ESTENSIONE) ? inTesto(file) : daTesto(file);
+				System.out.println(file + " -> " + convertito);
+			} catch(IOException e) {
+				System.err.println("Impossibile convertire " + file + ": " + e.getMessage());
+				errori = true;
+			}
+		}
+		if(errori) System.exit(1);
+	}
+}
@@ -0,0 +1,204 @@
+package codice;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * La classe {@code GruppoScritture} coordina il salvataggio su file di una o più agende, secondo la
+ * {@link Agenda.Durabilita} scelta.
+ * <p>
+ * Un file non viene mai riscritto sul posto: il nuovo contenuto viene scritto su un file temporaneo nella stessa cartella,
+ * che viene poi spostato sopra il file originale con {@link StandardCopyOption#ATOMIC_MOVE}. In caso di interruzione,
+ * il file originale resta quindi intatto oppure è già stato sostituito interamente.
+ * <p>
+ * Con {@link Agenda.Durabilita#PER_FILE} ogni scrittura viene completata (e sincronizzata su disco) appena registrata;
+ * con {@link Agenda.Durabilita#PER_GRUPPO} le sincronizzazioni e gli spostamenti vengono invece rimandati a {@link #completa},
+ * in modo da sincronizzare ogni cartella una sola volta per l'intero gruppo.
+ * <p>
+ * Le scritture possono essere registrate da più thread contemporaneamente (vedi {@link ContenitoreAgende#salvaContenitoreSuFile(int)}).
+ *
+ * @see Agenda
+ * @see ContenitoreAgende
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+class GruppoScritture {
+
+	private Agenda.Durabilita durabilita;
+	private ArrayList<Path> daSincronizzare;
+	private ArrayList<Path> temporanei;
+	private ArrayList<Path> destinazioni;
+	private LinkedHashSet<Path> cartelle;
+	private ArrayList<Azione> completamenti;
+
+	/**
+	 * Un'azione da eseguire al completamento delle scritture.
+	 */
+
+	interface Azione {
+		void esegui() throws IOException;
+	}
+
+	GruppoScritture(Agenda.Durabilita durabilita) {
+		this.durabilita = durabilita;
+		daSincronizzare = new ArrayList<>();
+		temporanei = new ArrayList<>();
+		destinazioni = new ArrayList<>();
+		cartelle = new LinkedHashSet<>();
+		completamenti = new ArrayList<>();
+	}
+
+	/**
+	 * Ritorna la politica di sincronizzazione del gruppo.
+	 *
+	 * @return la {@link Agenda.Durabilita} del gruppo.
+	 */
+
+	Agenda.Durabilita getDurabilita() {
+		return durabilita;
+	}
+
+	private boolean isRimandato() {
+		return durabilita == Agenda.Durabilita.PER_GRUPPO;
+	}
+
+	/**
+	 * Crea un file temporaneo vuoto, nella stessa cartella del file di destinazione, su cui scriverne il nuovo contenuto.
+	 *
+	 * @param destinazione il file che verrà sostituito.
+	 * @return il percorso del file temporaneo.
+	 * @throws IOException se non è possibile creare il file.
+	 */
+
+	synchronized Path fileTemporaneo(Path destinazione) throws IOException {
+		Path cartella = destinazione.toAbsolutePath().getParent();
+		return Files.createTempFile(cartella, "." + destinazione.getFileName(), ".tmp");
+	}
+
+	/**
+	 * Registra la sostituzione del file di destinazione con il file temporaneo, già scritto e chiuso.
+	 *
+	 * @param temporaneo il file temporaneo creato con {@link #fileTemporaneo}.
+	 * @param destinazione il file da sostituire.
+	 * @throws IOException se si verifica un errore di I/O durante la sostituzione.
+	 */
+
+	void sostituisci(Path temporaneo, Path destinazione) throws IOException {
+		synchronized(this) {
+			daSincronizzare.add(temporaneo);
+			temporanei.add(temporaneo);
+			destinazioni.add(destinazione);
+			cartelle.add(destinazione.toAbsolutePath().getParent());
+		}
+		if(!isRimandato()) completa();
+	}
+
+	/**
+	 * Registra un file modificato sul posto (e.g. un journal a cui sono stati accodati dei record),
+	 * che deve solo essere sincronizzato su disco.
+	 *
+	 * @param file il file modificato.
+	 * @param creato {@code true} se il file è stato appena creato, per cui va sincronizzata anche la sua cartella.
+	 * @throws IOException se si verifica un errore di I/O durante la sincronizzazione.
+	 */
+
+	void accodato(Path file, boolean creato) throws IOException {
+		synchronized(this) {
+			daSincronizzare.add(file);
+			if(creato) cartelle.add(file.toAbsolutePath().getParent());
+		}
+		if(!isRimandato()) completa();
+	}
+
+	/**
+	 * Registra un'azione da eseguire una volta completate le scritture registrate finora.
+	 *
+	 * @param azione l'azione da eseguire.
+	 * @throws IOException se si verifica un errore di I/O durante il completamento.
+	 */
+
+	void dopo(Azione azione) throws IOException {
+		synchronized(this) {
+			completamenti.add(azione);
+		}
+		if(!isRimandato()) completa();
+	}
+
+	/**
+	 * Completa le scritture registrate: sincronizza i file su disco, sposta i file temporanei sulle rispettive
+	 * destinazioni, sincronizza le cartelle coinvolte ed esegue le azioni registrate con {@link #dopo}.
+	 * Le azioni vengono eseguite senza detenere il lock del gruppo, poiché acquisiscono quello delle rispettive agende.
+	 *
+	 * @throws IOException se si verifica un errore di I/O; in tal caso i file temporanei non ancora spostati vengono eliminati.
+	 */
+
+	void completa() throws IOException {
+		ArrayList<Azione> azioni;
+		synchronized(this) {
+			try {
+				if(durabilita != Agenda.Durabilita.NESSUNA) {
+					for(Path file: daSincronizzare) sincronizza(file, false);
+				}
+				for(int i = 0; i < temporanei.size(); i++) sposta(temporanei.get(i), destinazioni.get(i));
+				if(durabilita != Agenda.Durabilita.NESSUNA) {
+					for(Path cartella: cartelle) sincronizza(cartella, true);
+				}
+			} catch(IOException e) {
+				annulla();
+				throw e;
+			}
+			azioni = new ArrayList<>(completamenti);
+			svuota();
+		}
+		for(Azione azione: azioni) azione.esegui();
+	}
+
+	/**
+	 * Elimina i file temporanei non ancora spostati e scarta le scritture registrate.
+	 */
+
+	synchronized void annulla() {
+		for(Path temporaneo: temporanei) {
+			try {
+				Files.deleteIfExists(temporaneo);
+			} catch(IOException e) { }
+		}
+		svuota();
+	}
+
+	private void svuota() {
+		daSincronizzare.clear();
+		temporanei.clear();
+		destinazioni.clear();
+		cartelle.clear();
+		completamenti.clear();
+	}
+
+	private static void sposta(Path temporaneo, Path destinazione) throws IOException {
+		try {
+			Files.move(temporaneo, destinazione, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temporaneo, destinazione, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/*
+	 * Su alcuni sistemi (e.g. Windows) non è possibile aprire una cartella: la sua sincronizzazione viene quindi ignorata.
+	 */
+	private static void sincronizza(Path percorso, boolean cartella) throws IOException {
+		try(FileChannel canale = FileChannel.open(percorso, cartella ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+			canale.force(true);
+		} catch(IOException e) {
+			if(!cartella) throw e;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package codice;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * La classe {@code JournalAgenda} gestisce il <em>journal</em> di un'{@link Agenda} salvata su file di testo,
+ * ovvero un file {@code <nome>.journal}, posto accanto al file {@code <nome>.txt} (detto <em>file base</em>),
+ * in cui vengono accodate le modifiche effettuate sull'agenda dall'ultimo salvataggio completo.
+ * <p>
+ * Ogni riga del journal è un <em>record</em> che descrive una singola operazione:<ul>
+ * <li> {@code +|dd-MM-uuuu|HH-mm|Nmin|luogo|persona} aggiunta di un appuntamento;
+ * <li> {@code -|dd-MM-uuuu|HH-mm} rimozione dell'appuntamento che inizia nella data e nell'orario indicati;
+ * <li> {@code ~|dd-MM-uuuu|HH-mm|dd-MM-uuuu|HH-mm|Nmin|luogo|persona} sostituzione dell'appuntamento che inizia nella data e
+ * nell'orario indicati con quello descritto dai campi successivi;
+ * <li> {@code *} rimozione di tutti gli appuntamenti.</ul>
+ * La prima riga del journal ({@code #|dimensione|ultimaModifica}) descrive il file base a cui le modifiche si riferiscono: se il
+ * file base è stato riscritto in seguito, il journal non gli appartiene più e viene ignorato.
+ * <p>
+ * Il journal viene riprodotto sull'agenda appena caricata dal file base tramite {@link #riproduci}. La riproduzione si interrompe
+ * al primo record non valido (ad esempio l'ultima riga, se la scrittura è stata interrotta), mantenendo le modifiche precedenti.
+ *
+ * @see Agenda
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+class JournalAgenda {
+
+	/**
+	 * L'estensione dei file di journal.
+	 */
+	static final String ESTENSIONE = ".journal";
+	private static final Pattern SEPARATORE = Pattern.compile("(min)?\\|");
+
+	private File base;
+	private File file;
+	private int recordSalvati;
+	private ArrayList<String> pendenti;
+
+	/**
+	 * Crea il journal relativo al file base passato come parametro, senza leggerlo.
+	 *
+	 * @param base il file di testo su cui è salvata l'agenda.
+	 */
+
+	JournalAgenda(File base) {
+		this.base = base.getAbsoluteFile();
+		String nome = base.getName();
+		this.file = new File(this.base.getParentFile(), (nome.lastIndexOf('.') > 0 ? nome.substring(0, nome.lastIndexOf('.')) : nome) + ESTENSIONE);
+		this.pendenti = new ArrayList<>();
+	}
+
+	/**
+	 * Ritorna {@code true} se il journal si riferisce al file passato come parametro.
+	 *
+	 * @param altro il file da confrontare con il file base.
+	 * @return {@code true} se il file coincide con il file base, {@code false} altrimenti.
+	 */
+
+	boolean isBase(File altro) {
+		return base.equals(altro.getAbsoluteFile());
+	}
+
+	/**
+	 * Ritorna il numero di record scritti nel journal e di quelli ancora da scrivere.
+	 *
+	 * @return il numero totale di record.
+	 */
+
+	int getNumeroRecord() {
+		return recordSalvati + pendenti.size();
+	}
+
+	private static String campi(Appuntamento appointment) {
+		String riga = appointment.toString();
+		return riga.substring(0, riga.length() - 1);
+	}
+
+	void registraAggiunta(Appuntamento appointment) {
+		pendenti.add("+|" + campi(appointment));
+	}
+
+	void registraRimozione(Appuntamento appointment) {
+		pendenti.add("-|" + appointment.getData() + "|" + appointment.getOrario());
+	}
+
+	void registraModifica(Appuntamento vecchio, Appuntamento nuovo) {
+		pendenti.add("~|" + vecchio.getData() + "|" + vecchio.getOrario() + "|" + campi(nuovo));
+	}
+
+	void registraSvuotamento() {
+		pendenti.add("*");
+	}
+
+	private String intestazione() {
+		return "#|" + base.length() + "|" + base.lastModified();
+	}
+
+	/**
+	 * Riproduce sull'agenda i record del journal, se questo esiste e si riferisce al file base.
+	 * I record riprodotti non vengono registrati di nuovo.
+	 *
+	 * @param agenda l'agenda appena caricata dal file base.
+	 * @return {@code true} se tutti i record sono stati riprodotti, {@code false} se la riproduzione è stata interrotta
+	 * da un record non valido oppure il journal si riferisce ad un altro file base.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura.
+	 */
+
+	boolean riproduci(Agenda agenda) throws IOException {
+		recordSalvati = 0;
+		if(!file.exists()) return true;
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			if(!intestazione().equals(reader.readLine())) return false;
+			String record;
+			while((record = reader.readLine()) != null) {
+				if(!applica(agenda, record)) return false;
+				recordSalvati++;
+			}
+		}
+		return true;
+	}
+
+	private static boolean applica(Agenda agenda, String record) {
+		if(record.equals("*")) {
+			agenda.rimuoviTutto();
+			return true;
+		}
+		if(record.length() < 2 || record.charAt(1) != '|') return false;
+		String[] campi = SEPARATORE.split(record.substring(2));
+		switch(record.charAt(0)) {
+			case '+' -> {
+				return campi.length == 5 && agenda.aggiungiAppuntamento(campi[0], campi[1], campi[2], campi[3], campi[4]);
+			}
+			case '-' -> {
+				return campi.length == 2 && agenda.rimuoviPerDataOrario(campi[0], campi[1]);
+			}
+			case '~' -> {
+				if(campi.length != 7) return false;
+				Appuntamento.Risultato risultato = Appuntamento.crea(campi[2], campi[3], campi[4], campi[5], campi[6]);
+				return risultato.isValido() && agenda.sostituisci(campi[0], campi[1], risultato.getAppuntamento());
+			}
+			default -> { return false; }
+		}
+	}
+
+	/**
+	 * Accoda al journal i record registrati dall'ultima scrittura. Se il journal non esiste, viene creato
+	 * con l'intestazione relativa al file base attuale. Il journal viene poi registrato nel gruppo di scritture,
+	 * che si occupa di sincronizzarlo su disco.
+	 *
+	 * @param gruppo il gruppo di scritture di cui fa parte il salvataggio.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+
+	void scriviPendenti(GruppoScritture gruppo) throws IOException {
+		if(pendenti.isEmpty()) return;
+		boolean nuovo = !file.exists();
+		try(BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+			if(nuovo) writer.append(intestazione()).append('\n');
+			for(String record: pendenti) writer.append(record).append('\n');
+		}
+		recordSalvati = nuovo ? pendenti.size() : recordSalvati + pendenti.size();
+		pendenti.clear();
+		gruppo.accodato(file.toPath(), nuovo);
+	}
+
+	/**
+	 * Elimina il journal e i record da scrivere: va chiamato dopo aver sostituito interamente il file base.
+	 *
+	 * @throws IOException se non è possibile eliminare il journal.
+	 */
+
+	void azzera() throws IOException {
+		if(file.exists() && !file.delete()) throw new IOException("Impossibile eliminare il journal " + file.getName());
+		recordSalvati = 0;
+		pendenti.clear();
+	}
+}
@@ -0,0 +1,183 @@
+package codice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * La classe {@code LettoreAgenda} legge, una riga alla volta, un file di testo nel formato
+ * delle agende {@code dd-MM-uuuu|HH-mm|Nmin|luogo|persona}, scandendo direttamente i caratteri.
+ * <p>
+ * La suddivisione in campi è equivalente a {@code riga.split("((min)?\\|)")}, senza però compilare alcuna regex:<ul>
+ * <li> ogni carattere {@code '|'} separa due campi e, se il campo che lo precede termina con {@code "min"}, tale suffisso viene rimosso;
+ * <li> i campi vuoti alla fine della riga vengono ignorati.</ul>
+ * Le righe terminano, come per {@link java.io.BufferedReader#readLine}, con {@code '\n'}, {@code '\r'} oppure {@code "\r\n"}.
+ * <p>
+ * Il lettore usa un buffer di dimensione fissa, per cui la memoria occupata non dipende dalla dimensione del file.
+ * Le righe più lunghe di {@link #LUNGHEZZA_MASSIMA} caratteri (che non possono descrivere un appuntamento valido)
+ * vengono troncate e segnalate tramite {@link #isTroncata}.
+ *
+ * @see Agenda
+ * @see ReportCaricamento
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+class LettoreAgenda implements Closeable {
+
+	/**
+	 * Il numero massimo di caratteri memorizzati per ogni riga.
+	 */
+	static final int LUNGHEZZA_MASSIMA = 4096;
+	private static final int CAMPI = 5;
+
+	private Reader reader;
+	private char[] buffer;
+	private int posizione;
+	private int limite;
+	private boolean saltaLineFeed;
+
+	private char[] riga;
+	private int lunghezza;
+	private boolean troncata;
+	private long numeroRiga;
+
+	private int[] inizioCampo;
+	private int[] fineCampo;
+	private int numeroCampi;
+	private int ultimoCampoPieno;
+
+	LettoreAgenda(Reader reader) {
+		this.reader = reader;
+		buffer = new char[1 << 16];
+		riga = new char[128];
+		inizioCampo = new int[CAMPI];
+		fineCampo = new int[CAMPI];
+	}
+
+	private boolean riempiBuffer() throws IOException {
+		limite = reader.read(buffer);
+		posizione = 0;
+		return limite > 0;
+	}
+
+	private void accoda(char c) {
+		if(lunghezza == LUNGHEZZA_MASSIMA) {
+			troncata = true;
+			return;
+		}
+		if(lunghezza == riga.length) riga = Arrays.copyOf(riga, Math.min(riga.length * 2, LUNGHEZZA_MASSIMA));
+		riga[lunghezza++] = c;
+	}
+
+	/**
+	 * Legge la riga successiva e la suddivide in campi.
+	 *
+	 * @return {@code true} se è stata letta una riga, {@code false} se il file è terminato.
+	 * @throws IOException se si verifica un errore di I/O durante la lettura.
+	 */
+
+	boolean prossimaRiga() throws IOException {
+		lunghezza = 0;
+		troncata = false;
+		boolean letta = false;
+		while(true) {
+			if(posizione >= limite && !riempiBuffer()) break;
+			char c = buffer[posizione++];
+			if(saltaLineFeed) {
+				saltaLineFeed = false;
+				if(c == '\n') continue;
+			}
+			letta = true;
+			if(c == '\n') break;
+			if(c == '\r') {
+				saltaLineFeed = true;
+				break;
+			}
+			accoda(c);
+		}
+		if(!letta) return false;
+		numeroRiga++;
+		suddividi();
+		return true;
+	}
+
+	private void suddividi() {
+		numeroCampi = 0;
+		ultimoCampoPieno = -1;
+		int inizio = 0;
+		for(int i = 0; i <= lunghezza; i++) {
+			if(i < lunghezza && riga[i] != '|') continue;
+			int fine = i;
+			if(i < lunghezza && fine - inizio >= 3 && riga[fine - 3] == 'm' && riga[fine - 2] == 'i' && riga[fine - 1] == 'n') fine -= 3;
+			if(numeroCampi < CAMPI) {
+				inizioCampo[numeroCampi] = inizio;
+				fineCampo[numeroCampi] = fine;
+			}
+			if(fine > inizio) ultimoCampoPieno = numeroCampi;
+			numeroCampi++;
+			inizio = i + 1;
+		}
+	}
+
+	/**
+	 * Ritorna il numero della riga appena letta, a partire da {@code 1}.
+	 *
+	 * @return il numero della riga corrente.
+	 */
+
+	long getNumeroRiga() {
+		return numeroRiga;
+	}
+
+	/**
+	 * Ritorna {@code true} se la riga appena letta superava {@link #LUNGHEZZA_MASSIMA} caratteri ed è stata troncata.
+	 *
+	 * @return {@code true} se la riga è stata troncata, {@code false} altrimenti.
+	 */
+
+	boolean isTroncata() {
+		return troncata;
+	}
+
+	/**
+	 * Ritorna {@code true} se la riga appena letta è formata esattamente da cinque campi
+	 * (come un array di lunghezza {@code 5} ritornato da {@code split}).
+	 *
+	 * @return {@code true} se la riga contiene cinque campi, {@code false} altrimenti.
+	 */
+
+	boolean haCinqueCampi() {
+		return !troncata && ultimoCampoPieno == CAMPI - 1;
+	}
+
+	/**
+	 * Ritorna i cinque campi della riga appena letta, nell'ordine data, orario, durata, luogo e persona.
+	 * Deve essere chiamato solo se {@link #haCinqueCampi} è {@code true}.
+	 *
+	 * @return un array di cinque {@code String}.
+	 */
+
+	String[] getCampi() {
+		String[] campi = new String[CAMPI];
+		for(int i = 0; i < CAMPI; i++) campi[i] = new String(riga, inizioCampo[i], fineCampo[i] - inizioCampo[i]);
+		return campi;
+	}
+
+	/**
+	 * Ritorna il contenuto della riga appena letta (eventualmente troncato), senza il terminatore di riga.
+	 *
+	 * @return la riga corrente di tipo {@code String}.
+	 */
+
+	String getRiga() {
+		return new String(riga, 0, lunghezza);
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,211 @@
+package codice;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * La classe {@code ManifestAgende} gestisce il <em>manifest</em> di una cartella di agende, ovvero il file {@value #NOME_FILE}
+ * che descrive, per ogni file di testo {@code <nome>.txt} della cartella, lo stato in cui si trovava quando ne è stato creato
+ * lo <em>snapshot</em>: una copia già interpretata dell'agenda, nel formato binario (vedi {@link FormatoBinario}),
+ * salvata nella sottocartella {@value #CARTELLA_SNAPSHOT}.
+ * <p>
+ * Ogni riga del manifest ha il formato {@code dimensione|ultimaModifica|appuntamenti|checksum|nomeFile}: la dimensione e la data
+ * di ultima modifica del file di testo, il numero di appuntamenti dell'agenda e il checksum (CRC-32C) dello snapshot.
+ * <p>
+ * Se il file di testo non è cambiato (stessa dimensione e stessa data di ultima modifica) e non esiste il relativo journal,
+ * l'agenda può essere caricata direttamente dallo snapshot (vedi {@link #caricaSnapshot}), evitando di interpretare e validare
+ * nuovamente ogni riga del file. In tutti gli altri casi (manifest assente o danneggiato, file cambiato, snapshot danneggiato)
+ * l'agenda va caricata dal file di testo, come in {@link Agenda#Agenda(File)}.
+ *
+ * @see ContenitoreAgende#aggiornaManifest
+ * @see FormatoBinario
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+class ManifestAgende {
+
+	/**
+	 * Il nome del file di manifest.
+	 */
+	static final String NOME_FILE = "agende.manifest";
+
+	/**
+	 * Il nome della sottocartella degli snapshot.
+	 */
+	static final String CARTELLA_SNAPSHOT = ".snapshot";
+
+	private File cartella;
+	private TreeMap<String, Voce> voci;
+
+	/*
+	 * Lo stato di un file di testo al momento della creazione del suo snapshot.
+	 */
+	private static class Voce {
+		private long dimensione;
+		private long ultimaModifica;
+		private int appuntamenti;
+		private long checksum;
+
+		private Voce(long dimensione, long ultimaModifica, int appuntamenti, long checksum) {
+			this.dimensione = dimensione;
+			this.ultimaModifica = ultimaModifica;
+			this.appuntamenti = appuntamenti;
+			this.checksum = checksum;
+		}
+
+		private boolean descrive(File file) {
+			return file.length() == dimensione && file.lastModified() == ultimaModifica;
+		}
+	}
+
+	private ManifestAgende(File cartella) {
+		this.cartella = cartella.getAbsoluteFile();
+		this.voci = new TreeMap<>();
+	}
+
+	/**
+	 * Legge il manifest della cartella passata come parametro. Se il manifest non esiste, non è leggibile oppure è danneggiato,
+	 * ritorna un manifest vuoto: in tal caso tutte le agende verranno caricate dai file di testo.
+	 *
+	 * @param cartella la cartella delle agende.
+	 * @return il manifest della cartella.
+	 */
+
+	static ManifestAgende leggi(File cartella) {
+		ManifestAgende manifest = new ManifestAgende(cartella);
+		File file = new File(manifest.cartella, NOME_FILE);
+		if(!file.exists()) return manifest;
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String riga;
+			while((riga = reader.readLine()) != null) {
+				String[] campi = riga.split("\\|", 5);
+				if(campi.length != 5) throw new NumberFormatException(riga);
+				manifest.voci.put(campi[4], new Voce(Long.parseLong(campi[0]), Long.parseLong(campi[1]), Integer.parseInt(campi[2]), Long.parseLong(campi[3])));
+			}
+		} catch(IOException | NumberFormatException e) {
+			manifest.voci.clear();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Ritorna il numero di file descritti dal manifest.
+	 *
+	 * @return il numero di voci del manifest.
+	 */
+
+	int getDimensione() {
+		return voci.size();
+	}
+
+	private File snapshot(String nomeFile) {
+		return new File(new File(cartella, CARTELLA_SNAPSHOT), Agenda.stripExtension(nomeFile) + FormatoBinario.ESTENSIONE);
+	}
+
+	private static File journal(File file) {
+		return new File(file.getAbsoluteFile().getParentFile(), Agenda.stripExtension(file.getName()) + JournalAgenda.ESTENSIONE);
+	}
+
+	/**
+	 * Carica l'agenda del file di testo passato come parametro dal relativo snapshot, se questo è ancora valido.
+	 * L'agenda caricata risulta <em>salvata</em> sul file di testo, come se fosse stata letta da quest'ultimo.
+	 *
+	 * @param file il file di testo dell'agenda.
+	 * @return l'agenda letta dallo snapshot, oppure {@code null} se l'agenda va caricata dal file di testo.
+	 */
+
+	Agenda caricaSnapshot(File file) {
+		Voce voce = voci.get(file.getName());
+		if(voce == null || !voce.descrive(file) || journal(file).exists()) return null;
+		try {
+			Agenda agenda = FormatoBinario.leggi(snapshot(file.getName()), voce.checksum);
+			if(agenda.getDimensioneAgenda() != voce.appuntamenti) return null;
+			agenda.impostaCaricataDa(file);
+			return agenda;
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Aggiorna lo snapshot dell'agenda passata come parametro, salvata sul file di testo {@code <nome>.txt} della cartella,
+	 * se il manifest non lo descrive già. L'agenda viene ignorata se non è <em>salvata</em>, se il file di testo non esiste,
+	 * se esiste il relativo journal, se l'agenda è salvata per mese o in un file compresso (il contenuto del solo file 
+	 * di testo sarebbe diverso da quello dell'agenda) oppure se il file di testo è stato modificato dopo che l'agenda
+	 * lo ha letto o scritto l'ultima volta (lo snapshot associerebbe il contenuto precedente al file modificato).
+	 *
+	 * @param agenda l'agenda di cui aggiornare lo snapshot.
+	 * @return {@code true} se lo snapshot è stato scritto, {@code false} se era già aggiornato oppure l'agenda è stata ignorata.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura dello snapshot.
+	 */
+
+	boolean aggiorna(Agenda agenda) throws IOException {
+		synchronized(agenda) {
+			File file = new File(cartella, agenda.getNomeAgenda() + ".txt");
+			if(!agenda.isSaved() || !file.exists() || journal(file).exists() || !agenda.isDescrittaDaTesto()) return false;
+			if(!Agenda.firma(file).equals(agenda.getFirmaFile())) return false;
+			Voce voce = voci.get(file.getName());
+			if(voce != null && voce.descrive(file) && snapshot(file.getName()).exists()) return false;
+			long dimensione = file.length(), ultimaModifica = file.lastModified();
+			File snapshot = snapshot(file.getName());
+			Files.createDirectories(snapshot.toPath().getParent());
+			FormatoBinario.scrivi(agenda, snapshot);
+			voci.put(file.getName(), new Voce(dimensione, ultimaModifica, agenda.getDimensioneAgenda(), FormatoBinario.checksum(snapshot)));
+			return true;
+		}
+	}
+
+	/**
+	 * Rimuove dal manifest, eliminandone lo snapshot, i file di testo che non esistono più.
+	 *
+	 * @return il numero di voci rimosse.
+	 */
+
+	int rimuoviMancanti() {
+		int rimosse = 0;
+		for(Iterator<Map.Entry<String, Voce>> iteratore = voci.entrySet().iterator(); iteratore.hasNext(); ) {
+			String nomeFile = iteratore.next().getKey();
+			if(new File(cartella, nomeFile).exists()) continue;
+			snapshot(nomeFile).delete();
+			iteratore.remove();
+			rimosse++;
+		}
+		return rimosse;
+	}
+
+	/**
+	 * Scrive il manifest nella cartella, sostituendo quello precedente come in {@link Agenda#salvaAgendaSuFile}.
+	 *
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+
+	void scrivi() throws IOException {
+		GruppoScritture gruppo = new GruppoScritture(Agenda.getDurabilita());
+		Path destinazione = new File(cartella, NOME_FILE).toPath();
+		Path temporaneo = gruppo.fileTemporaneo(destinazione);
+		try(BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temporaneo)))) {
+			for(Map.Entry<String, Voce> voce: voci.entrySet()) {
+				Voce stato = voce.getValue();
+				writer.append(Long.toString(stato.dimensione)).append('|').append(Long.toString(stato.ultimaModifica)).append('|')
+					.append(Integer.toString(stato.appuntamenti)).append('|').append(Long.toString(stato.checksum)).append('|')
+					.append(voce.getKey()).append('\n');
+			}
+		} catch(IOException e) {
+			Files.deleteIfExists(temporaneo);
+			throw e;
+		}
+		gruppo.sostituisci(temporaneo, destinazione);
+		gruppo.completa();
+	}
+}
@@ -0,0 +1,105 @@
+package codice;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.TreeMap;
+
+import jbook.util.DataOrario;
+
+/**
+ * La classe {@code PartizioniAgenda} descrive la disposizione su file di un'agenda salvata <em>per mese</em>
+ * (vedi {@link Agenda#setSalvataggioPerMese}): una cartella {@code <nome>}{@value #ESTENSIONE}, all'interno della cartella
+ * delle agende, che contiene un file di testo {@code uuuu-MM.txt} (un <em>segmento</em>) per ogni mese in cui inizia almeno
+ * un appuntamento dell'agenda.
+ * <p>
+ * Ogni segmento contiene gli appuntamenti che iniziano nel relativo mese, nello stesso formato del file di testo di un'agenda:
+ * il salvataggio di un'agenda modificata riscrive soltanto i segmenti dei mesi modificati, e la lettura di un periodo
+ * (vedi {@link Agenda#leggiPeriodo}) legge soltanto i segmenti dei mesi compresi nel periodo.
+ *
+ * @see Agenda
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+final class PartizioniAgenda {
+
+	/**
+	 * L'estensione della cartella di un'agenda salvata per mese.
+	 */
+	static final String ESTENSIONE = ".mesi";
+
+	private static final DateTimeFormatter FORMATO_SEGMENTO = DateTimeFormatter.ofPattern("uuuu-MM");
+
+	private PartizioniAgenda() {
+	}
+
+	/**
+	 * Ritorna la cartella dell'agenda col nome passato come parametro, all'interno della cartella delle agende.
+	 *
+	 * @param cartellaAgende la cartella delle agende.
+	 * @param nomeAgenda il nome dell'agenda.
+	 * @return la cartella dei segmenti dell'agenda.
+	 */
+
+	static File cartella(String cartellaAgende, String nomeAgenda) {
+		return new File(cartellaAgende, nomeAgenda + ESTENSIONE).getAbsoluteFile();
+	}
+
+	/**
+	 * Ritorna {@code true} se il file passato come parametro è la cartella di un'agenda salvata per mese.
+	 *
+	 * @param file il file da verificare.
+	 * @return {@code true} se il file è una cartella con estensione {@value #ESTENSIONE}, {@code false} altrimenti.
+	 */
+
+	static boolean isCartella(File file) {
+		return file.isDirectory() && file.getName().endsWith(ESTENSIONE);
+	}
+
+	/**
+	 * Ritorna il segmento del mese passato come parametro.
+	 *
+	 * @param cartella la cartella dell'agenda.
+	 * @param mese il mese del segmento.
+	 * @return il file del segmento.
+	 */
+
+	static File segmento(File cartella, YearMonth mese) {
+		return new File(cartella, mese.format(FORMATO_SEGMENTO) + ".txt");
+	}
+
+	/**
+	 * Ritorna l'inizio del mese passato come parametro, ovvero la mezzanotte del primo giorno.
+	 *
+	 * @param mese il mese.
+	 * @return il {@link DataOrario} di inizio del mese.
+	 */
+
+	static DataOrario inizio(YearMonth mese) {
+		return DataOrario.daMinutiEpoch(mese.atDay(1).toEpochDay() * DataOrario.MINUTI_GIORNO);
+	}
+
+	/**
+	 * Ritorna i segmenti presenti nella cartella, ordinati per mese. I file che non sono segmenti vengono ignorati.
+	 *
+	 * @param cartella la cartella dell'agenda.
+	 * @return i segmenti della cartella, indicizzati per mese.
+	 * @throws IOException se non è possibile leggere la cartella.
+	 */
+
+	static TreeMap<YearMonth, File> segmenti(File cartella) throws IOException {
+		File[] listaFile = cartella.listFiles( file -> !file.isDirectory() && file.getName().endsWith(".txt"));
+		if(listaFile == null) throw new IOException("Impossibile leggere la cartella " + cartella.getName());
+		TreeMap<YearMonth, File> segmenti = new TreeMap<>();
+		for(File file: listaFile) {
+			try {
+				segmenti.put(YearMonth.parse(Agenda.stripExtension(file.getName()), FORMATO_SEGMENTO), file);
+			} catch(DateTimeParseException e) { }
+		}
+		return segmenti;
+	}
+}
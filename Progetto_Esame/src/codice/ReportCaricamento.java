@@ -0,0 +1,208 @@
+package codice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * La classe {@code ReportCaricamento} descrive l'esito del caricamento di un'{@link Agenda} da file
+ * (vedi {@link Agenda#Agenda(java.io.File, ReportCaricamento)}).
+ * <p>
+ * Per ogni riga che non è stato possibile aggiungere all'agenda viene registrato un {@link Errore}, contenente il numero
+ * della riga, il suo contenuto e il motivo per cui è stata scartata. Per non occupare memoria in proporzione alla dimensione
+ * di file molto danneggiati, il report conserva al più {@link #getCapienza} errori, ovvero quelli relativi alle prime righe
+ * del file; il numero totale di righe scartate è comunque disponibile tramite {@link #getRigheScartate}.
+ * <p>
+ * Un {@code ReportCaricamento} viene compilato durante il caricamento, dopodiché può essere consultato liberamente.
+ *
+ * @see Agenda
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class ReportCaricamento {
+
+	/**
+	 * Il numero di errori conservati di default.
+	 */
+	public static final int CAPIENZA_DEFAULT = 100;
+
+	private int capienza;
+	private ArrayList<Errore> errori;
+	private long righeLette;
+	private long righeScartate;
+
+	/**
+	 * La classe {@code Errore} descrive una singola riga scartata durante il caricamento.
+	 * <p><strong>Questa classe è immutabile</strong>.
+	 */
+
+	public static class Errore {
+		private long riga;
+		private String testo;
+		private String motivo;
+
+		private Errore(long riga, String testo, String motivo) {
+			this.riga = riga;
+			this.testo = testo;
+			this.motivo = motivo;
+		}
+
+		/**
+		 * Ritorna il numero della riga scartata, a partire da {@code 1}.
+		 *
+		 * @return il numero della riga.
+		 */
+
+		public long getRiga() {
+			return riga;
+		}
+
+		/**
+		 * Ritorna il contenuto della riga scartata. Per le righe scartate perché in conflitto con altri appuntamenti,
+		 * il contenuto è quello dell'appuntamento letto (vedi {@link Appuntamento#toString}), senza il carattere di fine riga.
+		 *
+		 * @return il contenuto della riga di tipo {@code String}.
+		 */
+
+		public String getTesto() {
+			return testo;
+		}
+
+		/**
+		 * Ritorna il motivo per cui la riga è stata scartata (e.g. <em>"Data non valida!"</em>).
+		 *
+		 * @return il motivo di tipo {@code String}.
+		 */
+
+		public String getMotivo() {
+			return motivo;
+		}
+
+		/**
+		 * Ritorna una rappresentazione in stringa dell'errore, nel formato {@code Riga N: contenuto (motivo)}.
+		 *
+		 * @return una rappresentazione dell'errore di tipo {@code String}.
+		 */
+
+		@Override
+		public String toString() {
+			return "Riga " + riga + ": " + testo + " (" + motivo + ")";
+		}
+	}
+
+	/**
+	 * Crea un nuovo {@code ReportCaricamento} vuoto, che conserva al più {@code capienza} errori.
+	 *
+	 * @param capienza il numero massimo di errori conservati.
+	 * @throws IllegalArgumentException se la capienza è negativa.
+	 */
+
+	public ReportCaricamento(int capienza) throws IllegalArgumentException {
+		if(capienza < 0) throw new IllegalArgumentException("Capienza negativa: " + capienza);
+		this.capienza = capienza;
+		this.errori = new ArrayList<>(Math.min(capienza, CAPIENZA_DEFAULT));
+	}
+
+	/**
+	 * Crea un nuovo {@code ReportCaricamento} vuoto, che conserva al più {@link #CAPIENZA_DEFAULT} errori.
+	 */
+
+	public ReportCaricamento() {
+		this(CAPIENZA_DEFAULT);
+	}
+
+	void rigaLetta() {
+		righeLette++;
+	}
+
+	/*
+	 * Gli errori possono arrivare non ordinati (le righe in conflitto vengono individuate solo
+	 * dopo aver letto un intero blocco): vengono quindi inseriti in ordine e, superata la capienza,
+	 * viene scartato quello relativo alla riga più lontana dall'inizio del file.
+	 */
+	void aggiungiErrore(long riga, String testo, String motivo) {
+		righeScartate++;
+		if(errori.size() == capienza && (capienza == 0 || errori.get(capienza - 1).getRiga() < riga)) return;
+		int indice = errori.size();
+		while(indice > 0 && errori.get(indice - 1).getRiga() > riga) indice--;
+		errori.add(indice, new Errore(riga, testo, motivo));
+		if(errori.size() > capienza) errori.remove(capienza);
+	}
+
+	/**
+	 * Ritorna la capienza del report, ovvero il numero massimo di errori conservati.
+	 *
+	 * @return la capienza di tipo {@code int}.
+	 */
+
+	public int getCapienza() {
+		return capienza;
+	}
+
+	/**
+	 * Ritorna il numero di righe lette dal file.
+	 *
+	 * @return il numero di righe lette.
+	 */
+
+	public long getRigheLette() {
+		return righeLette;
+	}
+
+	/**
+	 * Ritorna il numero totale di righe scartate, anche se superiore alla capienza del report.
+	 *
+	 * @return il numero di righe scartate.
+	 */
+
+	public long getRigheScartate() {
+		return righeScartate;
+	}
+
+	/**
+	 * Ritorna {@code true} se nessuna riga è stata scartata.
+	 *
+	 * @return {@code true} se il caricamento non ha prodotto errori, {@code false} altrimenti.
+	 */
+
+	public boolean isCompleto() {
+		return righeScartate == 0;
+	}
+
+	/**
+	 * Ritorna {@code true} se sono state scartate più righe di quante il report ne possa conservare.
+	 *
+	 * @return {@code true} se alcuni errori non sono stati conservati, {@code false} altrimenti.
+	 */
+
+	public boolean isTroncato() {
+		return righeScartate > errori.size();
+	}
+
+	/**
+	 * Ritorna gli errori conservati, ordinati per numero di riga.
+	 *
+	 * @return una {@code List} in sola lettura degli errori.
+	 */
+
+	public List<Errore> getErrori() {
+		return Collections.unmodifiableList(errori);
+	}
+
+	/**
+	 * Ritorna una rappresentazione in stringa del report: un errore per riga, seguito dal numero di
+	 * eventuali errori non conservati.
+	 *
+	 * @return una rappresentazione del report di tipo {@code String}.
+	 */
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for(Errore errore: errori) builder.append(errore).append('\n');
+		if(isTroncato()) builder.append("... e altre ").append(righeScartate - errori.size()).append(" righe\n");
+		return builder.toString();
+	}
+}
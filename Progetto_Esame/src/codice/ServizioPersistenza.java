@@ -0,0 +1,308 @@
+package codice;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * La classe {@code ServizioPersistenza} salva automaticamente su file, in un thread in background, le agende di un
+ * {@link ContenitoreAgende} che vengono modificate (<em>write-behind</em>).
+ * <p>
+ * Il servizio osserva le agende del contenitore (vedi {@link Agenda#aggiungiOsservatore}), comprese quelle aggiunte in seguito:
+ * ad ogni modifica l'agenda viene messa in coda, senza bloccare il thread che l'ha modificata. Più modifiche della stessa agenda
+ * vengono raggruppate in un unico salvataggio. Le agende in coda vengono salvate (come in {@link Agenda#salvaAgendaSuFile}) quando:<ul>
+ * <li> è trascorso il ritardo impostato dalla prima modifica non ancora salvata, oppure
+ * <li> il numero di modifiche non ancora salvate raggiunge la soglia impostata, oppure
+ * <li> viene chiamato il metodo {@link #flush}.</ul>
+ * Le agende che non è stato possibile salvare vengono rimesse in coda e salvate nuovamente al ciclo successivo.
+ * Le agende rimosse dal contenitore non vengono salvate.
+ * <p>
+ * Il servizio fornisce inoltre alcune misure: il numero di agende in coda, il numero di salvataggi eseguiti e la loro durata.
+ * <p>
+ * Al termine dell'utilizzo, il servizio va chiuso con {@link #close} (che salva le agende ancora in coda) oppure con {@link #chiudi}.
+ *
+ * @see ContenitoreAgende
+ * @see Agenda
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class ServizioPersistenza implements AutoCloseable {
+
+	/**
+	 * Il ritardo di default, in millisecondi, tra la prima modifica di un'agenda e il suo salvataggio.
+	 */
+	public static final long RITARDO_DEFAULT = 2000;
+
+	/**
+	 * Il numero di default di modifiche in coda oltre il quale le agende vengono salvate senza attendere il ritardo.
+	 */
+	public static final int SOGLIA_DEFAULT = 100;
+
+	private ContenitoreAgende contenitore;
+	private long ritardo;
+	private int soglia;
+	private Consumer<Agenda> osservatore;
+	private Thread thread;
+	private Object salvataggio;
+
+	private LinkedHashSet<Agenda> inCoda;
+	private int modificheInCoda;
+	private long primaModifica;
+	private boolean chiuso;
+
+	private long flushEseguiti;
+	private long agendeSalvate;
+	private long ultimaLatenza;
+	private long latenzaMassima;
+	private long latenzaTotale;
+	private List<EsitoSalvataggio> ultimiEsiti;
+
+	/**
+	 * Crea e avvia un nuovo servizio di persistenza per il contenitore passato come parametro.
+	 *
+	 * @param contenitore il contenitore le cui agende vanno salvate.
+	 * @param ritardoMillis il ritardo, in millisecondi, tra la prima modifica non salvata e il salvataggio.
+	 * @param sogliaModifiche il numero di modifiche in coda oltre il quale le agende vengono salvate subito.
+	 * @throws IllegalArgumentException se il ritardo è negativo oppure la soglia è minore di {@code 1}.
+	 */
+
+	public ServizioPersistenza(ContenitoreAgende contenitore, long ritardoMillis, int sogliaModifiche) throws IllegalArgumentException {
+		if(ritardoMillis < 0) throw new IllegalArgumentException("Ritardo negativo: " + ritardoMillis);
+		if(sogliaModifiche < 1) throw new IllegalArgumentException("Soglia non valida: " + sogliaModifiche);
+		this.contenitore = contenitore;
+		this.ritardo = TimeUnit.MILLISECONDS.toNanos(ritardoMillis);
+		this.soglia = sogliaModifiche;
+		this.salvataggio = new Object();
+		this.inCoda = new LinkedHashSet<>();
+		this.ultimiEsiti = List.of();
+		this.osservatore = this::modificata;
+		thread = new Thread(this::esegui, "ServizioPersistenza");
+		thread.setDaemon(true);
+		thread.start();
+		contenitore.aggiungiOsservatore(osservatore);
+	}
+
+	/**
+	 * Crea e avvia un nuovo servizio di persistenza per il contenitore passato come parametro, con
+	 * ritardo {@link #RITARDO_DEFAULT} e soglia {@link #SOGLIA_DEFAULT}.
+	 *
+	 * @param contenitore il contenitore le cui agende vanno salvate.
+	 */
+
+	public ServizioPersistenza(ContenitoreAgende contenitore) {
+		this(contenitore, RITARDO_DEFAULT, SOGLIA_DEFAULT);
+	}
+
+	private synchronized void modificata(Agenda agenda) {
+		if(chiuso) return;
+		if(inCoda.isEmpty()) primaModifica = System.nanoTime();
+		inCoda.add(agenda);
+		modificheInCoda++;
+		if(modificheInCoda == 1 || modificheInCoda >= soglia) notifyAll();
+	}
+
+	private boolean isPronto() {
+		return !inCoda.isEmpty() && (modificheInCoda >= soglia || System.nanoTime() - primaModifica >= ritardo);
+	}
+
+	private ArrayList<Agenda> preleva() {
+		ArrayList<Agenda> prelevate = new ArrayList<>(inCoda);
+		inCoda.clear();
+		modificheInCoda = 0;
+		return prelevate;
+	}
+
+	private void esegui() {
+		while(true) {
+			ArrayList<Agenda> daSalvare;
+			synchronized(this) {
+				try {
+					while(!isPronto()) {
+						if(chiuso) return;
+						if(inCoda.isEmpty()) wait();
+						else TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, ritardo - (System.nanoTime() - primaModifica)));
+					}
+				} catch(InterruptedException e) {
+					return;
+				}
+				daSalvare = preleva();
+			}
+			salva(daSalvare);
+		}
+	}
+
+	/*
+	 * I salvataggi del thread in background e quelli richiesti con flush non si sovrappongono:
+	 * quando flush termina, anche il salvataggio eventualmente in corso è terminato.
+	 */
+	private List<EsitoSalvataggio> salva(ArrayList<Agenda> agende) {
+		synchronized(salvataggio) {
+			ArrayList<Agenda> daSalvare = new ArrayList<>(agende.size());
+			for(Agenda agenda: agende) {
+				if(!agenda.isSaved() && contenitore.isPresente(agenda)) daSalvare.add(agenda);
+			}
+			long inizio = System.nanoTime();
+			List<EsitoSalvataggio> esiti = ContenitoreAgende.salva(daSalvare, 1);
+			long latenza = System.nanoTime() - inizio;
+			synchronized(this) {
+				flushEseguiti++;
+				ultimaLatenza = latenza;
+				latenzaMassima = Math.max(latenzaMassima, latenza);
+				latenzaTotale += latenza;
+				ultimiEsiti = esiti;
+				for(int i = 0; i < esiti.size(); i++) {
+					if(esiti.get(i).isSalvata()) agendeSalvate++;
+					else modificata(daSalvare.get(i));
+				}
+			}
+			return esiti;
+		}
+	}
+
+	/**
+	 * Salva subito, nel thread chiamante, tutte le agende in coda, attendendo anche il termine di un eventuale
+	 * salvataggio in corso nel thread in background.
+	 *
+	 * @return la lista degli esiti, uno per ogni agenda salvata (vedi {@link EsitoSalvataggio}).
+	 */
+
+	public List<EsitoSalvataggio> flush() {
+		synchronized(salvataggio) {
+			ArrayList<Agenda> daSalvare;
+			synchronized(this) {
+				daSalvare = preleva();
+			}
+			return salva(daSalvare);
+		}
+	}
+
+	/**
+	 * Ritorna il numero di agende in coda, ovvero modificate e non ancora salvate dal servizio.
+	 *
+	 * @return la profondità della coda di tipo {@code int}.
+	 */
+
+	public synchronized int getProfonditaCoda() {
+		return inCoda.size();
+	}
+
+	/**
+	 * Ritorna il numero di modifiche delle agende in coda.
+	 *
+	 * @return il numero di modifiche non ancora salvate.
+	 */
+
+	public synchronized int getModificheInCoda() {
+		return modificheInCoda;
+	}
+
+	/**
+	 * Ritorna il numero di salvataggi eseguiti, sia in background che tramite {@link #flush}.
+	 *
+	 * @return il numero di salvataggi di tipo {@code long}.
+	 */
+
+	public synchronized long getFlushEseguiti() {
+		return flushEseguiti;
+	}
+
+	/**
+	 * Ritorna il numero totale di agende salvate dal servizio.
+	 *
+	 * @return il numero di agende salvate di tipo {@code long}.
+	 */
+
+	public synchronized long getAgendeSalvate() {
+		return agendeSalvate;
+	}
+
+	/**
+	 * Ritorna la durata, in nanosecondi, dell'ultimo salvataggio eseguito.
+	 *
+	 * @return la durata dell'ultimo salvataggio, oppure {@code 0} se non ne è stato eseguito alcuno.
+	 */
+
+	public synchronized long getUltimaLatenzaFlush() {
+		return ultimaLatenza;
+	}
+
+	/**
+	 * Ritorna la durata massima, in nanosecondi, dei salvataggi eseguiti.
+	 *
+	 * @return la durata massima di un salvataggio.
+	 */
+
+	public synchronized long getLatenzaMassimaFlush() {
+		return latenzaMassima;
+	}
+
+	/**
+	 * Ritorna la durata media, in nanosecondi, dei salvataggi eseguiti.
+	 *
+	 * @return la durata media di un salvataggio, oppure {@code 0} se non ne è stato eseguito alcuno.
+	 */
+
+	public synchronized long getLatenzaMediaFlush() {
+		return flushEseguiti == 0 ? 0 : latenzaTotale / flushEseguiti;
+	}
+
+	/**
+	 * Ritorna gli esiti dell'ultimo salvataggio eseguito.
+	 *
+	 * @return una lista in sola lettura degli esiti.
+	 */
+
+	public synchronized List<EsitoSalvataggio> getUltimiEsiti() {
+		return ultimiEsiti;
+	}
+
+	/**
+	 * Ritorna {@code true} se il servizio è stato chiuso.
+	 *
+	 * @return {@code true} se il servizio è chiuso, {@code false} altrimenti.
+	 */
+
+	public synchronized boolean isChiuso() {
+		return chiuso;
+	}
+
+	/**
+	 * Chiude il servizio: smette di osservare le agende del contenitore e attende il termine del thread in background.
+	 * Se richiesto, salva infine le agende ancora in coda.
+	 *
+	 * @param salva {@code true} per salvare le agende in coda, {@code false} per scartare la coda.
+	 * @return la lista degli esiti dell'ultimo salvataggio, vuota se la coda è stata scartata oppure se il servizio era già chiuso.
+	 */
+
+	public List<EsitoSalvataggio> chiudi(boolean salva) {
+		synchronized(this) {
+			if(chiuso) return List.of();
+			chiuso = true;
+			notifyAll();
+		}
+		contenitore.rimuoviOsservatore(osservatore);
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(salva) return flush();
+		synchronized(this) {
+			preleva();
+		}
+		return List.of();
+	}
+
+	/**
+	 * Chiude il servizio salvando le agende ancora in coda (vedi {@link #chiudi}).
+	 */
+
+	@Override
+	public void close() {
+		chiudi(true);
+	}
+}
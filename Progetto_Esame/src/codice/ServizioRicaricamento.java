@@ -0,0 +1,203 @@
+package codice;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * La classe {@code ServizioRicaricamento} ricarica automaticamente, in un thread in background, le agende di un
+ * {@link ContenitoreAgende} i cui file di testo vengono modificati all'esterno dell'applicazione (<em>hot reload</em>).
+ * <p>
+ * Il servizio osserva la cartella specificata da {@link Agenda#getFilesPath} al momento della creazione, tramite un {@link WatchService}:
+ * i file {@code txt} creati o modificati vengono raccolti finché la cartella non resta invariata per il ritardo impostato, così
+ * da leggere una sola volta un file scritto in più passi. Viene poi ricaricato <strong>soltanto</strong> ogni file cambiato:<ul>
+ * <li> se il contenitore non ha un'agenda con lo stesso nome, l'agenda letta dal file viene aggiunta;
+ * <li> se l'agenda è soltanto registrata (vedi {@link ContenitoreAgende#registraAgendeDaFiles}), non c'è nulla da fare: verrà letta
+ * dal file aggiornato al primo accesso;
+ * <li> se l'agenda in memoria è <em>salvata</em>, viene sostituita da quella letta dal file;
+ * <li> se l'agenda in memoria ha modifiche non salvate, non viene sostituita e il conflitto viene segnalato
+ * con un esito {@link EsitoCaricamento.Stato#CONFLITTO}.</ul>
+ * Il file viene letto per intero prima di sostituire l'agenda nel contenitore, con un'unica assegnazione: chi accede al contenitore
+ * vede sempre l'agenda precedente oppure quella nuova, mai un'agenda letta a metà. Chi conserva un riferimento all'agenda precedente
+ * continua però a vedere quest'ultima, che non fa più parte del contenitore: va selezionata di nuovo con {@link ContenitoreAgende#selezionaAgenda}.
+ * <p>
+ * I file scritti dall'applicazione stessa non vengono ricaricati, poiché l'agenda ne ricorda la dimensione e la data di ultima modifica.
+ * I file eliminati vengono ignorati: le relative agende restano nel contenitore.
+ * <p>
+ * L'esito di ogni ricaricamento (vedi {@link EsitoCaricamento}) viene passato all'ascoltatore indicato alla creazione, dal thread
+ * in background. Al termine dell'utilizzo, il servizio va chiuso con {@link #close}.
+ *
+ * @see ContenitoreAgende
+ * @see ServizioPersistenza
+ *
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+public class ServizioRicaricamento implements AutoCloseable {
+
+	/**
+	 * Il ritardo di default, in millisecondi, per cui la cartella deve restare invariata prima di ricaricare i file cambiati.
+	 */
+	public static final long RITARDO_DEFAULT = 200;
+
+	private ContenitoreAgende contenitore;
+	private Consumer<EsitoCaricamento> ascoltatore;
+	private long ritardo;
+	private File cartella;
+	private WatchService watcher;
+	private Thread thread;
+
+	private long agendeRicaricate;
+	private long conflitti;
+	private long errori;
+
+	/**
+	 * Crea e avvia un nuovo servizio di ricaricamento per il contenitore passato come parametro.
+	 *
+	 * @param contenitore il contenitore le cui agende vanno ricaricate.
+	 * @param ascoltatore l'ascoltatore a cui passare l'esito di ogni ricaricamento.
+	 * @param ritardoMillis il ritardo, in millisecondi, per cui la cartella deve restare invariata prima di ricaricare i file.
+	 * @throws IOException se la cartella delle agende non esiste oppure non è possibile osservarla.
+	 * @throws IllegalArgumentException se il ritardo è negativo.
+	 */
+
+	public ServizioRicaricamento(ContenitoreAgende contenitore, Consumer<EsitoCaricamento> ascoltatore, long ritardoMillis) throws IOException, IllegalArgumentException {
+		if(ritardoMillis < 0) throw new IllegalArgumentException("Ritardo negativo: " + ritardoMillis);
+		this.contenitore = contenitore;
+		this.ascoltatore = ascoltatore;
+		this.ritardo = ritardoMillis;
+		this.cartella = new File(Agenda.getFilesPath()).getAbsoluteFile();
+		this.watcher = FileSystems.getDefault().newWatchService();
+		try {
+			cartella.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch(IOException e) {
+			watcher.close();
+			throw e;
+		}
+		thread = new Thread(this::esegui, "ServizioRicaricamento");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Crea e avvia un nuovo servizio di ricaricamento per il contenitore passato come parametro, con ritardo {@link #RITARDO_DEFAULT}.
+	 *
+	 * @param contenitore il contenitore le cui agende vanno ricaricate.
+	 * @param ascoltatore l'ascoltatore a cui passare l'esito di ogni ricaricamento.
+	 * @throws IOException se la cartella delle agende non esiste oppure non è possibile osservarla.
+	 */
+
+	public ServizioRicaricamento(ContenitoreAgende contenitore, Consumer<EsitoCaricamento> ascoltatore) throws IOException {
+		this(contenitore, ascoltatore, RITARDO_DEFAULT);
+	}
+
+	private void esegui() {
+		try {
+			while(true) {
+				LinkedHashSet<String> cambiati = new LinkedHashSet<>();
+				boolean tutti = false;
+				WatchKey chiave = watcher.take();
+				while(chiave != null) {
+					for(WatchEvent<?> evento: chiave.pollEvents()) {
+						if(evento.kind() == StandardWatchEventKinds.OVERFLOW) tutti = true;
+						else cambiati.add(((Path) evento.context()).getFileName().toString());
+					}
+					chiave.reset();
+					chiave = watcher.poll(ritardo, TimeUnit.MILLISECONDS);
+				}
+				if(tutti) {
+					File[] listaFile = cartella.listFiles();
+					if(listaFile != null) for(File file: listaFile) cambiati.add(file.getName());
+				}
+				for(String nomeFile: cambiati) {
+					if(nomeFile.endsWith(".txt")) ricarica(new File(cartella, nomeFile));
+				}
+			}
+		} catch(InterruptedException | ClosedWatchServiceException e) {
+			return;
+		}
+	}
+
+	private void ricarica(File file) {
+		if(file.isDirectory()) return;
+		EsitoCaricamento esito = contenitore.ricarica(file);
+		if(esito == null) return;
+		synchronized(this) {
+			switch(esito.getStato()) {
+				case CARICATA: agendeRicaricate++; break;
+				case CONFLITTO: conflitti++; break;
+				default: errori++;
+			}
+		}
+		ascoltatore.accept(esito);
+	}
+
+	/**
+	 * Ritorna il numero di agende ricaricate, ovvero aggiunte al contenitore o sostituite a quelle in memoria.
+	 *
+	 * @return il numero di agende ricaricate di tipo {@code long}.
+	 */
+
+	public synchronized long getAgendeRicaricate() {
+		return agendeRicaricate;
+	}
+
+	/**
+	 * Ritorna il numero di conflitti segnalati, ovvero di file cambiati la cui agenda in memoria aveva modifiche non salvate.
+	 *
+	 * @return il numero di conflitti di tipo {@code long}.
+	 */
+
+	public synchronized long getConflitti() {
+		return conflitti;
+	}
+
+	/**
+	 * Ritorna il numero di file cambiati che non è stato possibile leggere.
+	 *
+	 * @return il numero di errori di tipo {@code long}.
+	 */
+
+	public synchronized long getErrori() {
+		return errori;
+	}
+
+	/**
+	 * Ritorna {@code true} se il servizio è stato chiuso.
+	 *
+	 * @return {@code true} se il servizio è chiuso, {@code false} altrimenti.
+	 */
+
+	public boolean isChiuso() {
+		return !thread.isAlive();
+	}
+
+	/**
+	 * Chiude il servizio: smette di osservare la cartella e attende il termine del thread in background.
+	 * Un ricaricamento eventualmente in corso viene completato.
+	 */
+
+	@Override
+	public void close() {
+		try {
+			watcher.close();
+		} catch(IOException e) {
+			thread.interrupt();
+		}
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
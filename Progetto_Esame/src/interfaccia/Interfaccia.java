@@ -1,7 +1,7 @@
 package interfaccia;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.function.BiPredicate;
@@ -36,7 +36,7 @@ public class Interfaccia {
 
     private static boolean inizializzaAgende() throws IOException {
 		Agenda.createPathToAgende();
-		return box.caricaMultiAgendeDaFiles();
+		return box.registraAgendeDaFiles();
 	}
 	
 	private static void menuAgende() {
@@ -50,29 +50,32 @@ public class Interfaccia {
 				catch(NoSuchElementException e) {
 					System.out.println(COLOR_YELLOW+"\nATTENZIONE: L'agenda non esiste!\n"+COLOR_RESET);
 				}
+				catch(UncheckedIOException e) {
+					System.err.println("\n*** "+e.getMessage()+": "+e.getCause().getMessage()+" ***\n");
+				}
 			}
 			case "2", "aggiungi", "aggiungi agenda" -> aggiungiAgenda();
 			case "3", "rimuovi", "rimuovi agenda" -> {
 				String selected=Input.readString("Digitare l'agenda desiderata (il controllo è case-sensitive e tiene conto degli spazi): ");
-				try {
-					rimuoviAgenda(box.selezionaAgenda(selected));
-				}
-				catch(NoSuchElementException e) {
-					System.out.println(COLOR_YELLOW+"\nATTENZIONE: l'agenda non esiste!"+COLOR_RESET);
-				}
+				if(box.contains(selected)) rimuoviAgenda(selected);
+				else System.out.println(COLOR_YELLOW+"\nATTENZIONE: l'agenda non esiste!"+COLOR_RESET);
 			}
 			case "4", "quit", "esci", "q" -> terminate();
 			default -> System.out.println(COLOR_YELLOW+"ATTENZIONE: la scelta effettuata non è valida."+COLOR_RESET);
 		}
 	}
 	
-	private static void rimuoviAgenda(Agenda agenda) {
+	private static void rimuoviAgenda(String nomeAgenda) {
 		if(askSomething(COLOR_YELLOW_BRIGHT+"Sei sicuro di voler rimuovere l'agenda? "+COLOR_RESET)) {
-			if(agenda.isSaved() && askSomething(COLOR_YELLOW_BRIGHT+"Vuoi eliminare anche il file? "+COLOR_RESET)) {
-				if(new File(Agenda.getFilesPath(), agenda.getNomeAgenda()+".txt").delete()) System.out.println(COLOR_GREEN+"\n*** Eliminazione del file avvenuta con successo ***"+COLOR_RESET);
-				else System.err.println("\n*** Impossibile eliminare il file! ***\n");
+			if(box.isSaved(nomeAgenda) && askSomething(COLOR_YELLOW_BRIGHT+"Vuoi eliminare anche il file? "+COLOR_RESET)) {
+				try {
+					if(Agenda.eliminaFileAgenda(nomeAgenda)) System.out.println(COLOR_GREEN+"\n*** Eliminazione del file avvenuta con successo ***"+COLOR_RESET);
+					else System.err.println("\n*** Impossibile eliminare il file! ***\n");
+				} catch(IOException e) {
+					System.err.println("\n*** Impossibile eliminare il file: "+e.getMessage()+" ***\n");
+				}
 			}
-			box.removeAgenda(agenda.getNomeAgenda());
+			box.removeAgenda(nomeAgenda);
 			System.out.println(COLOR_GREEN+"\n*** Rimozione agenda avvenuta con successo ***\n"+COLOR_RESET);
 			
 		}
@@ -159,12 +162,14 @@ public class Interfaccia {
     		switch(Input.readString("Si desidera elencare per:\n1) Data\n2) Persona\n3) Tutto\nInserire un'opzione: ").strip().toLowerCase()) {
 	    		case "1", "data" -> {
 	    			String data = Input.readString("Inserire la data degli appuntamenti da elencare: ").strip();
-	    			System.out.println( agenda.elencaPerData(data).isEmpty() ? COLOR_YELLOW+"\n*** Nessun Appuntamento trovato con questa data ***"+COLOR_RESET : "\n"+agenda.elencaPerData(data));
+	    			String elenco = agenda.elencaPerData(data);
+	    			System.out.println( elenco.isEmpty() ? COLOR_YELLOW+"\n*** Nessun Appuntamento trovato con questa data ***"+COLOR_RESET : "\n"+elenco);
 	    			return;
 	    		}
 	    		case "2", "persona" -> {
 	    			String persona = Input.readString("Inserire il nome della persona con cui effettuare la ricerca: ").strip();
-	    			System.out.println( agenda.elencaPerPersona(persona).isEmpty() ? COLOR_YELLOW+"\n*** Nessun Appuntamento trovato con questa persona ***"+COLOR_RESET : "\n"+agenda.elencaPerPersona(persona));
+	    			String elenco = agenda.elencaPerPersona(persona);
+	    			System.out.println( elenco.isEmpty() ? COLOR_YELLOW+"\n*** Nessun Appuntamento trovato con questa persona ***"+COLOR_RESET : "\n"+elenco);
 	    			return;
 	    		}
 	    		case "3", "tutto" -> { System.out.println( agenda.toString().isEmpty() ? COLOR_YELLOW+"\n*** Agenda Vuota ***"+COLOR_RESET : "\n"+agenda.toString() ); return; }
@@ -185,7 +190,9 @@ public class Interfaccia {
     	for(TipoControllo tc : TipoControllo.values()) {
     		parametri[index++] = controlloDatoAppuntamento(tc, requests.get(tc).REQUEST, requests.get(tc).ERR_MESSAGE);
     	}
-    	if(agenda.aggiungiAppuntamento(parametri[0], parametri[1], parametri[2], parametri[3], parametri[4])) System.out.println(COLOR_GREEN+"\n*** Appuntamento aggiunto con successo ***"+COLOR_RESET);
+    	Appuntamento.Risultato risultato = Appuntamento.crea(parametri);
+    	if(!risultato.isValido()) System.out.println(COLOR_YELLOW+"\nATTENZIONE: "+risultato.getMessaggio()+COLOR_RESET);
+    	else if(agenda.aggiungiAppuntamento(risultato.getAppuntamento())) System.out.println(COLOR_GREEN+"\n*** Appuntamento aggiunto con successo ***"+COLOR_RESET);
     	else System.out.println(COLOR_YELLOW+"\nATTENZIONE: Appuntamento non compatibile con l'agenda"+COLOR_RESET);
     }
     
@@ -250,12 +257,21 @@ public class Interfaccia {
     private static void terminate() {
     	if(!box.allSaved()) {
     		if(askSomething(COLOR_YELLOW_BRIGHT+"Alcune agende non sono state salvate, si desidera salvarle? "+COLOR_RESET)) {
-    			try {
-    				box.salvaContenitoreSuFile();
-    				System.out.println(COLOR_GREEN+"\n*** Salvataggio delle agende avvenuto con successo ***"+COLOR_RESET);
-    			} catch(IOException e) { abort("\nATTENZIONE: salvataggio agende fallito.", e); }
+    			IOException errore = null;
+    			for(EsitoSalvataggio esito: box.salvaContenitoreSuFile(ContenitoreAgende.PARALLELISMO_DEFAULT)) {
+    				if(esito.isSalvata()) continue;
+    				System.err.println("Impossibile salvare l'agenda " + esito);
+    				if(errore == null) errore = esito.getErrore();
+    			}
+    			if(errore != null) abort("\nATTENZIONE: salvataggio agende fallito.", errore);
+    			System.out.println(COLOR_GREEN+"\n*** Salvataggio delle agende avvenuto con successo ***"+COLOR_RESET);
     		}
     	}
+    	try {
+    		box.aggiornaManifest();
+    	} catch(IOException e) {
+    		System.err.println("Attenzione: impossibile aggiornare il manifest delle agende ("+e.getMessage()+").");
+    	}
     	System.exit(0);
     }
     
@@ -1,9 +1,11 @@
 package jbook.util;
 
+import java.io.IOException;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoUnit;
 
 /**
  * La classe {@code DataOrario} è una classe semplice che permette di creare oggetti di tipo {@link LocalTime} e {@link LocalDate}, 
@@ -12,9 +14,11 @@ import java.time.format.ResolverStyle;
  * Inoltre ciò agevola le operazioni su questi campi.<br>
  * 
  * In particolare:<ul>
- * <li>Permette di comparare due {@code DataOrario} tramite il metodo {@link #compareTo};
+ * <li>Permette di comparare due {@code DataOrario} tramite il metodo {@link #compareTo}, implementando l'interfaccia {@link Comparable}
+ * (ciò lo rende utilizzabile come chiave di collezioni ordinate, e.g. {@link java.util.TreeMap});
  * <li>Permette di rappresentare la data e l'orario nel tipo {@link String} tramite il metodo {@link #toString};
  * <li>Permette di aggiungere minuti ad un data-orario iniziale e ottenerne uno nuovo con data e orario aggiornati tramite il metodo {@link #plusMinuti};
+ * <li>Permette di ottenere il data-orario come numero di minuti trascorsi dall'epoca ({@code 01-01-1970 00-00}) tramite il metodo {@link #getMinutiEpoch};
  * <li>Permette di verificare se due {@code DataOrario} sono identici tramite il metodo {@link #equals};
  * <li>Permette di ottenere le informazioni di questo {@code DataOrario} attraverso dei {@code getter}:<ul>
  * <li>{@link #getData()} per recuperare la <strong>data</strong> nel tipo {@link LocalDate};
@@ -33,22 +37,45 @@ import java.time.format.ResolverStyle;
  * <li>la <strong>data</strong> è rappresentata nel formato <strong>{@code dd-MM-uuuu}</strong> con uno stile ti dipo {@code STRICT};
  * <li>l'<strong>orario</strong> è rappresentato nel formato <strong>{@code HH-mm}</strong> con uno stile ti dipo {@code STRICT}.</ul>
  * 
+ * Alla creazione, ogni {@code DataOrario} calcola anche una chiave primitiva di tipo {@code long}, ovvero i minuti trascorsi dall'epoca.
+ * Le comparazioni, i controlli di uguaglianza e le somme di minuti lavorano direttamente su tale chiave, 
+ * senza dover costruire ogni volta nuovi oggetti {@link LocalDateTime}.
+ * 
  * @see codice.Appuntamento
  * 
  * @author Kristian Rigo (matr. 20046665)
  * @author Nicolò Bianchetto (matr. 20026606)
  */
 
-public class DataOrario {
+public class DataOrario implements Comparable<DataOrario> {
+	
+	/**
+	 * Il numero di minuti in un giorno.
+	 */
+	public final static int MINUTI_GIORNO = 24 * 60;
+	
+	/**
+	 * Il valore ritornato da {@link #parseGiornoEpoch} se la data non è valida.
+	 */
+	public final static long NON_VALIDO = Long.MIN_VALUE;
 	
 	private LocalDate data;
 	private LocalTime orario;
+	private long minutiEpoch;
 	private final static DateTimeFormatter FORMATTER_DATA = DateTimeFormatter.ofPattern("dd-MM-uuuu").withResolverStyle(ResolverStyle.STRICT);
 	private final static DateTimeFormatter FORMATTER_TIME = DateTimeFormatter.ofPattern("HH-mm").withResolverStyle(ResolverStyle.STRICT);
 	
 	private DataOrario(LocalDate data, LocalTime orario) {
 		this.data = data;
 		this.orario = orario;
+		this.minutiEpoch = data.toEpochDay() * MINUTI_GIORNO + orario.getHour() * 60 + orario.getMinute();
+	}
+	
+	private DataOrario(long minutiEpoch) {
+		int minutoDelGiorno = Math.floorMod(minutiEpoch, MINUTI_GIORNO);
+		this.data = LocalDate.ofEpochDay(Math.floorDiv(minutiEpoch, MINUTI_GIORNO));
+		this.orario = LocalTime.of(minutoDelGiorno / 60, minutoDelGiorno % 60);
+		this.minutiEpoch = minutiEpoch;
 	}
 	
 	/**
@@ -64,7 +91,164 @@ public class DataOrario {
 	 */
 	
 	public DataOrario(String data, String orario) throws DateTimeParseException {
-		this(LocalDate.parse(data, FORMATTER_DATA), LocalTime.parse(orario, FORMATTER_TIME));
+		this(parseData(data), parseOrario(orario));
+	}
+	
+	/**
+	 * Crea un nuovo {@code DataOrario} a partire dai minuti trascorsi dall'epoca, ovvero dal {@code 01-01-1970 00-00}.
+	 * È l'operazione inversa di {@link #getMinutiEpoch}.
+	 * 
+	 * @param minutiEpoch i minuti trascorsi dall'epoca.
+	 * @return un nuovo {@code DataOrario} corrispondente ai minuti indicati.
+	 */
+	
+	public static DataOrario daMinutiEpoch(long minutiEpoch) {
+		return new DataOrario(minutiEpoch);
+	}
+	
+	/**
+	 * Crea un nuovo {@code DataOrario} che rappresenta la data e l'orario attuali,
+	 * secondo l'orologio di sistema. I secondi vengono ignorati.
+	 * 
+	 * @return un nuovo {@code DataOrario} con la data e l'orario attuali.
+	 */
+	
+	public static DataOrario adesso() {
+		return new DataOrario(LocalDate.now(), LocalTime.now().truncatedTo(ChronoUnit.MINUTES));
+	}
+	
+	/**
+	 * <em>Parsifica</em> una <strong>data</strong> di tipo {@link String} nel formato <strong>{@code dd-MM-uuuu}</strong>
+	 * con uno stile di tipo {@code STRICT}, convertendola nel tipo {@link LocalDate}.
+	 * 
+	 * @param data stringa che identifica la data
+	 * @return la data nel tipo {@link LocalDate}.
+	 * @throws DateTimeParseException se non è stato possibile parsificare la data
+	 */
+	
+	public static LocalDate parseData(String data) throws DateTimeParseException {
+		int codificata = dataFissa(data);
+		if(codificata > 0) return LocalDate.of(codificata / 10000, codificata / 100 % 100, codificata % 100);
+		return LocalDate.parse(data, FORMATTER_DATA);
+	}
+	
+	/**
+	 * <em>Parsifica</em> un <strong>orario</strong> di tipo {@link String} nel formato <strong>{@code HH-mm}</strong>
+	 * con uno stile di tipo {@code STRICT}, convertendolo nel tipo {@link LocalTime}.
+	 * 
+	 * @param orario stringa che identifica l'orario
+	 * @return l'orario nel tipo {@link LocalTime}.
+	 * @throws DateTimeParseException se non è stato possibile parsificare l'orario
+	 */
+	
+	public static LocalTime parseOrario(String orario) throws DateTimeParseException {
+		int minutoDelGiorno = orarioFisso(orario);
+		if(minutoDelGiorno >= 0) return LocalTime.of(minutoDelGiorno / 60, minutoDelGiorno % 60);
+		return LocalTime.parse(orario, FORMATTER_TIME);
+	}
+	
+	/**
+	 * Converte una <strong>data</strong> di tipo {@link String} nel formato <strong>{@code dd-MM-uuuu}</strong> nel numero di giorni
+	 * trascorsi dall'epoca ({@code 01-01-1970}), senza sollevare eccezioni.
+	 * <p>Come per {@link #isDataValida}, le date a larghezza fissa vengono lette direttamente dai caratteri.
+	 * 
+	 * @param data stringa che identifica la data
+	 * @return i giorni trascorsi dall'epoca, oppure {@link #NON_VALIDO} se la data non è valida.
+	 */
+	
+	public static long parseGiornoEpoch(String data) {
+		int codificata = dataFissa(data);
+		if(codificata > 0) return LocalDate.of(codificata / 10000, codificata / 100 % 100, codificata % 100).toEpochDay();
+		if(codificata == 0) return NON_VALIDO;
+		try {
+			return LocalDate.parse(data, FORMATTER_DATA).toEpochDay();
+		} catch(DateTimeParseException e) {
+			return NON_VALIDO;
+		}
+	}
+	
+	/**
+	 * Converte un <strong>orario</strong> di tipo {@link String} nel formato <strong>{@code HH-mm}</strong> nel numero di minuti
+	 * trascorsi dalla mezzanotte, senza sollevare eccezioni.
+	 * 
+	 * @param orario stringa che identifica l'orario
+	 * @return il minuto del giorno (da {@code 0} a {@code 1439}), oppure {@code -1} se l'orario non è valido.
+	 */
+	
+	public static int parseMinutoDelGiorno(String orario) {
+		return orarioFisso(orario);
+	}
+	
+	/**
+	 * Verifica se la stringa passata come parametro è una <strong>data</strong> valida nel formato <strong>{@code dd-MM-uuuu}</strong>,
+	 * ovvero se {@link #parseData} andrebbe a buon fine.
+	 * <p>Le date a larghezza fissa (con l'anno di quattro cifre) vengono verificate direttamente sui caratteri, 
+	 * senza creare alcun oggetto. Solo negli altri casi (e.g. anni con segno) viene usato il {@link DateTimeFormatter}.
+	 * 
+	 * @param data stringa che identifica la data
+	 * @return {@code true} se la data è valida, {@code false} altrimenti.
+	 */
+	
+	public static boolean isDataValida(String data) {
+		int codificata = dataFissa(data);
+		if(codificata >= 0) return codificata > 0;
+		try {
+			LocalDate.parse(data, FORMATTER_DATA);
+			return true;
+		} catch(DateTimeParseException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Verifica se la stringa passata come parametro è un <strong>orario</strong> valido nel formato <strong>{@code HH-mm}</strong>,
+	 * ovvero se {@link #parseOrario} andrebbe a buon fine.
+	 * <p>Il controllo avviene direttamente sui caratteri, senza creare alcun oggetto.
+	 * 
+	 * @param orario stringa che identifica l'orario
+	 * @return {@code true} se l'orario è valido, {@code false} altrimenti.
+	 */
+	
+	public static boolean isOrarioValido(String orario) {
+		return orarioFisso(orario) >= 0;
+	}
+	
+	/*
+	 * Legge le cifre ASCII tra inizio (incluso) e fine (escluso), 
+	 * ritorna -1 se almeno un carattere non è una cifra.
+	 */
+	private static int leggiCifre(String stringa, int inizio, int fine) {
+		int valore = 0;
+		for(int i = inizio; i < fine; i++) {
+			char c = stringa.charAt(i);
+			if(c < '0' || c > '9') return -1;
+			valore = valore * 10 + (c - '0');
+		}
+		return valore;
+	}
+	
+	/*
+	 * Se la data è nel formato a larghezza fissa dd-MM-uuuu ritorna anno * 10000 + mese * 100 + giorno,
+	 * oppure 0 se tale data non esiste nel calendario. Ritorna -1 per ogni altro formato, 
+	 * che viene lasciato al DateTimeFormatter (e.g. "+10000" è un anno valido per uuuu).
+	 */
+	private static int dataFissa(String data) {
+		if(data.length() != 10 || data.charAt(2) != '-' || data.charAt(5) != '-') return -1;
+		int giorno = leggiCifre(data, 0, 2), mese = leggiCifre(data, 3, 5), anno = leggiCifre(data, 6, 10);
+		if(giorno < 0 || mese < 0 || anno < 0) return -1;
+		if(mese < 1 || mese > 12 || giorno < 1 || giorno > Month.of(mese).length(Year.isLeap(anno))) return 0;
+		return anno * 10000 + mese * 100 + giorno;
+	}
+	
+	/*
+	 * Ritorna il minuto del giorno se l'orario è valido nel formato HH-mm, -1 altrimenti.
+	 * Essendo HH e mm a larghezza fissa, non esistono altri formati accettati dal DateTimeFormatter.
+	 */
+	private static int orarioFisso(String orario) {
+		if(orario.length() != 5 || orario.charAt(2) != '-') return -1;
+		int ore = leggiCifre(orario, 0, 2), minuti = leggiCifre(orario, 3, 5);
+		if(ore < 0 || ore > 23 || minuti < 0 || minuti > 59) return -1;
+		return ore * 60 + minuti;
 	}
 	
 	/**
@@ -87,6 +271,17 @@ public class DataOrario {
 		return orario;
 	}
 	
+	/**
+	 * Restituisce il data-orario come numero di minuti trascorsi dall'epoca, ovvero dal {@code 01-01-1970 00-00}.
+	 * Il valore è negativo per i data-orari precedenti all'epoca.
+	 * 
+	 * @return i minuti trascorsi dall'epoca nel tipo {@code long}.
+	 */
+	
+	public long getMinutiEpoch() {
+		return minutiEpoch;
+	}
+	
 	/**
 	 * Restituisce la data tramite il metodo <strong>{@code format}</strong> della classe {@link LocalDate}
 	 * che prende come argomento un parametro di tipo {@link DateTimeFormatter} che identifica 
@@ -116,9 +311,49 @@ public class DataOrario {
 		return orario.format(FORMATTER_TIME);
 	}
 	
+	/**
+	 * Scrive la data, nel formato <strong>{@code dd-MM-uuuu}</strong>, sull'{@link Appendable} passato come parametro.<br>
+	 * Il risultato è lo stesso di {@link #getDataToString()}, ma per gli anni di quattro cifre
+	 * i caratteri vengono scritti direttamente, senza creare stringhe intermedie.
+	 * 
+	 * @param destinazione l'{@code Appendable} su cui scrivere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void scriviDataSu(Appendable destinazione) throws IOException {
+		int anno = data.getYear();
+		if(anno < 0 || anno > 9999) {
+			destinazione.append(getDataToString());
+			return;
+		}
+		scriviCifre(destinazione, data.getDayOfMonth(), 2).append('-');
+		scriviCifre(destinazione, data.getMonthValue(), 2).append('-');
+		scriviCifre(destinazione, anno, 4);
+	}
+	
+	/**
+	 * Scrive l'orario, nel formato <strong>{@code HH-mm}</strong>, sull'{@link Appendable} passato come parametro.<br>
+	 * Il risultato è lo stesso di {@link #getOrarioToString()}, senza creare stringhe intermedie.
+	 * 
+	 * @param destinazione l'{@code Appendable} su cui scrivere.
+	 * @throws IOException se si verifica un errore di I/O durante la scrittura.
+	 */
+	
+	public void scriviOrarioSu(Appendable destinazione) throws IOException {
+		scriviCifre(destinazione, orario.getHour(), 2).append('-');
+		scriviCifre(destinazione, orario.getMinute(), 2);
+	}
+	
+	private static Appendable scriviCifre(Appendable destinazione, int valore, int cifre) throws IOException {
+		int divisore = 1;
+		for(int i = 1; i < cifre; i++) divisore *= 10;
+		for(; divisore > 0; divisore /= 10) destinazione.append((char) ('0' + valore / divisore % 10));
+		return destinazione;
+	}
+	
 	/**
 	 * Somma il <strong>parametro</strong> di tipo {@link String} passata per argomento, ad una data-orario
-	 * utilizzando il metodo <strong>{@code plusMinutes}</strong> della classe {@link LocalDateTime}.
+	 * convertendolo in un numero di minuti e richiamando {@link #plusMinuti(long)}.
 	 * In questo modo il nuovo data-orario sarà aggiornato anche nel caso l'orario finale superi la mezzanotte, 
 	 * la data finale verrà quindi aggiornata col giorno successivo.<br>
 	 * E.g.:<blockquote><pre>
@@ -134,13 +369,24 @@ public class DataOrario {
 	 */
 	
 	public DataOrario plusMinuti(String durata) {
-		LocalDateTime ldt = data.atTime(orario).plusMinutes(Long.parseLong(durata));
-		return new DataOrario(ldt.toLocalDate(), ldt.toLocalTime());
+		return plusMinuti(Long.parseLong(durata));
+	}
+	
+	/**
+	 * Somma i minuti passati per argomento ad una data-orario, lavorando direttamente sui minuti
+	 * trascorsi dall'epoca. Se l'orario finale supera la mezzanotte, la data viene aggiornata di conseguenza.
+	 * 
+	 * @param minuti il numero di minuti da sommare
+	 * @return un nuovo {@code DataOrario} con la data e l'orario aggiornati
+	 */
+	
+	public DataOrario plusMinuti(long minuti) {
+		return new DataOrario(minutiEpoch + minuti);
 	}
 	
 	/**
-	 * Assegna a due variabili di tipo {@link LocalDateTime} questo {@code DataOrario} e {@code Other} da confrontare,
-	 * poichè il metodo {@code compareTo} prende come argomento solo oggetti di tipo {@link LocalDateTime}.<br>
+	 * Confronta i minuti trascorsi dall'epoca di questo {@code DataOrario} e di {@code Other},
+	 * senza creare alcun oggetto intermedio.<br>
 	 * Compara i due oggeti e restituisce un valore negativo o positivo:<ul>
 	 * <li>Positivo se questo {@code DataOrario} è più grande di {@code Other};
 	 * <li>Negativo se questo {@code DataOrario} è più piccolo di {@code Other}.</ul>
@@ -149,9 +395,9 @@ public class DataOrario {
 	 * @return un valore di tipo {@code int} negativo se più piccolo o positivo se più grande.
 	 */
 	
+	@Override
 	public int compareTo(DataOrario other) {
-		LocalDateTime thisDateTime = data.atTime(orario), otherDateTime = other.getData().atTime(other.getOrario());
-		return thisDateTime.compareTo(otherDateTime);
+		return Long.compare(minutiEpoch, other.minutiEpoch);
 	}
 	
 	/**
@@ -200,6 +446,17 @@ public class DataOrario {
 	public boolean equals(Object object) {
 		if(object == null || object.getClass() != this.getClass()) return false;
 		DataOrario other = (DataOrario) object;
-		return (other.getData().equals(this.data)) && (other.getOrario().equals(this.orario));
+		return other.minutiEpoch == this.minutiEpoch;
+	}
+	
+	/**
+	 * Restituisce un codice hash per questo {@code DataOrario}, coerente con {@link #equals}.
+	 * 
+	 * @return il codice hash calcolato sui minuti trascorsi dall'epoca.
+	 */
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(minutiEpoch);
 	}
 }
@@ -1,5 +1,9 @@
 package jbook.util;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -9,8 +13,11 @@ import java.util.regex.Pattern;
  * specialmente nei casi ove è necessario creare un singolo {@code Pattern}
  * per un singolo {@code Matcher}. Negli altri casi, è ovviamente preferibile
  * dichiarare tali classi separatamente.
- * 
- *<p><strong>Questa classe è immutabile</strong>.
+ * <p>I {@code Pattern} compilati vengono conservati in una cache condivisa, di dimensione limitata (vedi {@link #setDimensioneCache}),
+ * indicizzata per <em>regex</em> e <em>flags</em>: quando la cache è piena, viene scartato il {@code Pattern} usato meno di recente.
+ * La cache può essere usata da più thread contemporaneamente. Un singolo {@code PatternMatcher} invece, come un {@code Matcher},
+ * non va usato da più thread contemporaneamente: può essere riutilizzato su una nuova sequenza con {@link #reset}, senza creare
+ * un nuovo {@code Matcher}.
  * 
  * 
  * @author Nicolò Bianchetto (matr. 20026606)
@@ -18,9 +25,51 @@ import java.util.regex.Pattern;
  */
 
 public class PatternMatcher {
+	
+	/**
+	 * La dimensione di default della cache dei {@code Pattern} compilati.
+	 */
+	public static final int DIMENSIONE_CACHE_DEFAULT = 1024;
+	
+	private static final Object LOCK_CACHE = new Object();
+	private static int dimensioneCache = DIMENSIONE_CACHE_DEFAULT;
+	private static long patternRiutilizzati;
+	private static long patternCompilati;
+	private static final LinkedHashMap<Chiave, Pattern> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Chiave, Pattern> eldest) {
+			return size() > dimensioneCache;
+		}
+	};
+	
 	private Pattern pattern;
 	private Matcher matcher;
 	
+	/*
+	 * La chiave della cache: la regex e le flags combinate.
+	 */
+	private static class Chiave {
+		private final String regex;
+		private final int flags;
+		
+		private Chiave(String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Chiave && ((Chiave) obj).flags == flags && ((Chiave) obj).regex.equals(regex);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(regex, flags);
+		}
+	}
+	
 	/**
 	 * Verifica che il {@code Matcher} soddisfi la <em>regex</em> assegnata
 	 * al {@code Pattern}.
@@ -32,6 +81,19 @@ public class PatternMatcher {
 		return matcher.matches();
 	}
 	
+	/**
+	 * Reimposta il {@code Matcher} sulla nuova sequenza passata come parametro, mantenendo lo stesso {@code Pattern}
+	 * (vedi {@link Matcher#reset(CharSequence)}).
+	 * 
+	 * @param match la nuova sequenza da verificare.
+	 * @return questo {@code PatternMatcher}.
+	 */
+	
+	public PatternMatcher reset(String match) {
+		matcher.reset(match);
+		return this;
+	}
+	
 	/**
 	 * Crea un nuovo {@code PatternMatcher} tramite una <em>regex</em>, un <em>matcher</em>
 	 * ed eventuali <em>flags</em>. Quest'ultime sono opzionali e devono essere le stesse flags dichiarate
@@ -44,7 +106,7 @@ public class PatternMatcher {
      * {@link Pattern#UNICODE_CASE}, {@link Pattern#CANON_EQ}, {@link Pattern#UNIX_LINES},
      * {@link Pattern#LITERAL}, {@link Pattern#UNICODE_CHARACTER_CLASS}
      * e {@link Pattern#COMMENTS}.
-	 * @return un nuovo {@link PatternMatcher}.
+	 * @return un nuovo {@link PatternMatcher}, il cui {@code Pattern} viene preso dalla cache se presente.
 	 */
 	
 	public static PatternMatcher create(String regex, String match, int ... flags) {
@@ -56,7 +118,99 @@ public class PatternMatcher {
 		for (int i = 0; i < flags.length; i++)
 			resFlag |= flags[i];
 
-		pattern = Pattern.compile(regex, resFlag);
+		pattern = compila(regex, resFlag);
 		matcher = pattern.matcher(match);
 	}
+	
+	/*
+	 * La compilazione avviene fuori dal lock: se due thread compilano la stessa regex, viene conservato il primo Pattern.
+	 */
+	private static Pattern compila(String regex, int flags) {
+		Chiave chiave = new Chiave(regex, flags);
+		synchronized(LOCK_CACHE) {
+			Pattern pattern = CACHE.get(chiave);
+			if(pattern != null) {
+				patternRiutilizzati++;
+				return pattern;
+			}
+			patternCompilati++;
+		}
+		Pattern pattern = Pattern.compile(regex, flags);
+		synchronized(LOCK_CACHE) {
+			if(dimensioneCache == 0) return pattern;
+			Pattern presente = CACHE.putIfAbsent(chiave, pattern);
+			return presente != null ? presente : pattern;
+		}
+	}
+	
+	/**
+	 * Imposta il numero massimo di {@code Pattern} conservati nella cache. Se la cache ne contiene di più,
+	 * vengono scartati quelli usati meno di recente. Con dimensione {@code 0} la cache è disattivata.
+	 * 
+	 * @param dimensione il numero massimo di {@code Pattern} nella cache.
+	 * @return la dimensione precedente.
+	 * @throws IllegalArgumentException se la dimensione è negativa.
+	 */
+	
+	public static int setDimensioneCache(int dimensione) throws IllegalArgumentException {
+		if(dimensione < 0) throw new IllegalArgumentException("Dimensione negativa: " + dimensione);
+		synchronized(LOCK_CACHE) {
+			int vecchiaDimensione = dimensioneCache;
+			dimensioneCache = dimensione;
+			Iterator<Chiave> iteratore = CACHE.keySet().iterator();
+			while(CACHE.size() > dimensione) {
+				iteratore.next();
+				iteratore.remove();
+			}
+			return vecchiaDimensione;
+		}
+	}
+	
+	/**
+	 * Ritorna il numero massimo di {@code Pattern} conservati nella cache.
+	 * 
+	 * @return la dimensione della cache di tipo {@code int}.
+	 */
+	
+	public static int getDimensioneCache() {
+		synchronized(LOCK_CACHE) {
+			return dimensioneCache;
+		}
+	}
+	
+	/**
+	 * Ritorna il numero di {@code Pattern} presi dalla cache, senza compilarli.
+	 * 
+	 * @return il numero di {@code Pattern} riutilizzati di tipo {@code long}.
+	 */
+	
+	public static long getPatternRiutilizzati() {
+		synchronized(LOCK_CACHE) {
+			return patternRiutilizzati;
+		}
+	}
+	
+	/**
+	 * Ritorna il numero di {@code Pattern} compilati, ovvero non presenti nella cache.
+	 * 
+	 * @return il numero di {@code Pattern} compilati di tipo {@code long}.
+	 */
+	
+	public static long getPatternCompilati() {
+		synchronized(LOCK_CACHE) {
+			return patternCompilati;
+		}
+	}
+	
+	/**
+	 * Svuota la cache dei {@code Pattern} compilati e azzera i contatori.
+	 */
+	
+	public static void svuotaCache() {
+		synchronized(LOCK_CACHE) {
+			CACHE.clear();
+			patternRiutilizzati = 0;
+			patternCompilati = 0;
+		}
+	}
 }
@@ -0,0 +1,66 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import org.junit.jupiter.api.Test;
+
+import codice.Agenda;
+import codice.AgendaColonnare;
+import codice.Appuntamento;
+import codice.AppuntamentoException;
+
+/**
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+class TestAgendaColonnare {
+
+	@Test
+	void testConversione() throws AppuntamentoException {
+		ArrayList<Appuntamento> appuntamenti = new ArrayList<>();
+		appuntamenti.add(new Appuntamento("02-02-1998", "14-30", "60", "Ufficio", "Luca"));
+		appuntamenti.add(new Appuntamento("01-02-1998", "06-30", "45", "Viale Roma 22", "Giovanna Pascoli"));
+		appuntamenti.add(new Appuntamento("02-02-1998", "07-00", "30", "Casa Mia", "Giacomo"));
+		appuntamenti.add(new Appuntamento("03-02-1998", "23-30", "0060", "Ufficio", "Luca"));
+		Agenda agenda = new Agenda("Colonne", appuntamenti);
+		AgendaColonnare colonnare = new AgendaColonnare(agenda);
+
+		assertEquals("Colonne", colonnare.getNomeAgenda());
+		assertEquals(4, colonnare.getDimensioneAgenda());
+		assertEquals(6, colonnare.getDimensioneDizionario());
+		assertEquals("01-02-1998|06-30|45min|Viale Roma 22|Giovanna Pascoli\n", colonnare.getAppuntamento(0).toString());
+		assertEquals("04-02-1998 00-30", colonnare.getAppuntamento(3).getDataTimeFine().toString());
+		assertThrows(IndexOutOfBoundsException.class, () -> colonnare.getAppuntamento(4));
+		assertTrue(agenda.equals(colonnare.toAgenda()));
+
+		int indice = 0;
+		for(Appuntamento appointment: colonnare) assertEquals(agenda.getAppuntamenti().get(indice++), appointment);
+		assertEquals(4, indice);
+	}
+
+	@Test
+	void testAggiungiAppuntamento() throws AppuntamentoException {
+		AgendaColonnare colonnare = new AgendaColonnare("");
+		assertEquals("Agenda", colonnare.getNomeAgenda());
+		assertTrue(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "16-00", "80", "Sala Conferenze", "Capo")));
+		assertTrue(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "17-20", "80", "Sala Conferenze", "Capo")));
+		assertTrue(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "08-00", "30", "Casa Mia", "Paolo")));
+		assertFalse(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "16-30", "20", "Casa Mia", "Paolo")));
+		assertFalse(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "17-19", "15", "Casa Giovanni", "Giovanni")));
+		assertFalse(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "07-59", "2", "Casa Giovanni", "Giovanni")));
+		assertTrue(colonnare.aggiungiAppuntamento(new Appuntamento("04-02-1998", "07-59", "1", "Casa Giovanni", "Giovanni")));
+		assertEquals(4, colonnare.getDimensioneAgenda());
+		assertEquals("04-02-1998|07-59|1min|Casa Giovanni|Giovanni\n", colonnare.getAppuntamento(0).toString());
+		assertEquals("04-02-1998|17-20|80min|Sala Conferenze|Capo\n", colonnare.getAppuntamento(3).toString());
+		assertThrows(IllegalArgumentException.class, () -> colonnare.aggiungiAppuntamento(new Appuntamento("01-01-9999", "10-00", "10", "Futuro", "Robot")));
+
+		assertThrows(ConcurrentModificationException.class, () -> {
+			for(Appuntamento appointment: colonnare) {
+				colonnare.aggiungiAppuntamento(new Appuntamento("05-02-1998", appointment.getOrario(), "1", "Casa", "Io"));
+			}
+		});
+	}
+}
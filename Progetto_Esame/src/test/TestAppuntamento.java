@@ -1,6 +1,8 @@
 package test;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.util.Random;
+import java.util.regex.Pattern;
 import org.junit.jupiter.api.Test;
 import codice.Appuntamento;
 import codice.Appuntamento.ControlloDati;
@@ -180,6 +182,35 @@ class TestAppuntamento {
 		assertFalse(new Appuntamento("10-12-2021", "23-30", "30", "Milano", "Luca").matchDataOrario("10-12-2021", " "));
 	}
 	
+	@Test
+	void testCrea() throws AppuntamentoException {
+		Appuntamento.Risultato risultato = Appuntamento.crea("31-12-1999", "23-30", "0045", "Viale Roma 22", "Luca");
+		assertTrue(risultato.isValido());
+		assertNull(risultato.getErrore());
+		assertNull(risultato.getMessaggio());
+		assertEquals(new Appuntamento("31-12-1999", "23-30", "45", "Viale Roma 22", "Luca"), risultato.getAppuntamento());
+		assertEquals("45", risultato.getAppuntamento().getDurata());
+		assertEquals(45, risultato.getAppuntamento().getMinutiDurata());
+		assertEquals("01-01-2000 00-15", risultato.getAppuntamento().getDataTimeFine().toString());
+		
+		String[][] errati = {
+			{ "29-02-2023", "24-00", "0", "36 Piazza", "1998" },
+			{ "28-02-2023", "24-00", "0", "36 Piazza", "1998" },
+			{ "28-02-2023", "23-00", "0", "36 Piazza", "1998" },
+			{ "28-02-2023", "23-00", "10", "36 Piazza", "1998" },
+			{ "28-02-2023", "23-00", "10", "Piazza", "1998" } };
+		String[] messaggi = { "Data non valida!", "Orario non valido!", "Durata non valida!", "Luogo non valido!", "Nome non valido!" };
+		for(int i = 0; i < errati.length; i++) {
+			risultato = Appuntamento.crea(errati[i]);
+			assertFalse(risultato.isValido());
+			assertNull(risultato.getAppuntamento());
+			assertEquals(TipoControllo.values()[i], risultato.getErrore());
+			assertEquals(messaggi[i], risultato.getMessaggio());
+			String[] parametri = errati[i];
+			assertEquals(messaggi[i], assertThrows(AppuntamentoException.class, () -> new Appuntamento(parametri)).getMessage());
+		}
+	}
+	
 	@Test
 	void testIsCompatible() throws AppuntamentoException {
 		Appuntamento a1 = new Appuntamento("10-12-2021", "23-30", "30", "Milano", "Luca");
@@ -201,4 +232,24 @@ class TestAppuntamento {
 		Appuntamento a1 = new Appuntamento("10-12-2021", "23-30", "30", "Milano", "Luca");
 		assertEquals("10-12-2021|23-30|30min|Milano|Luca\n", a1.toString());
 	}
+	
+	@Test
+	void testControlliEquivalentiAlleRegex() {
+		Pattern durata = Pattern.compile("^(0*[1-9][0-9]{0,3})$");
+		Pattern luogo = Pattern.compile("^[a-z]{1,20}(\\s)?[a-z]{0,20}(\\s[0-9]{0,4})?$", Pattern.CASE_INSENSITIVE);
+		Pattern persona = Pattern.compile("^(?![0-9]+$)[a-z0-9]{1,20}(\\s)?[a-z0-9]{0,20}$", Pattern.CASE_INSENSITIVE);
+		String[] pezzi = { "a", "Z", "0", "7", " ", "\n", "\r", "\t", "-", "è", "abcdefghij", "0123456789", "00" };
+		Random random = new Random(42);
+		for(int i = 0; i < 200000; i++) {
+			StringBuilder stringa = new StringBuilder();
+			int lunghezza = random.nextInt(8);
+			for(int j = 0; j < lunghezza; j++) stringa.append(pezzi[random.nextInt(pezzi.length)]);
+			String s = stringa.toString();
+			assertEquals(durata.matcher(s).matches(), ControlloDati.controlloPer(TipoControllo.CONTROLLO_DURATA, s), s);
+			assertEquals(luogo.matcher(s).matches(), ControlloDati.controlloPer(TipoControllo.CONTROLLO_LUOGO, s), s);
+			assertEquals(persona.matcher(s).matches(), ControlloDati.controlloPer(TipoControllo.CONTROLLO_PERSONA, s), s);
+		}
+		assertFalse(ControlloDati.controlloPer(TipoControllo.CONTROLLO_PERSONA, "1234\n"));
+		assertTrue(ControlloDati.controlloPer(TipoControllo.CONTROLLO_PERSONA, "1234 "));
+	}
 }
@@ -2,17 +2,36 @@ package test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import codice.Agenda;
+import codice.ArchivioAgende;
 import codice.Appuntamento;
 import codice.AppuntamentoException;
 import codice.ContenitoreAgende;
+import codice.EsitoCaricamento;
+import codice.EsitoSalvataggio;
+import codice.ServizioPersistenza;
+import codice.ServizioRicaricamento;
 
 /**
  * @author Nicolò Bianchetto (matr. 20026606)
@@ -171,6 +190,440 @@ class TestContenitoreAgende {
 	}
 	
 	
+	@Test
+	void testSalvaConDurabilita(@TempDir Path cartella) throws IOException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		Agenda.Durabilita vecchiaDurabilita = Agenda.getDurabilita();
+		Agenda varie = box.selezionaAgenda("Varie");
+		Agenda altro = box.selezionaAgenda("Altro");
+		try {
+			for(Agenda.Durabilita durabilita: Agenda.Durabilita.values()) {
+				Agenda.setDurabilita(durabilita);
+				assertTrue(varie.aggiungiAppuntamento("0" + (durabilita.ordinal() + 3) + "-06-2023", "10-00", "30", "Casa", "Marta"));
+				altro.setNomeAgenda("Altro " + durabilita.ordinal());
+				assertTrue(box.salvaContenitoreSuFile());
+				assertTrue(box.allSaved());
+				for(Agenda agenda: box) assertTrue(agenda.equals(new Agenda(new File(cartella.toFile(), agenda.getNomeAgenda() + ".txt"))));
+				try(Stream<Path> files = Files.list(cartella)) {
+					assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+				}
+			}
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+			Agenda.setDurabilita(vecchiaDurabilita);
+		}
+	}
+	
+	
+	@Test
+	void testCaricamentoParallelo(@TempDir Path cartella) throws IOException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		try {
+			for(int i = 0; i < 20; i++) {
+				Files.writeString(cartella.resolve("Agenda " + (char) ('A' + i) + ".txt"), 
+						(i == 0 ? "01" : "02") + "-06-2023|10-00|30min|Casa|Marta\n01-06-2023|10-10|30min|Casa|Marta\n");
+			}
+			Files.writeString(cartella.resolve("Varie.txt"), "");
+			Files.createDirectory(cartella.resolve("Cartella.txt"));
+			
+			List<EsitoCaricamento> esiti = box.caricaMultiAgendeDaFiles(4);
+			assertEquals(21, esiti.size());
+			assertEquals(23, box.getDimensione());
+			for(int i = 0; i < 20; i++) {
+				EsitoCaricamento esito = esiti.get(i);
+				assertEquals("Agenda " + (char) ('A' + i), esito.getNomeAgenda());
+				assertEquals(EsitoCaricamento.Stato.CARICATA, esito.getStato());
+				assertEquals(i == 0 ? 1 : 0, esito.getReport().getRigheScartate());
+				assertTrue(esito.getNanosecondi() > 0);
+				assertNull(esito.getErrore());
+				assertEquals(2 - esito.getReport().getRigheScartate(), box.selezionaAgenda(esito.getNomeAgenda()).getDimensioneAgenda());
+			}
+			assertEquals(EsitoCaricamento.Stato.NOME_DUPLICATO, esiti.get(20).getStato());
+			assertEquals(4, box.selezionaAgenda("Varie").getDimensioneAgenda());
+			
+			ContenitoreAgende sequenziale = new ContenitoreAgende();
+			sequenziale.aggiungiAgenda("Varie");
+			List<EsitoCaricamento> esitiSequenziali = sequenziale.caricaMultiAgendeDaFiles(1);
+			for(int i = 0; i < esiti.size(); i++) {
+				assertEquals(esiti.get(i).getStato(), esitiSequenziali.get(i).getStato());
+				assertEquals(esiti.get(i).getNomeAgenda(), esitiSequenziali.get(i).getNomeAgenda());
+			}
+			assertEquals(21, sequenziale.getDimensione());
+			assertThrows(IllegalArgumentException.class, () -> box.caricaMultiAgendeDaFiles(0));
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+		}
+	}
+	
+	
+	@Test
+	void testSalvataggioParallelo(@TempDir Path cartella) throws IOException, AppuntamentoException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		Agenda.Durabilita vecchiaDurabilita = Agenda.getDurabilita();
+		try {
+			for(int i = 0; i < 30; i++) {
+				Agenda agenda = new Agenda("Agenda " + i);
+				agenda.aggiungiAppuntamento(new Appuntamento("0" + (i % 9 + 1) + "-06-2023", "10-00", Integer.toString(i + 1), "Casa", "Marta"));
+				box.aggiungiAgenda(agenda);
+			}
+			for(Agenda.Durabilita durabilita: Agenda.Durabilita.values()) {
+				Agenda.setDurabilita(durabilita);
+				for(Agenda agenda: box) agenda.aggiungiAppuntamento("1" + durabilita.ordinal() + "-06-2023", "10-00", "30", "Casa", "Marta");
+				List<EsitoSalvataggio> esiti = box.salvaContenitoreSuFile(4);
+				assertEquals(33, esiti.size());
+				assertEquals("Varie", esiti.get(0).getNomeAgenda());
+				assertTrue(esiti.stream().allMatch(EsitoSalvataggio::isSalvata));
+				assertTrue(box.allSaved());
+				for(Agenda agenda: box) assertTrue(agenda.equals(new Agenda(new File(cartella.toFile(), agenda.getNomeAgenda() + ".txt"))));
+				assertTrue(box.salvaContenitoreSuFile(4).isEmpty());
+			}
+			
+			Agenda.setDurabilita(Agenda.Durabilita.PER_FILE);
+			Files.createDirectories(cartella.resolve("Rotta.txt").resolve("Occupata"));
+			box.aggiungiAgenda("Rotta");
+			box.selezionaAgenda("Varie").setNomeAgenda("Varie 2");
+			List<EsitoSalvataggio> esiti = box.salvaContenitoreSuFile(4);
+			assertEquals(2, esiti.size());
+			assertEquals(EsitoSalvataggio.Stato.SALVATA, esiti.get(0).getStato());
+			assertEquals(EsitoSalvataggio.Stato.ERRORE, esiti.get(1).getStato());
+			assertNotNull(esiti.get(1).getErrore());
+			assertFalse(box.selezionaAgenda("Rotta").isSaved());
+			assertThrows(IOException.class, () -> box.salvaContenitoreSuFile());
+			try(Stream<Path> files = Files.list(cartella)) {
+				assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+			}
+			assertThrows(IllegalArgumentException.class, () -> box.salvaContenitoreSuFile(0));
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+			Agenda.setDurabilita(vecchiaDurabilita);
+		}
+	}
+
+	@Test
+	void testRegistrazioneDifferita(@TempDir Path cartella) throws IOException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		try {
+			Files.writeString(cartella.resolve("Lavoro.txt"), "02-06-2023|14-30|60min|Ufficio|Luca\n");
+			Files.writeString(cartella.resolve("Sport.txt"), "03-06-2023|18-00|90min|Palestra|Marta\n");
+			Files.writeString(cartella.resolve("Varie.txt"), "");
+			Files.writeString(cartella.resolve("Vuota.txt"), "");
+			assertFalse(box.registraAgendeDaFiles());
+			assertEquals(6, box.getDimensione());
+			assertEquals("- Altro*\n- Lavoro\n- Personale*\n- Sport\n- Varie*\n- Vuota\n", box.elencaNomiAgende());
+			assertTrue(box.contains("Lavoro"));
+			assertEquals(4, box.selezionaAgenda("Varie").getDimensioneAgenda());
+
+			Files.writeString(cartella.resolve("Lavoro.txt"), "02-06-2023|14-30|60min|Ufficio|Luca\n04-06-2023|09-00|30min|Ufficio|Capo\n");
+			Agenda lavoro = box.selezionaAgenda("Lavoro");
+			assertEquals(2, lavoro.getDimensioneAgenda());
+			assertTrue(lavoro.isSaved());
+			assertSame(lavoro, box.selezionaAgenda("Lavoro"));
+
+			Files.delete(cartella.resolve("Sport.txt"));
+			assertThrows(UncheckedIOException.class, () -> box.selezionaAgenda("Sport"));
+			assertThrows(UncheckedIOException.class, () -> box.getAgende());
+			assertTrue(box.contains("Sport"));
+			Files.writeString(cartella.resolve("Sport.txt"), "03-06-2023|18-00|90min|Palestra|Marta\n");
+			assertEquals(1, box.selezionaAgenda("Sport").getDimensioneAgenda());
+
+			Files.delete(cartella.resolve("Vuota.txt"));
+			assertTrue(box.isSaved("Vuota"));
+			assertFalse(box.isSaved("Varie"));
+			assertThrows(NoSuchElementException.class, () -> box.isSaved("Inesistente"));
+			assertTrue(box.removeAgenda("Vuota"));
+			assertFalse(box.contains("Vuota"));
+			assertTrue(box.aggiungiAgenda("Vuota"));
+			assertFalse(box.aggiungiAgenda("Lavoro"));
+			assertEquals(6, box.getAgende().size());
+			assertTrue(box.modificaNomeAgenda("Sport", "Palestra"));
+			assertEquals("- Altro*\n- Lavoro\n- Palestra*\n- Personale*\n- Varie*\n- Vuota*\n", box.elencaNomiAgende());
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+		}
+	}
+
+	@Test
+	void testManifest(@TempDir Path cartella) throws IOException, AppuntamentoException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		try {
+			assertTrue(box.salvaContenitoreSuFile());
+			assertEquals(3, box.aggiornaManifest());
+			assertEquals(0, box.aggiornaManifest());
+			assertTrue(Files.exists(cartella.resolve("agende.manifest")));
+			try(Stream<Path> files = Files.list(cartella.resolve(".snapshot"))) {
+				assertEquals(3, files.count());
+			}
+
+			// Un file modificato senza cambiarne dimensione e data viene letto dallo snapshot
+			Path altro = cartella.resolve("Altro.txt");
+			long ultimaModifica = Files.getLastModifiedTime(altro).toMillis();
+			String contenuto = Files.readString(altro);
+			Files.writeString(altro, contenuto.replace("Paolo", "Paola"));
+			assertTrue(altro.toFile().setLastModified(ultimaModifica));
+			ContenitoreAgende registrato = new ContenitoreAgende();
+			assertTrue(registrato.registraAgendeDaFiles());
+			assertTrue(registrato.selezionaAgenda("Altro").equals(box.selezionaAgenda("Altro")));
+			assertTrue(registrato.selezionaAgenda("Altro").isSaved());
+			ContenitoreAgende caricato = new ContenitoreAgende();
+			assertTrue(caricato.caricaMultiAgendeDaFiles(2).stream().allMatch(EsitoCaricamento::isCaricata));
+			assertTrue(caricato.selezionaAgenda("Altro").equals(box.selezionaAgenda("Altro")));
+
+			// Un file modificato all'esterno dopo il caricamento dell'agenda non viene descritto dallo snapshot di quest'ultima
+			Files.writeString(altro, contenuto + "20-06-2023|10-00|30min|Casa|Marta\n");
+
+			// Dopo un salvataggio tramite journal, l'agenda viene letta dal file di testo
+			Agenda varie = box.selezionaAgenda("Varie");
+			assertTrue(varie.aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta"));
+			assertTrue(varie.salvaAgendaSuFile());
+			assertTrue(Files.exists(cartella.resolve("Varie.journal")));
+			assertEquals(0, box.aggiornaManifest());
+			registrato = new ContenitoreAgende();
+			assertTrue(registrato.registraAgendeDaFiles());
+			assertTrue(registrato.selezionaAgenda("Varie").equals(varie));
+			assertEquals(6, registrato.selezionaAgenda("Altro").getDimensioneAgenda());
+			registrato.selezionaAgenda("Varie").aggiungiAppuntamento("21-06-2023", "10-00", "30", "Casa", "Marta");
+			assertTrue(registrato.salvaContenitoreSuFile());
+
+			// Uno snapshot danneggiato viene ignorato
+			Path snapshot = cartella.resolve(".snapshot").resolve("Personale.agb");
+			byte[] contenutoSnapshot = Files.readAllBytes(snapshot);
+			contenutoSnapshot[contenutoSnapshot.length - 1] ^= 1;
+			Files.write(snapshot, contenutoSnapshot);
+			registrato = new ContenitoreAgende();
+			assertTrue(registrato.registraAgendeDaFiles());
+			assertTrue(registrato.selezionaAgenda("Personale").equals(box.selezionaAgenda("Personale")));
+
+			Files.delete(cartella.resolve("Personale.txt"));
+			assertEquals(0, registrato.aggiornaManifest());
+			assertFalse(Files.exists(snapshot));
+			assertEquals(2, Files.readAllLines(cartella.resolve("agende.manifest")).size());
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+		}
+	}
+
+	@Test
+	void testServizioPersistenza(@TempDir Path cartella) throws IOException, InterruptedException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		ServizioPersistenza servizio = new ServizioPersistenza(box, 60000, 5);
+		try {
+			assertEquals(3, servizio.getProfonditaCoda());
+			assertEquals(3, servizio.getModificheInCoda());
+			Agenda varie = box.selezionaAgenda("Varie");
+			varie.aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta");
+			varie.aggiungiAppuntamento("21-06-2023", "10-00", "30", "Casa", "Marta");
+			long limite = System.currentTimeMillis() + 10000;
+			while(!box.allSaved() && System.currentTimeMillis() < limite) Thread.sleep(10);
+			assertTrue(box.allSaved());
+			assertTrue(varie.equals(new Agenda(new File(cartella.toFile(), "Varie.txt"))));
+
+			Agenda altro = box.selezionaAgenda("Altro");
+			altro.aggiungiAppuntamento("20-06-2023", "12-00", "30", "Casa", "Marta");
+			altro.aggiungiAppuntamento("21-06-2023", "12-00", "30", "Casa", "Marta");
+			assertEquals(1, servizio.getProfonditaCoda());
+			assertEquals(2, servizio.getModificheInCoda());
+			assertFalse(altro.isSaved());
+			List<EsitoSalvataggio> esiti = servizio.flush();
+			assertEquals(1, esiti.size());
+			assertEquals("Altro", esiti.get(0).getNomeAgenda());
+			assertTrue(altro.isSaved());
+			assertEquals(0, servizio.getProfonditaCoda());
+			assertEquals(esiti, servizio.getUltimiEsiti());
+			assertEquals(2, servizio.getFlushEseguiti());
+			assertEquals(4, servizio.getAgendeSalvate());
+			assertTrue(servizio.getLatenzaMassimaFlush() >= servizio.getUltimaLatenzaFlush());
+			assertTrue(servizio.getLatenzaMediaFlush() > 0);
+
+			Agenda personale = box.selezionaAgenda("Personale");
+			personale.aggiungiAppuntamento("20-06-2023", "14-00", "30", "Casa", "Marta");
+			box.removeAgenda("Personale");
+			assertTrue(servizio.flush().isEmpty());
+			assertFalse(personale.isSaved());
+			personale.aggiungiAppuntamento("21-06-2023", "14-00", "30", "Casa", "Marta");
+			assertEquals(0, servizio.getProfonditaCoda());
+
+			varie.setNomeAgenda("Varie 2");
+			servizio.close();
+			assertTrue(servizio.isChiuso());
+			assertTrue(varie.isSaved());
+			assertTrue(new File(cartella.toFile(), "Varie 2.txt").exists());
+			varie.setNomeAgenda("Varie 3");
+			assertEquals(0, servizio.getProfonditaCoda());
+			assertTrue(servizio.chiudi(true).isEmpty());
+		} finally {
+			servizio.close();
+			Agenda.changePathToAgende(vecchioPath);
+		}
+		assertThrows(IllegalArgumentException.class, () -> new ServizioPersistenza(box, -1, 5));
+		assertThrows(IllegalArgumentException.class, () -> new ServizioPersistenza(box, 100, 0));
+	}
+
+	@Test
+	void testServizioRicaricamento(@TempDir Path cartella) throws IOException, InterruptedException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		LinkedBlockingQueue<EsitoCaricamento> esiti = new LinkedBlockingQueue<>();
+		ServizioRicaricamento servizio = null;
+		try {
+			assertTrue(box.salvaContenitoreSuFile());
+			servizio = new ServizioRicaricamento(box, esiti::add, 50);
+
+			// I file scritti dall'applicazione non vengono ricaricati
+			Agenda nuova = new Agenda("Nuova");
+			nuova.aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta");
+			assertTrue(box.aggiungiAgenda(nuova));
+			assertTrue(nuova.salvaAgendaSuFile());
+
+			// Un file modificato all'esterno sostituisce l'agenda salvata
+			Agenda altro = box.selezionaAgenda("Altro");
+			Path fileAltro = cartella.resolve("Altro.txt");
+			Files.writeString(fileAltro, Files.readString(fileAltro).replace("Paolo", "Paolo Bianchi"));
+			EsitoCaricamento esito = esiti.poll(10, TimeUnit.SECONDS);
+			assertNotNull(esito);
+			assertEquals(EsitoCaricamento.Stato.CARICATA, esito.getStato());
+			assertEquals("Altro", esito.getNomeAgenda());
+			Agenda ricaricata = box.selezionaAgenda("Altro");
+			assertNotSame(altro, ricaricata);
+			assertTrue(ricaricata.isSaved());
+			assertTrue(ricaricata.elencaPerPersona("Paolo Bianchi").contains("Macelleria"));
+			assertSame(nuova, box.selezionaAgenda("Nuova"));
+
+			// Un nuovo file viene aggiunto al contenitore
+			Files.copy(cartella.resolve("Varie.txt"), cartella.resolve("Esterna.txt"));
+			esito = esiti.poll(10, TimeUnit.SECONDS);
+			assertNotNull(esito);
+			assertEquals(EsitoCaricamento.Stato.CARICATA, esito.getStato());
+			assertEquals(4, box.selezionaAgenda("Esterna").getDimensioneAgenda());
+
+			// Un'agenda con modifiche non salvate non viene sostituita
+			Agenda personale = box.selezionaAgenda("Personale");
+			assertTrue(personale.aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta"));
+			Path filePersonale = cartella.resolve("Personale.txt");
+			Files.writeString(filePersonale, Files.readString(filePersonale).replace("Luca", "Luca Verdi"));
+			esito = esiti.poll(10, TimeUnit.SECONDS);
+			assertNotNull(esito);
+			assertEquals(EsitoCaricamento.Stato.CONFLITTO, esito.getStato());
+			assertSame(personale, box.selezionaAgenda("Personale"));
+			assertFalse(personale.isSaved());
+
+			assertEquals(2, servizio.getAgendeRicaricate());
+			assertEquals(1, servizio.getConflitti());
+			assertEquals(0, servizio.getErrori());
+			servizio.close();
+			assertTrue(servizio.isChiuso());
+		} finally {
+			if(servizio != null) servizio.close();
+			Agenda.changePathToAgende(vecchioPath);
+		}
+		assertTrue(esiti.isEmpty());
+	}
+
+	@Test
+	void testArchivio(@TempDir Path cartella) throws IOException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		try {
+			assertThrows(FileNotFoundException.class, () -> box.caricaAgendeDaArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			assertTrue(box.salvaContenitoreInArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			assertTrue(box.allSaved());
+			File file = cartella.resolve("Agende" + ArchivioAgende.ESTENSIONE).toFile();
+			long utilizzato;
+			try(ArchivioAgende archivio = ArchivioAgende.apri(file)) {
+				assertEquals(List.of("Altro", "Personale", "Varie"), archivio.getNomi());
+				assertEquals(box.selezionaAgenda("Personale").toString(), archivio.leggi("Personale").toString());
+				assertThrows(NoSuchElementException.class, () -> archivio.leggi("Inesistente"));
+				utilizzato = archivio.getDimensione() - archivio.getSpazioInutilizzato();
+			}
+
+			// Un'agenda piccola modificata viene riscritta sul posto, una cresciuta troppo in fondo al file
+			Agenda varie = box.selezionaAgenda("Varie");
+			assertTrue(varie.aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta"));
+			assertTrue(box.salvaContenitoreInArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			assertTrue(varie.isSaved());
+			try(ArchivioAgende archivio = ArchivioAgende.apri(file)) {
+				assertEquals(utilizzato, archivio.getDimensione() - archivio.getSpazioInutilizzato());
+				assertEquals(5, archivio.leggi("Varie").getDimensioneAgenda());
+				Agenda altro = archivio.leggi("Altro");
+				for(int i = 10; i < 40; i++) altro.aggiungiAppuntamento(String.format("%02d-01-2024", i - 9), "10-00", "30", "Casa", "Marta");
+				archivio.scrivi(altro);
+				assertTrue(archivio.getSpazioInutilizzato() > 0);
+				assertEquals(35, archivio.leggi("Altro").getDimensioneAgenda());
+				long inutilizzato = archivio.getSpazioInutilizzato();
+
+				// Un'agenda invariata non viene riscritta
+				archivio.scrivi(archivio.leggi("Personale"));
+				assertEquals(inutilizzato, archivio.getSpazioInutilizzato());
+
+				assertTrue(archivio.rimuovi("Personale"));
+				assertFalse(archivio.rimuovi("Personale"));
+				archivio.compatta();
+				assertEquals(0, archivio.getSpazioInutilizzato());
+				assertEquals(1, archivio.getCompattazioni());
+				assertEquals(List.of("Altro", "Varie"), archivio.getNomi());
+				assertEquals(35, archivio.leggi("Altro").getDimensioneAgenda());
+			}
+
+			// Le agende non più presenti nel contenitore vengono rimosse dall'archivio
+			assertTrue(box.removeAgenda("Varie"));
+			assertTrue(box.salvaContenitoreInArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			ContenitoreAgende letto = new ContenitoreAgende();
+			letto.aggiungiAgenda("Altro");
+			assertFalse(letto.caricaAgendeDaArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			assertEquals(2, letto.getDimensione());
+			assertEquals(box.selezionaAgenda("Personale").toString(), letto.selezionaAgenda("Personale").toString());
+			assertTrue(letto.selezionaAgenda("Personale").isSaved());
+
+			// Una voce danneggiata viene riconosciuta dal checksum
+			try(FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				canale.write(ByteBuffer.wrap(new byte[] { 0x7F, 0x7F, 0x7F, 0x7F }), ArchivioAgende.DIMENSIONE_INTESTAZIONE + 8);
+			}
+			ContenitoreAgende danneggiato = new ContenitoreAgende();
+			assertThrows(IOException.class, () -> danneggiato.caricaAgendeDaArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			assertEquals(1, danneggiato.getDimensione());
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+		}
+	}
+
+	@Test
+	void testArchivioInterrotto(@TempDir Path cartella) throws IOException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		try {
+			assertTrue(box.salvaContenitoreInArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			Path file = cartella.resolve("Agende" + ArchivioAgende.ESTENSIONE);
+			ByteBuffer intestazione = ByteBuffer.allocate(ArchivioAgende.DIMENSIONE_INTESTAZIONE);
+			try(FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+				canale.read(intestazione, 0);
+			}
+			long dimensione = Files.size(file);
+
+			// Un aggiornamento interrotto prima dell'intestazione: le voci e il nuovo indice sono scritti, l'intestazione no
+			Agenda varie = box.selezionaAgenda("Varie");
+			assertTrue(varie.aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta"));
+			assertTrue(box.salvaContenitoreInArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			try(FileChannel canale = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				canale.write(intestazione.flip(), 0);
+			}
+
+			// La voce riscritta sul posto non ha sovrascritto la copia valida, per cui l'archivio precedente resta leggibile
+			try(ArchivioAgende archivio = ArchivioAgende.apri(file.toFile())) {
+				assertTrue(archivio.getDimensione() > dimensione);
+				assertEquals(4, archivio.leggi("Varie").getDimensioneAgenda());
+			}
+			ContenitoreAgende letto = new ContenitoreAgende();
+			assertTrue(letto.caricaAgendeDaArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			assertEquals(4, letto.selezionaAgenda("Varie").getDimensioneAgenda());
+
+			// L'aggiornamento successivo riscrive la voce e la pubblica
+			assertTrue(letto.selezionaAgenda("Varie").aggiungiAppuntamento("20-06-2023", "10-00", "30", "Casa", "Marta"));
+			assertTrue(letto.salvaContenitoreInArchivio("Agende" + ArchivioAgende.ESTENSIONE));
+			try(ArchivioAgende archivio = ArchivioAgende.apri(file.toFile())) {
+				assertEquals(5, archivio.leggi("Varie").getDimensioneAgenda());
+				assertEquals(box.selezionaAgenda("Altro").toString(), archivio.leggi("Altro").toString());
+			}
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+		}
+	}
+	
 	@Test
 	void testElencaOrdineAlfabetico() {
 		assertEquals("- Altro*\n- Personale*\n- Varie*\n", box.elencaNomiAgende());
@@ -203,6 +656,58 @@ class TestContenitoreAgende {
 	}
 	
 	
+	@Test
+	void testAccessoConcorrente() throws InterruptedException {
+		Thread aggiunte = new Thread(() -> {
+			for(int i = 0; i < 2000; i++) box.aggiungiAgenda("Concorrente " + i);
+		});
+		aggiunte.start();
+		while(aggiunte.isAlive()) {
+			assertTrue(box.contains("Varie"));
+			assertFalse(box.contains("Assente"));
+			assertTrue(box.elencaNomiAgende().startsWith("- Altro*\n"));
+			assertTrue(box.getDimensione() >= 3);
+		}
+		aggiunte.join();
+		assertEquals(2003, box.getDimensione());
+		assertEquals(2003, box.getAgende().size());
+	}
+	
+	@Test
+	void testCaricamentoConcorrente(@TempDir Path cartella) throws IOException, InterruptedException {
+		String vecchioPath = Agenda.changePathToAgende(cartella.toString());
+		try {
+			StringBuilder righe = new StringBuilder();
+			for(int i = 0; i < 20000; i++) righe.append(String.format("%02d-%02d-%d|10-00|30min|Ufficio|Luca\n", i % 28 + 1, i / 28 % 12 + 1, 2000 + i / 336));
+			Files.writeString(cartella.resolve("Grande.txt"), righe);
+			assertTrue(box.registraAgendeDaFiles());
+
+			// Più thread che accedono alla stessa agenda non ancora caricata ottengono la stessa istanza, letta una sola volta
+			Agenda[] lette = new Agenda[4];
+			ArrayList<Thread> threads = new ArrayList<>();
+			for(int i = 0; i < lette.length; i++) {
+				int indice = i;
+				threads.add(new Thread(() -> lette[indice] = box.selezionaAgenda("Grande")));
+			}
+			for(Thread thread: threads) thread.start();
+			assertEquals(4, box.selezionaAgenda("Varie").getDimensioneAgenda());
+			assertEquals(4, box.getDimensione());
+			for(Thread thread: threads) thread.join();
+			for(Agenda letta: lette) assertSame(box.selezionaAgenda("Grande"), letta);
+			assertEquals(20000, lette[0].getDimensioneAgenda());
+			assertTrue(lette[0].isSaved());
+
+			// Un'agenda rinominata dopo il caricamento mantiene la propria voce
+			assertTrue(box.modificaNomeAgenda("Grande", "Enorme"));
+			assertSame(lette[0], box.selezionaAgenda("Enorme"));
+			assertFalse(box.contains("Grande"));
+			assertFalse(box.modificaNomeAgenda("Grande", "Altra"));
+			assertFalse(box.modificaNomeAgenda("Enorme", "Varie"));
+		} finally {
+			Agenda.changePathToAgende(vecchioPath);
+		}
+	}
+	
 	@Test
 	void testIterabile() {
 		assertDoesNotThrow( () -> {
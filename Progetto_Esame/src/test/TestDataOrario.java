@@ -1,7 +1,12 @@
 package test;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.Random;
 import org.junit.jupiter.api.Test;
 
 import jbook.util.DataOrario;
@@ -35,6 +40,16 @@ class TestDataOrario {
 		assertNotEquals("01-01-1900 00-00", new DataOrario("31-12-1999", "23-30").plusMinuti("30").toString());
 	}
 	
+	@Test
+	void testMinutiEpoch() {
+		assertEquals(0, new DataOrario("01-01-1970", "00-00").getMinutiEpoch());
+		assertEquals(-30, new DataOrario("31-12-1969", "23-30").getMinutiEpoch());
+		assertEquals(1440 + 90, new DataOrario("02-01-1970", "01-30").getMinutiEpoch());
+		assertEquals("01-01-1970 00-15", new DataOrario("31-12-1969", "23-30").plusMinuti(45).toString());
+		assertEquals("29-02-2020 23-30", new DataOrario("01-03-2020", "00-00").plusMinuti(-30).toString());
+		assertEquals(new DataOrario("01-03-2020", "00-00").hashCode(), new DataOrario("29-02-2020", "23-00").plusMinuti(60).hashCode());
+	}
+	
 	@Test
 	void testComparazione() {
 		assertEquals(-1, new DataOrario("28-02-2001", "23-30").compareTo(new DataOrario("01-03-2001", "00-30")));
@@ -60,4 +75,30 @@ class TestDataOrario {
 		assertFalse(new DataOrario("31-12-1999", "23-30").equals(new DataOrario("01-01-1900", "23-30")));
 		assertFalse(new DataOrario("01-01-2000", "00-00").equals(new DataOrario("01-01-2001", "00-00")));
 	}
+	
+	@Test
+	void testValiditaEquivalenteAlFormatter() {
+		DateTimeFormatter formatterData = DateTimeFormatter.ofPattern("dd-MM-uuuu").withResolverStyle(ResolverStyle.STRICT);
+		DateTimeFormatter formatterOrario = DateTimeFormatter.ofPattern("HH-mm").withResolverStyle(ResolverStyle.STRICT);
+		Random random = new Random(7);
+		String cifre = "0123456789-+/ ";
+		for(int i = 0; i < 100000; i++) {
+			String data = String.format("%02d-%02d-%04d", random.nextInt(33), random.nextInt(14), random.nextInt(10000));
+			StringBuilder orario = new StringBuilder();
+			for(int j = random.nextInt(3) + 4; j > 0; j--) orario.append(cifre.charAt(random.nextInt(cifre.length())));
+			if(i % 4 == 0) data = data.substring(0, 3) + orario + data.substring(5);
+			boolean dataValida = true, orarioValido = true;
+			try { LocalDate.parse(data, formatterData); } catch(DateTimeParseException e) { dataValida = false; }
+			try { LocalTime.parse(orario, formatterOrario); } catch(DateTimeParseException e) { orarioValido = false; }
+			assertEquals(dataValida, DataOrario.isDataValida(data), data);
+			assertEquals(orarioValido, DataOrario.isOrarioValido(orario.toString()), orario.toString());
+			if(dataValida) assertEquals(LocalDate.parse(data, formatterData), DataOrario.parseData(data));
+		}
+		assertTrue(DataOrario.isDataValida("29-02-2000"));
+		assertFalse(DataOrario.isDataValida("29-02-1900"));
+		assertTrue(DataOrario.isDataValida("01-01-+10000"));
+		assertFalse(DataOrario.isDataValida("01-01-10000"));
+		assertEquals(LocalTime.of(23, 59), DataOrario.parseOrario("23-59"));
+		assertThrows(DateTimeParseException.class, () -> DataOrario.parseOrario("24-00"));
+	}
 }
@@ -0,0 +1,112 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import codice.Agenda;
+import codice.Appuntamento;
+import codice.AppuntamentoException;
+import codice.FormatoBinario;
+
+/**
+ * @author Nicolò Bianchetto (matr. 20026606)
+ * @author Kristian Rigo (matr. 20046665)
+ */
+
+class TestFormatoBinario {
+
+	private static Agenda creaAgenda() throws AppuntamentoException {
+		ArrayList<Appuntamento> appuntamenti = new ArrayList<>();
+		appuntamenti.add(new Appuntamento("02-02-1998", "14-30", "60", "Ufficio", "Luca"));
+		appuntamenti.add(new Appuntamento("01-02-1998", "06-30", "45", "Viale Roma 22", "Giovanna Pascoli"));
+		appuntamenti.add(new Appuntamento("02-02-1998", "07-00", "30", "Casa Mia", "Giacomo"));
+		appuntamenti.add(new Appuntamento("03-02-1998", "23-30", "9999", "Ufficio", "Luca"));
+		appuntamenti.add(new Appuntamento("31-12-9999", "10-00", "10", "Futuro", "Robot"));
+		appuntamenti.add(new Appuntamento("01-01-0001", "00-00", "1", "Passato", "Luca"));
+		return new Agenda("Binaria", appuntamenti);
+	}
+
+	@Test
+	void testScritturaLettura(@TempDir Path cartella) throws IOException, AppuntamentoException {
+		Agenda agenda = creaAgenda();
+		File file = cartella.resolve("Binaria" + FormatoBinario.ESTENSIONE).toFile();
+		FormatoBinario.scrivi(agenda, file);
+		assertEquals(FormatoBinario.DIMENSIONE_INTESTAZIONE + 6 * FormatoBinario.DIMENSIONE_RECORD + 91, file.length());
+
+		Agenda letta = FormatoBinario.leggi(file);
+		assertTrue(agenda.equals(letta));
+		assertFalse(letta.isSaved());
+		assertEquals(agenda.toString(), letta.toString());
+		assertEquals(agenda.elencaPerPersona("Luca"), letta.elencaPerPersona("Luca"));
+
+		FormatoBinario.scrivi(new Agenda("Vuota"), file);
+		assertEquals(FormatoBinario.DIMENSIONE_INTESTAZIONE, file.length());
+		assertEquals(0, FormatoBinario.leggi(file).getDimensioneAgenda());
+		try(var files = Files.list(cartella)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void testConversione(@TempDir Path cartella) throws IOException, AppuntamentoException {
+		Agenda agenda = creaAgenda();
+		File testo = cartella.resolve("Binaria.txt").toFile();
+		FormatoBinario.scrivi(agenda, cartella.resolve("Binaria" + FormatoBinario.ESTENSIONE).toFile());
+		assertEquals(testo.getAbsoluteFile(), FormatoBinario.inTesto(cartella.resolve("Binaria" + FormatoBinario.ESTENSIONE).toFile()));
+		Agenda daTesto = new Agenda(testo);
+		assertTrue(agenda.equals(daTesto));
+
+		Files.writeString(testo.toPath(), Files.readString(testo.toPath()) + "riga malformata\n");
+		File binario = FormatoBinario.daTesto(testo);
+		assertEquals(cartella.resolve("Binaria" + FormatoBinario.ESTENSIONE).toFile().getAbsoluteFile(), binario);
+		assertTrue(agenda.equals(FormatoBinario.leggi(binario)));
+	}
+
+	@Test
+	void testFileDanneggiato(@TempDir Path cartella) throws IOException, AppuntamentoException {
+		File file = cartella.resolve("Binaria" + FormatoBinario.ESTENSIONE).toFile();
+		Files.writeString(file.toPath(), "02-02-1998|14-30|60min|Ufficio|Luca\n");
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(file));
+		Files.write(file.toPath(), new byte[0]);
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(file));
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(cartella.resolve("Assente.agb").toFile()));
+
+		FormatoBinario.scrivi(creaAgenda(), file);
+		try(RandomAccessFile accesso = new RandomAccessFile(file, "rw")) {
+			accesso.seek(8);
+			accesso.writeInt(1000);
+		}
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(file));
+
+		FormatoBinario.scrivi(creaAgenda(), file);
+		try(RandomAccessFile accesso = new RandomAccessFile(file, "rw")) {
+			accesso.seek(FormatoBinario.DIMENSIONE_INTESTAZIONE + 8);
+			accesso.writeInt(0);
+		}
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(file));
+
+		FormatoBinario.scrivi(creaAgenda(), file);
+		try(RandomAccessFile accesso = new RandomAccessFile(file, "rw")) {
+			accesso.seek(FormatoBinario.DIMENSIONE_INTESTAZIONE + 16);
+			accesso.writeInt(Integer.MAX_VALUE);
+		}
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(file));
+
+		FormatoBinario.scrivi(creaAgenda(), file);
+		try(RandomAccessFile accesso = new RandomAccessFile(file, "rw")) {
+			accesso.seek(FormatoBinario.DIMENSIONE_INTESTAZIONE + FormatoBinario.DIMENSIONE_RECORD);
+			accesso.writeLong(0);
+			accesso.seek(FormatoBinario.DIMENSIONE_INTESTAZIONE + 2 * FormatoBinario.DIMENSIONE_RECORD);
+			accesso.writeLong(0);
+		}
+		assertThrows(IOException.class, () -> FormatoBinario.leggi(file));
+	}
+}
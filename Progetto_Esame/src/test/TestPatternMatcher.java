@@ -25,4 +25,41 @@ class TestPatternMatcher {
 		assertTrue(PatternMatcher.create("Þ þ î Î", "Þ Þ î î", Pattern.CASE_INSENSITIVE, Pattern.UNICODE_CASE).matches());
 	}
 
+	@Test
+	void testCache() {
+		int vecchiaDimensione = PatternMatcher.setDimensioneCache(2);
+		try {
+			PatternMatcher.svuotaCache();
+			assertTrue(PatternMatcher.create("a+b", "aab").matches());
+			assertTrue(PatternMatcher.create("a+b", "ab").matches());
+			assertFalse(PatternMatcher.create("a+b", "AB").matches());
+			assertTrue(PatternMatcher.create("a+b", "AB", Pattern.CASE_INSENSITIVE).matches());
+			assertEquals(2, PatternMatcher.getPatternCompilati());
+			assertEquals(2, PatternMatcher.getPatternRiutilizzati());
+
+			// Viene scartato il pattern usato meno di recente
+			PatternMatcher.create("a+b", "ab");
+			PatternMatcher.create("c", "c");
+			PatternMatcher.create("a+b", "ab");
+			assertEquals(3, PatternMatcher.getPatternCompilati());
+			PatternMatcher.create("a+b", "AB", Pattern.CASE_INSENSITIVE);
+			assertEquals(4, PatternMatcher.getPatternCompilati());
+
+			PatternMatcher matcher = PatternMatcher.create("\\d{2}-\\d{2}", "12-30");
+			assertTrue(matcher.matches());
+			assertFalse(matcher.reset("12:30").matches());
+			assertTrue(matcher.reset("07-00").matches());
+
+			assertThrows(IllegalArgumentException.class, () -> PatternMatcher.setDimensioneCache(-1));
+			PatternMatcher.setDimensioneCache(0);
+			PatternMatcher.svuotaCache();
+			PatternMatcher.create("a+b", "ab");
+			PatternMatcher.create("a+b", "ab");
+			assertEquals(2, PatternMatcher.getPatternCompilati());
+			assertEquals(0, PatternMatcher.getPatternRiutilizzati());
+		} finally {
+			PatternMatcher.setDimensioneCache(vecchiaDimensione);
+		}
+	}
+
 }